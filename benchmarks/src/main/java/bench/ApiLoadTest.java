@@ -0,0 +1,132 @@
+package bench;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load generator for the HTTP API started with {@code java main.Main serve}.
+ *
+ * <pre>
+ * gradle :benchmarks:classes
+ * java -cp build/classes/java/main:benchmarks/build/classes/java/main bench.ApiLoadTest http://localhost:8080 &lt;user&gt; &lt;password&gt; [connections] [seconds] [max bug id]
+ * </pre>
+ *
+ * The load test opens one session with the given credentials and sends its Bearer token on every
+ * request. Each of the given number of clients keeps exactly one request in flight, so the server
+ * sees that many concurrent connections. The mix is 80% GET /bugs/{id}, 15% one page of
+ * GET /bugs?status=NEW and 5% GET /stats. Prints throughput, latency percentiles and failures.
+ * Thousands of connections need a matching open-file limit (ulimit -n) on both ends.
+ */
+public class ApiLoadTest {
+    private static final int MAX_SAMPLES = 1 << 22;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: java bench.ApiLoadTest <base url> <user> <password> [connections] [seconds] [max bug id]");
+            System.exit(2);
+        }
+        String base = args[0].replaceAll("/+$", "");
+        String basic = "Basic " + Base64.getEncoder().encodeToString((args[1] + ":" + args[2]).getBytes(StandardCharsets.UTF_8));
+        int connections = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 30;
+        int maxId = args.length > 5 ? Integer.parseInt(args[5]) : 10_000;
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors())))
+                .build();
+        String auth = "Bearer " + openSession(client, base, basic);
+
+        long[] latencies = new long[MAX_SAMPLES];
+        AtomicInteger samples = new AtomicInteger();
+        AtomicLong failures = new AtomicLong();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(connections);
+
+        System.out.printf(Locale.ROOT, "%d connections for %ds against %s%n", connections, seconds, base);
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            Runnable[] loop = new Runnable[1];
+            loop[0] = () -> {
+                if (System.nanoTime() >= deadline) {
+                    done.countDown();
+                    return;
+                }
+                long sent = System.nanoTime();
+                client.sendAsync(request(base, auth, maxId), HttpResponse.BodyHandlers.discarding())
+                        .whenComplete((response, error) -> {
+                            if (error != null || response.statusCode() >= 400) {
+                                failures.incrementAndGet();
+                            } else {
+                                int slot = samples.getAndIncrement();
+                                if (slot < MAX_SAMPLES) latencies[slot] = System.nanoTime() - sent;
+                            }
+                            loop[0].run();
+                        });
+            };
+            loop[0].run();
+        }
+        done.await();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        int n = Math.min(samples.get(), MAX_SAMPLES);
+        long[] sorted = Arrays.copyOf(latencies, n);
+        Arrays.sort(sorted);
+        System.out.printf(Locale.ROOT, "requests: %d ok, %d failed in %.1fs%n", samples.get(), failures.get(), elapsed);
+        System.out.printf(Locale.ROOT, "throughput: %.0f req/s%n", samples.get() / elapsed);
+        if (n > 0) {
+            System.out.printf(Locale.ROOT, "latency ms: p50 %.2f  p90 %.2f  p99 %.2f  max %.2f%n",
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), sorted[n - 1] / 1e6);
+        }
+        System.exit(failures.get() == 0 ? 0 : 1);
+    }
+
+    private static String openSession(HttpClient client, String base, String basic) throws Exception {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(base + "/sessions"))
+                .header("Authorization", basic)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Matcher token = Pattern.compile("\"token\":\"([^\"]+)\"").matcher(response.body());
+        if (response.statusCode() != 201 || !token.find()) {
+            throw new IllegalStateException("Could not open a session: HTTP " + response.statusCode() + " " + response.body());
+        }
+        return token.group(1);
+    }
+
+    private static HttpRequest request(String base, String auth, int maxId) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int pick = random.nextInt(100);
+        String path;
+        if (pick < 80) {
+            path = "/bugs/" + (1 + random.nextInt(maxId));
+        } else if (pick < 95) {
+            path = "/bugs?status=NEW&limit=20";
+        } else {
+            path = "/stats";
+        }
+        return HttpRequest.newBuilder(URI.create(base + path))
+                .header("Authorization", auth)
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1e6;
+    }
+}
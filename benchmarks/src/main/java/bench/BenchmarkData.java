@@ -0,0 +1,82 @@
+package bench;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import managers.BugManager;
+import managers.UserManager;
+
+/**
+ * The synthetic bug and user data sets the benchmarks run against.
+ *
+ * BugManager keeps its files under ./data, so the benchmarks run in a directory of their own;
+ * the Gradle jmh task uses benchmarks/build/jmh. The first trial at a size writes that many bugs
+ * and users there, and later trials at the same size reuse them. Asking for another size replaces
+ * a data set written here, but bug data without the marker is never touched.
+ */
+final class BenchmarkData {
+    static final String CSV_PATH = "data/bugs.txt";
+    static final String SNAPSHOT_PATH = "data/bugs.dat";
+    static final String USERS_PATH = "data/bench-users.dat";
+    private static final String SIZE_MARKER = "data/bench-size";
+    // Generated users are hashed at a token cost so millions of them can be written in reasonable time
+    static final int BULK_PASSWORD_ITERATIONS = 1;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @param size 10k, 1m or 10m
+     * @return the number of bugs and users
+     */
+    static int parseSize(String size) {
+        switch (size.toLowerCase(Locale.ROOT)) {
+            case "10k": return 10_000;
+            case "1m": return 1_000_000;
+            case "10m": return 10_000_000;
+            default:
+                throw new IllegalArgumentException("Size must be 10k, 1m or 10m: " + size);
+        }
+    }
+
+    /**
+     * Generate the data set unless this directory already holds one of the same size.
+     *
+     * @param size number of bugs and users
+     */
+    static synchronized void prepare(int size) throws Exception {
+        File marker = new File(SIZE_MARKER);
+        if (marker.exists()) {
+            String existing = new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8).trim();
+            if (existing.equals(String.valueOf(size))) {
+                return;
+            }
+            deleteData();
+        } else if (new File(CSV_PATH).exists() || new File(SNAPSHOT_PATH).exists()) {
+            throw new IllegalStateException("Bug data found in " + new File("data").getAbsolutePath()
+                    + "; run the benchmarks from an empty scratch directory");
+        }
+        System.out.println("Generating " + size + " bugs and users...");
+        DataGenerator generator = new DataGenerator(size);
+        generator.writeBugsCsv(CSV_PATH, size);
+        new BugManager().close(); // Imports the CSV once and writes the snapshot
+        UserManager users = new UserManager();
+        users.setPasswordIterations(BULK_PASSWORD_ITERATIONS);
+        generator.signUpUsers(users, size);
+        users.saveUsersToFile(USERS_PATH);
+        users.close();
+        Files.write(marker.toPath(), String.valueOf(size).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Remove a data set this class generated, so one of another size can take its place
+    private static void deleteData() {
+        File[] files = new File("data").listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.isFile() && !file.delete()) {
+                throw new IllegalStateException("Could not delete " + file);
+            }
+        }
+    }
+}
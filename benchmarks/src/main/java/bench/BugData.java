@@ -0,0 +1,34 @@
+package bench;
+
+import managers.BugManager;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A BugManager opened on the synthetic data set of the chosen size, shared by every thread of a trial.
+ * Pick the size with {@code -p size=1m}; 10m needs a larger heap, e.g. {@code -jvmArgs -Xmx8g}.
+ */
+@State(Scope.Benchmark)
+public class BugData {
+    @Param({"10k"})
+    public String size;
+
+    int count;
+    BugManager manager;
+
+    @Setup(Level.Trial)
+    public void open() throws Exception {
+        count = BenchmarkData.parseSize(size);
+        BenchmarkData.prepare(count);
+        manager = new BugManager();
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        manager.close();
+    }
+}
@@ -0,0 +1,82 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import managers.BugManager;
+import models.Bug;
+import models.Status;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the BugManager hot paths. Add {@code -prof gc} for the allocation rate and bytes per op.
+ *
+ * <pre>
+ * gradle :benchmarks:jmh -Pjmh='-p size=1m -prof gc BugManagerBenchmarks'
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BugManagerBenchmarks {
+    private static final Status[] STATUSES = Status.values();
+    private static final List<String> WORDS = List.of(DataGenerator.WORDS);
+
+    // The bugs as loaded, written back by saveBugs
+    @State(Scope.Benchmark)
+    public static class Loaded {
+        List<Bug> bugs;
+
+        @Setup(Level.Trial)
+        public void load(BugData data) {
+            bugs = data.manager.loadBugs();
+        }
+    }
+
+    // Opens and closes a second manager on the same files, the cost of starting the tracker
+    @Benchmark
+    public BugManager openSnapshot() {
+        BugManager manager = new BugManager();
+        manager.close();
+        return manager;
+    }
+
+    @Benchmark
+    public Bug findBugById(BugData data) {
+        return data.manager.findBugById(1 + ThreadLocalRandom.current().nextInt(data.count));
+    }
+
+    @Benchmark
+    public List<Bug> loadBugs(BugData data) {
+        return data.manager.loadBugs();
+    }
+
+    @Benchmark
+    public List<Bug> searchBugs(BugData data) {
+        return data.manager.searchBugs(WORDS.get(ThreadLocalRandom.current().nextInt(WORDS.size())), Status.NEW, "priority");
+    }
+
+    @Benchmark
+    public List<Bug> saveBugs(BugData data, Loaded loaded) {
+        data.manager.saveBugs(loaded.bugs);
+        return loaded.bugs;
+    }
+
+    @Benchmark
+    public boolean updateBugField(BugData data) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return data.manager.updateBugField(1 + random.nextInt(data.count), 3, STATUSES[random.nextInt(STATUSES.length)].name());
+    }
+}
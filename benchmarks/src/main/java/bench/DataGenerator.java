@@ -0,0 +1,98 @@
+package bench;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import managers.UserManager;
+import models.Priority;
+import models.Role;
+import models.Status;
+
+/**
+ * Writes synthetic bugs and users for the benchmarks. Output is seeded, so two runs
+ * with the same size produce the same data set.
+ */
+public class DataGenerator {
+    static final String[] WORDS = {
+        "crash", "login", "timeout", "button", "report", "export", "null", "page", "slow", "layout",
+        "search", "filter", "memory", "leak", "save", "upload", "email", "session", "cache", "font"
+    };
+    static final int ASSIGNEES = 500;
+
+    private static final Status[] STATUSES = Status.values();
+    private static final Priority[] PRIORITIES = Priority.values();
+    private static final Role[] ROLES = Role.values();
+
+    private final Random random;
+
+    public DataGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Stream bugs to a CSV file in the format BugManager imports, one line at a time,
+     * so even 10M bugs do not have to fit in memory here.
+     *
+     * @param path the CSV file to write
+     * @param count number of bugs, with IDs 1 to count
+     */
+    public void writeBugsCsv(String path, int count) throws IOException {
+        File file = new File(path);
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            StringBuilder line = new StringBuilder(128);
+            for (int id = 1; id <= count; id++) {
+                line.setLength(0);
+                line.append(id).append(',');
+                words(line, 3 + random.nextInt(4));
+                line.append(',');
+                words(line, 8 + random.nextInt(12));
+                line.append(',').append(STATUSES[random.nextInt(STATUSES.length)].name());
+                line.append(',').append(PRIORITIES[random.nextInt(PRIORITIES.length)].name());
+                line.append(',').append(assignee(random.nextInt(ASSIGNEES)));
+                line.append(',');
+                int comments = random.nextInt(4);
+                for (int c = 0; c < comments; c++) {
+                    if (c > 0) line.append('|');
+                    words(line, 4 + random.nextInt(6));
+                }
+                line.append('\n');
+                bw.append(line);
+            }
+        }
+    }
+
+    /**
+     * Sign up users named user1 to user&lt;count&gt;, each with password "pw&lt;n&gt;".
+     *
+     * @param users the manager to fill
+     * @param count number of users
+     */
+    public void signUpUsers(UserManager users, int count) {
+        for (int n = 1; n <= count; n++) {
+            users.signUp(username(n), password(n), ROLES[random.nextInt(ROLES.length)]);
+        }
+    }
+
+    static String username(int n) {
+        return "user" + n;
+    }
+
+    static String password(int n) {
+        return "pw" + n;
+    }
+
+    static String assignee(int n) {
+        return "dev" + n;
+    }
+
+    private void words(StringBuilder sb, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package bench;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import managers.BugAggregate;
+import managers.BugColumns;
+import managers.StatisticsManager;
+import models.Bug;
+import models.Priority;
+import models.Status;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the StatisticsManager counters and aggregations, next to the same groupings done
+ * by walking Bug objects on the heap and by scanning the off-heap column store.
+ *
+ * <pre>
+ * gradle :benchmarks:jmh -Pjmh='-p size=1m -prof gc StatisticsBenchmarks'
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatisticsBenchmarks {
+    private static final int PRIORITY_COUNT = Priority.values().length;
+
+    // Statistics seeded from the manager and the column store built from it
+    @State(Scope.Benchmark)
+    public static class Seeded {
+        List<Bug> bugs;
+        StatisticsManager stats;
+        BugColumns columns;
+
+        @Setup(Level.Trial)
+        public void seed(BugData data) {
+            bugs = data.manager.loadBugs();
+            stats = new StatisticsManager(data.manager);
+            columns = new BugColumns(data.manager);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            columns.close();
+        }
+    }
+
+    @Benchmark
+    public StatisticsManager statisticsSeed(BugData data) {
+        return new StatisticsManager(data.manager);
+    }
+
+    @Benchmark
+    public int statisticsRead(Seeded seeded) {
+        return seeded.stats.getOpenCount() + seeded.stats.getAssigneeCounts().size();
+    }
+
+    @Benchmark
+    public BugColumns columnsSeed(BugData data) {
+        BugColumns columns = new BugColumns(data.manager);
+        columns.close();
+        return columns;
+    }
+
+    // The same status x priority count, walking Bug objects and scanning off-heap columns
+    @Benchmark
+    public int[] heapGroupBy(Seeded seeded) {
+        int[] counts = new int[Status.values().length * PRIORITY_COUNT];
+        for (Bug bug : seeded.bugs) {
+            counts[bug.getStatus().ordinal() * PRIORITY_COUNT + bug.getPriority().ordinal()]++;
+        }
+        return counts;
+    }
+
+    @Benchmark
+    public int[][] columnsGroupBy(Seeded seeded) {
+        return seeded.columns.countByStatusAndPriority();
+    }
+
+    @Benchmark
+    public Map<String, Integer> columnsByAssignee(Seeded seeded) {
+        return seeded.columns.countByAssignee();
+    }
+
+    // Status x priority x assignee in one pass: boxed map over Bug objects, then the parallel column engine
+    @Benchmark
+    public Map<String, Integer> heapAggregate(Seeded seeded) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Bug bug : seeded.bugs) {
+            String key = bug.getStatus() + "|" + bug.getPriority() + "|" + bug.getAssignedTo().toLowerCase();
+            counts.put(key, counts.getOrDefault(key, 0) + 1);
+        }
+        return counts;
+    }
+
+    @Benchmark
+    public BugAggregate aggregate(Seeded seeded) {
+        return seeded.stats.aggregate(BugAggregate.Dimension.STATUS, BugAggregate.Dimension.PRIORITY,
+                BugAggregate.Dimension.ASSIGNEE);
+    }
+}
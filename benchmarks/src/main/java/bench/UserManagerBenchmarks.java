@@ -0,0 +1,112 @@
+package bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import managers.UserManager;
+import models.Role;
+import models.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of loading users and of logging in, with and without the credential cache.
+ *
+ * <pre>
+ * gradle :benchmarks:jmh -Pjmh='-p size=1m -prof gc UserManagerBenchmarks'
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserManagerBenchmarks {
+    // Users signed up by loginCost
+    private static final int COST_USERS = 64;
+
+    // The synthetic users of the chosen size, loaded at the bulk cost so login measures lookup and check, not re-hashing
+    @State(Scope.Benchmark)
+    public static class Users {
+        @Param({"10k"})
+        public String size;
+
+        int count;
+        UserManager users;
+
+        @Setup(Level.Trial)
+        public void load() throws Exception {
+            count = BenchmarkData.parseSize(size);
+            BenchmarkData.prepare(count);
+            users = new UserManager();
+            users.setPasswordIterations(BenchmarkData.BULK_PASSWORD_ITERATIONS);
+            users.loadUsersFromFile(BenchmarkData.USERS_PATH);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            users.close();
+        }
+    }
+
+    // A few users hashed at the chosen PBKDF2 cost; with the cache on, each has logged in once
+    @State(Scope.Benchmark)
+    public static class Costed {
+        @Param({"1000", "10000", "100000", "600000"})
+        public int cost;
+
+        @Param({"false", "true"})
+        public boolean cached;
+
+        UserManager users;
+
+        @Setup(Level.Trial)
+        public void signUp() {
+            users = new UserManager();
+            users.setPasswordIterations(cost);
+            users.setCredentialCacheEnabled(cached);
+            for (int n = 1; n <= COST_USERS; n++) {
+                users.signUp(DataGenerator.username(n), DataGenerator.password(n), Role.DEVELOPER);
+                if (cached) {
+                    users.authenticate(DataGenerator.username(n), DataGenerator.password(n)); // Prime the cache
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            users.close();
+        }
+    }
+
+    @Benchmark
+    public UserManager loadUsers(Users users) {
+        UserManager loaded = new UserManager();
+        loaded.loadUsersFromFile(BenchmarkData.USERS_PATH);
+        loaded.close();
+        return loaded;
+    }
+
+    @Benchmark
+    public boolean login(Users users) {
+        int n = 1 + ThreadLocalRandom.current().nextInt(users.count);
+        return users.users.login(DataGenerator.username(n), DataGenerator.password(n));
+    }
+
+    // Full PBKDF2 check at each cost, then the same logins answered by the credential cache
+    @Benchmark
+    public User loginCost(Costed costed) {
+        int n = 1 + ThreadLocalRandom.current().nextInt(COST_USERS);
+        return costed.users.authenticate(DataGenerator.username(n), DataGenerator.password(n));
+    }
+}
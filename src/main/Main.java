@@ -1,41 +1,70 @@
 package main;
 
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Scanner;
+import java.util.function.Consumer;
+import managers.BugChange;
+import managers.BugImportResult;
 import managers.BugManager;
+import managers.BugPage;
+import managers.BugQuery;
 import managers.StatisticsManager;
 import managers.UserManager;
 import models.Bug;
+import models.Priority;
 import models.Role;
 import models.Status;
+import server.ApiServer;
 
 
 public class Main {
     private static final Scanner scanner = new Scanner(System.in);
     private static final BugManager manager = new BugManager();
-    private static final StatisticsManager statsManager = new StatisticsManager();
+    private static final StatisticsManager statsManager = new StatisticsManager(manager);
     private static final UserManager userManager = new UserManager(); // UserManager instance
+    private static final int PAGE_SIZE = 20; // Bugs shown per page in lists and search results
+    private static final DateTimeFormatter HISTORY_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+    // Field names by updateBugField number, for history lines
+    private static final String[] FIELD_NAMES = { "", "Title", "Description", "Status", "Priority", "Assigned To" };
 
     public static void main(String[] args) {
+        // Server mode: the HTTP/JSON API instead of the console
+        if (args.length > 0 && args[0].equals("serve")) {
+            serve(args);
+            return;
+        }
+        // Batch mode: import or export bugs without the interactive menus
+        if (args.length > 0) {
+            runBatch(args);
+            return;
+        }
+
         // Load users from file
         userManager.loadUsersFromFile("users.dat");
     
-        // Save users to file on shutdown
+        // Save users and flush the bug log on shutdown
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             userManager.saveUsersToFile("users.dat");
+            userManager.close();
+            manager.close();
         }));
     
-        // Login process
-        boolean loggedIn = false;
-        while (!loggedIn) {
-            loggedIn = loginMenu();
-        }
-    
-        Role currentRole = userManager.getCurrentUserRole(); // Get the logged-in user's role
-    
         // Main program menu
         boolean running = true;
         while (running) {
+            // Login process, at the start and again whenever the session has expired
+            if (userManager.getCurrentUserRole() == null) {
+                boolean loggedIn = false;
+                while (!loggedIn) {
+                    loggedIn = loginMenu();
+                }
+            }
+            Role currentRole = userManager.getCurrentUserRole(); // Get the logged-in user's role
+
             printMainMenu(currentRole); // Show menu based on role
             int choice;
     
@@ -46,6 +75,9 @@ public class Main {
             } else {
                 choice = getUserChoice(1, 4); // Full menu for other roles
             }
+            if (sessionExpired()) {
+                continue;
+            }
     
             switch (choice) {
                 case 1:
@@ -97,6 +129,16 @@ public class Main {
 
     // ========================= LOGIN MENU =========================
 
+    // Tell the user once the console session has ended, which happens when it goes unused for the
+    // session timeout; checked after every wait at a menu prompt, so no action runs without a user
+    private static boolean sessionExpired() {
+        if (userManager.getCurrentUserRole() != null) {
+            return false;
+        }
+        System.out.println("Your session has expired. Please log in again.");
+        return true;
+    }
+
     private static boolean loginMenu() {
         System.out.println("\n==================================================");
         System.out.println("                  LOGIN MENU                      ");
@@ -150,6 +192,7 @@ public class Main {
     }
     
     private static void changeBugStatus() {
+        String author = userManager.getCurrentUser(); // Before the prompts, so a session expiring while they wait still leaves the author
         System.out.println("\n[Main Menu > Bug Operations > Change Bug Status]");
         System.out.println("Enter Bug ID to change status, or 0 to cancel.");
         int id = promptForBugId("Bug ID: ");
@@ -179,7 +222,7 @@ public class Main {
             return;
         }
     
-        boolean success = manager.updateBugStatus(id, newStatus);
+        boolean success = manager.updateBugStatus(id, newStatus, author);
         if (success) {
             System.out.println("Bug status updated successfully!");
         } else {
@@ -262,6 +305,9 @@ public class Main {
     // ========================= BUG OPERATION MENU =========================
 
     private static void bugOperationMenu() {
+        if (sessionExpired()) {
+            return;
+        }
         Role currentRole = userManager.getCurrentUserRole();
     
         if (currentRole == Role.PROJECT_MANAGER) {
@@ -273,6 +319,9 @@ public class Main {
         while (running) {
             printBugOperationMenu(currentRole);
             int choice = getUserChoice(1, 7); // Admins and other roles can access all options
+            if (sessionExpired()) {
+                return; // Back to the main menu, which asks for a login
+            }
     
             switch (choice) {
                 case 1:
@@ -369,19 +418,63 @@ public class Main {
         }
     }
     
+    // Usage: Main serve [port]. Serves the HTTP/JSON API until the process is stopped.
+    private static void serve(String[] args) {
+        int port = 8080;
+        if (args.length > 1) {
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.err.println("Usage: java main.Main serve [port]");
+                System.exit(2);
+            }
+        }
+        userManager.loadUsersFromFile("users.dat");
+        ApiServer server = new ApiServer(manager, statsManager, userManager);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            userManager.close();
+            manager.close();
+        }));
+        try {
+            int bound = server.start(port);
+            System.out.println("Bug tracker API listening on port " + bound + ". Press Ctrl+C to stop.");
+        } catch (IOException e) {
+            System.err.println("Could not start the API server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Usage: Main import <file.csv|file.jsonl>  or  Main export <file.csv|file.jsonl>
+    private static void runBatch(String[] args) {
+        if (args.length != 2 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.err.println("Usage: java main.Main [import|export] <file.csv|file.jsonl>");
+            System.exit(2);
+        }
+        try {
+            if (args[0].equals("import")) {
+                BugImportResult result = manager.importBugs(args[1]);
+                System.out.println("Imported " + result.getImported() + " bugs, rejected " + result.getRejected() + ".");
+                for (String error : result.getErrors()) {
+                    System.out.println("  " + error);
+                }
+            } else {
+                int written = manager.exportBugs(args[1]);
+                System.out.println("Exported " + written + " bugs to " + args[1] + ".");
+            }
+        } finally {
+            manager.close();
+        }
+    }
+
     // CRUD and comment methods
 
     private static void addNewBug() {
+        String author = userManager.getCurrentUser();
         System.out.println("\n[Main Menu > Bug Operations > Add Bug]");
         System.out.println("----- Add a New Bug -----");
         System.out.println("Leave any field empty and press ENTER to cancel.");
 
-        List<Bug> existingBugs = manager.loadBugs();
-        int maxId = existingBugs.stream().mapToInt(Bug::getId).max().orElse(0);
-        int newId = maxId + 1;
-
-        System.out.println("Assigned Bug ID: " + newId);
-
         String title = promptUser("Enter bug title: ");
         if (title.isEmpty()) { canceled(); return; }
         String description = promptUser("Enter bug description: ");
@@ -393,9 +486,13 @@ public class Main {
         String assignedTo = promptUser("Enter the name of the person assigned to this bug: ");
         if (assignedTo.isEmpty()) { canceled(); return; }
 
+        // The ID is taken only once the bug is complete, so a canceled entry does not use one up
+        int newId = manager.nextBugId();
+        System.out.println("Assigned Bug ID: " + newId);
+
         // Validation and enum conversion happens in BugManager
         Bug newBug = new Bug(newId, title, description, manager.stringToStatus(status), manager.stringToPriority(priority), assignedTo);
-        manager.addBug(newBug);
+        manager.addBug(newBug, author);
 
         System.out.println("New bug added successfully!");
     }
@@ -417,6 +514,7 @@ public class Main {
     }
 
     private static void updateBugDetailsById() {
+        String author = userManager.getCurrentUser();
         System.out.println("\n[Main Menu > Bug Operations > Edit Bug]");
         System.out.println("Enter Bug ID to edit, or 0 to cancel.");
         int id = promptForBugId("Bug ID: ");
@@ -447,7 +545,7 @@ public class Main {
         String newValue = promptUser("Enter the new value (or empty to cancel): ");
         if (newValue.isEmpty()) { canceled(); return; }
 
-        boolean success = manager.updateBugField(id, fieldChoice, newValue);
+        boolean success = manager.updateBugField(id, fieldChoice, newValue, author);
         if (success) {
             System.out.println("Bug details updated successfully!");
         } else {
@@ -456,13 +554,14 @@ public class Main {
     }
 
     private static void deleteBugById() {
+        String author = userManager.getCurrentUser();
         System.out.println("\n[Main Menu > Bug Operations > Delete Bug]");
         System.out.println("Enter Bug ID to delete, or 0 to cancel.");
         int id = promptForBugId("Bug ID: ");
         if (id == 0) { canceled(); return; }
         if (id == -1) return;
 
-        boolean success = manager.deleteBug(id);
+        boolean success = manager.deleteBug(id, author);
         if (success) {
             System.out.println("Bug ID " + id + " has been deleted successfully!");
         } else {
@@ -474,25 +573,24 @@ public class Main {
         System.out.println("\n[Main Menu > Bug Operations > List All Bugs]");
         System.out.println("=============== BUG LIST ===============");
     
-        List<Bug> bugs = manager.loadBugs();
+        int shown = printPages(new BugQuery(),
+                bug -> System.out.printf("%-10d %-30s %-15s%n", bug.getId(), bug.getTitle(), bug.getPriority().name()),
+                () -> {
+                    System.out.printf("%-10s %-30s %-15s%n", "BUG ID", "TITLE", "PRIORITY");
+                    System.out.println("---------------------------------------------");
+                });
     
-        if (bugs.isEmpty()) {
+        if (shown == 0) {
             System.out.println("No bugs available to display.");
             return;
         }
     
-        System.out.printf("%-10s %-30s %-15s%n", "BUG ID", "TITLE", "PRIORITY");
-        System.out.println("---------------------------------------------");
-    
-        for (Bug bug : bugs) {
-            System.out.printf("%-10d %-30s %-15s%n", bug.getId(), bug.getTitle(), bug.getPriority().name());
-        }
-    
         System.out.println("---------------------------------------------");
     }
     
 
     private static void addCommentToBug() {
+        String author = userManager.getCurrentUser();
         System.out.println("\n[Main Menu > Bug Operations > Add Comment]");
         System.out.println("Enter Bug ID to add a comment, or 0 to cancel.");
         int id = promptForBugId("Bug ID: ");
@@ -508,7 +606,7 @@ public class Main {
         String comment = promptUser("Enter your comment (or empty to cancel): ");
         if (comment.isEmpty()) { canceled(); return; }
 
-        boolean success = manager.addCommentToBug(id, comment);
+        boolean success = manager.addCommentToBug(id, author, comment);
         if (success) {
             System.out.println("Comment added successfully to Bug ID " + id + "!");
         } else {
@@ -519,6 +617,9 @@ public class Main {
     // ========================= SEARCH OPERATION MENU =========================
 
     private static void searchOperationMenu() {
+        if (sessionExpired()) {
+            return;
+        }
         Role currentRole = userManager.getCurrentUserRole();
     
         if (currentRole == Role.PROJECT_MANAGER) {
@@ -530,6 +631,9 @@ public class Main {
         while (running) {
             printSearchOperationMenu();
             int choice = getUserChoice(1, 6);
+            if (sessionExpired()) {
+                return; // Back to the main menu, which asks for a login
+            }
     
             switch (choice) {
                 case 1:
@@ -585,19 +689,13 @@ public class Main {
     private static void searchBugsByKeyword() {
         System.out.println("\n[Main Menu > Search Operations > Search by Keyword]");
         System.out.println("Enter a keyword (or empty to cancel).");
-        String keyword = promptUser("Keyword: ").toLowerCase();
+        System.out.println("Use \"quotes\" for a phrase, word* for a prefix and OR between alternatives.");
+        String keyword = promptUser("Keyword: ");
         if (keyword.isEmpty()) { canceled(); return; }
 
-        List<Bug> bugs = manager.loadBugs();
-        boolean found = false;
-        for (Bug bug : bugs) {
-            if (bug.getTitle().toLowerCase().contains(keyword) || bug.getDescription().toLowerCase().contains(keyword)) {
-                displayBugSummary(bug);
-                found = true;
-            }
-        }
+        int shown = printPages(new BugQuery().keyword(keyword), Main::displayBugSummary, null);
 
-        if (!found) {
+        if (shown == 0) {
             System.out.println("No bugs found containing \"" + keyword + "\".");
         }
     }
@@ -608,16 +706,9 @@ public class Main {
         String assignee = promptUser("Assignee: ").toLowerCase();
         if (assignee.isEmpty()) { canceled(); return; }
 
-        List<Bug> bugs = manager.loadBugs();
-        boolean found = false;
-        for (Bug bug : bugs) {
-            if (bug.getAssignedTo().toLowerCase().contains(assignee)) {
-                displayBugSummary(bug);
-                found = true;
-            }
-        }
+        int shown = printPages(new BugQuery().assigneeContaining(assignee), Main::displayBugSummary, null);
 
-        if (!found) {
+        if (shown == 0) {
             System.out.println("No bugs found assigned to \"" + assignee + "\".");
         }
     }
@@ -636,16 +727,9 @@ public class Main {
             return;
         }
 
-        List<Bug> bugs = manager.loadBugs();
-        boolean found = false;
-        for (Bug bug : bugs) {
-            if (bug.getStatus() == statusFilter) {
-                displayBugSummary(bug);
-                found = true;
-            }
-        }
+        int shown = printPages(new BugQuery().status(statusFilter), Main::displayBugSummary, null);
 
-        if (!found) {
+        if (shown == 0) {
             System.out.println("No bugs found with status \"" + statusStr + "\".");
         }
     }
@@ -656,23 +740,17 @@ public class Main {
         String priorityStr = promptUser("Priority: ").toUpperCase();
         if (priorityStr.isEmpty()) { canceled(); return; }
 
-        List<Bug> bugs = manager.loadBugs();
-        boolean found = false;
-        for (Bug bug : bugs) {
-            if (bug.getPriority().name().equalsIgnoreCase(priorityStr)) {
-                displayBugSummary(bug);
-                found = true;
-            }
-        }
+        Priority priorityFilter = manager.stringToPriority(priorityStr);
+        int shown = priorityFilter == null ? 0 : printPages(new BugQuery().priority(priorityFilter), Main::displayBugSummary, null);
 
-        if (!found) {
+        if (shown == 0) {
             System.out.println("No bugs found with priority \"" + priorityStr + "\".");
         }
     }
 
     private static void filteredSearchWithSorting() {
         System.out.println("\n[Main Menu > Search Operations > Filtered Search]");
-        String keyword = promptUser("Enter a keyword (or empty to skip): ").toLowerCase();
+        String keyword = promptUser("Enter a keyword (or empty to skip): ");
         String statusStr = promptUser("Enter a status (NEW, IN_PROGRESS, RESOLVED, CLOSED) or empty to skip: ").toUpperCase().trim();
         Status statusFilter = null;
         if (!statusStr.isEmpty()) {
@@ -683,20 +761,13 @@ public class Main {
             }
         }
 
-        String sortChoice = promptUser("Sort by 'priority', 'status', or leave empty for no sorting: ").toLowerCase().trim();
-        if (!sortChoice.equals("priority") && !sortChoice.equals("status")) {
-            sortChoice = null;
-        }
+        String sortChoice = promptUser("Sort by 'priority', 'priority_desc' (highest first), 'status', 'status_desc', or leave empty for no sorting: ").toLowerCase().trim();
 
-        List<Bug> results = manager.searchBugs(keyword, statusFilter, sortChoice);
+        BugQuery query = new BugQuery().keyword(keyword).status(statusFilter).orderBy(BugManager.sortOrder(sortChoice));
+        int shown = printPages(query, Main::displayBugSummary, () -> System.out.println("Filtered and Sorted Results:"));
 
-        if (results.isEmpty()) {
+        if (shown == 0) {
             System.out.println("No bugs found with the given filters.");
-        } else {
-            System.out.println("Filtered and Sorted Results:");
-            for (Bug bug : results) {
-                displayBugSummary(bug);
-            }
         }
     }
 
@@ -706,7 +777,10 @@ public class Main {
         boolean running = true;
         while (running) {
             printStatisticsMenu();
-            int choice = getUserChoice(1, 5);
+            int choice = getUserChoice(1, 6);
+            if (sessionExpired()) {
+                return; // Back to the main menu, which asks for a login
+            }
             switch (choice) {
                 case 1:
                     showBugsCountByStatus();
@@ -725,6 +799,10 @@ public class Main {
                     pause();
                     break;
                 case 5:
+                    showAssigneeBreakdown();
+                    pause();
+                    break;
+                case 6:
                     running = false; // Go Back to main menu
                     break;
             }
@@ -738,29 +816,30 @@ public class Main {
         System.out.println("[2] Show Counts of Bugs by Priority");
         System.out.println("[3] Show Counts of Bugs by Assignee");
         System.out.println("[4] Show Summary Report");
-        System.out.println("[5] Go Back to Main Menu");
+        System.out.println("[5] Show Assignee Breakdown by Status");
+        System.out.println("[6] Go Back to Main Menu");
         System.out.println("---------------------------------------------");
-        System.out.print("Please select an option (1-5): ");
+        System.out.print("Please select an option (1-6): ");
     }
 
     private static void showBugsCountByStatus() {
-        List<Bug> bugs = manager.loadBugs();
-        statsManager.showBugsCountByStatus(bugs);
+        statsManager.showBugsCountByStatus();
     }
 
     private static void showBugsCountByPriority() {
-        List<Bug> bugs = manager.loadBugs();
-        statsManager.showBugsCountByPriority(bugs);
+        statsManager.showBugsCountByPriority();
     }
 
     private static void showBugsCountByAssignee() {
-        List<Bug> bugs = manager.loadBugs();
-        statsManager.showBugsCountByAssignee(bugs);
+        statsManager.showBugsCountByAssignee();
     }
 
     private static void showSummaryReport() {
-        List<Bug> bugs = manager.loadBugs();
-        statsManager.showSummaryReport(bugs);
+        statsManager.showSummaryReport();
+    }
+
+    private static void showAssigneeBreakdown() {
+        statsManager.showAssigneeBreakdown();
     }
 
     // ========================= HELPER METHODS =========================
@@ -817,6 +896,30 @@ public class Main {
         return value;
     }
 
+    // Print query results one page at a time; only the page on screen is ever looked up.
+    // The header, if any, is printed once before the first result. Returns how many bugs were shown.
+    private static int printPages(BugQuery query, Consumer<Bug> printer, Runnable header) {
+        BugPage page = manager.page(query.limit(PAGE_SIZE));
+        if (header != null && !page.getBugs().isEmpty()) {
+            header.run();
+        }
+        int shown = 0;
+        while (true) {
+            for (Bug bug : page.getBugs()) {
+                printer.accept(bug);
+            }
+            shown += page.getBugs().size();
+            if (!page.hasMore()) {
+                return shown;
+            }
+            String input = promptUser("-- " + shown + " shown. Press ENTER for more, or q to stop: ");
+            if (input.equalsIgnoreCase("q")) {
+                return shown;
+            }
+            page = manager.page(page.nextQuery());
+        }
+    }
+
     private static void canceled() {
         System.out.println("Operation canceled.");
     }
@@ -842,9 +945,32 @@ public class Main {
                 System.out.println("  " + line);
             }
         }
+        System.out.println("History:");
+
+        List<BugChange> history = manager.getHistory(bug.getId());
+        if (history.isEmpty()) {
+            System.out.println("  No recorded changes.");
+        }
+        for (BugChange change : history) {
+            System.out.println("  " + describeChange(change));
+        }
         System.out.println("--------------------------------------------------");
     }
 
+    // One line of a bug's history, e.g. "2024-05-01 14:02 alice: Status NEW -> IN_PROGRESS"
+    private static String describeChange(BugChange change) {
+        String when = HISTORY_TIME.format(Instant.ofEpochMilli(change.getTime()));
+        String who = change.getAuthor() != null ? change.getAuthor() : "unknown";
+        switch (change.getType()) {
+            case CREATED:
+                return when + " " + who + ": Created";
+            case DELETED:
+                return when + " " + who + ": Deleted";
+            default:
+                return when + " " + who + ": " + FIELD_NAMES[change.getField()] + " " + change.getOldValue() + " -> " + change.getNewValue();
+        }
+    }
+
     private static void displayBugSummary(Bug bug) {
         System.out.println("--------------------------------------------------");
         System.out.printf("ID:          %d%n", bug.getId());
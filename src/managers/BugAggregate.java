@@ -0,0 +1,121 @@
+package managers;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import models.Priority;
+import models.Status;
+
+/**
+ * Bug counts grouped by any combination of status, priority and assignee, as computed by
+ * {@link BugColumns#aggregate}. Groups are numbered status-major, then priority, then assignee;
+ * a dimension that was not grouped on has a single group.
+ */
+public class BugAggregate {
+    /**
+     * A field bugs can be grouped by.
+     */
+    public enum Dimension { STATUS, PRIORITY, ASSIGNEE }
+
+    /**
+     * Receives the non-empty groups.
+     */
+    public interface Visitor {
+        /**
+         * @param status the group's status, or null if not grouped by status
+         * @param priority the group's priority, or null if not grouped by priority
+         * @param assignee the group's lower-cased assignee, or null if not grouped by assignee
+         * @param count number of bugs in the group, always positive
+         */
+        void group(Status status, Priority priority, String assignee, int count);
+    }
+
+    private static final Status[] STATUSES = Status.values();
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final Set<Dimension> dimensions;
+    private final List<String> assignees;
+    private final int[] counts;
+    private final int total;
+
+    BugAggregate(Set<Dimension> dimensions, List<String> assignees, int[] counts) {
+        this.dimensions = Collections.unmodifiableSet(EnumSet.copyOf(dimensions));
+        this.assignees = assignees;
+        this.counts = counts;
+        int sum = 0;
+        for (int count : counts) sum += count;
+        this.total = sum;
+    }
+
+    // Number of groups along each dimension
+    static int statusGroups(Set<Dimension> dimensions) {
+        return dimensions.contains(Dimension.STATUS) ? STATUSES.length : 1;
+    }
+
+    static int priorityGroups(Set<Dimension> dimensions) {
+        return dimensions.contains(Dimension.PRIORITY) ? PRIORITIES.length : 1;
+    }
+
+    public Set<Dimension> getDimensions() {
+        return dimensions;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Count the bugs in one group.
+     *
+     * @param status the status, or null if not grouped by status
+     * @param priority the priority, or null if not grouped by priority
+     * @param assignee the assignee (any case), or null if not grouped by assignee
+     * @return number of bugs in the group
+     * @throws IllegalArgumentException if a value is given for a dimension that was not grouped on, or one is missing
+     */
+    public int count(Status status, Priority priority, String assignee) {
+        check(Dimension.STATUS, status);
+        check(Dimension.PRIORITY, priority);
+        check(Dimension.ASSIGNEE, assignee);
+        int a = 0;
+        if (assignee != null) {
+            a = assignees.indexOf(assignee.toLowerCase());
+            if (a < 0) return 0;
+        }
+        int s = status != null ? status.ordinal() : 0;
+        int p = priority != null ? priority.ordinal() : 0;
+        return counts[(s * priorityGroups(dimensions) + p) * assigneeGroups() + a];
+    }
+
+    /**
+     * Visit every non-empty group in status, priority, assignee order.
+     */
+    public void forEach(Visitor visitor) {
+        boolean byStatus = dimensions.contains(Dimension.STATUS);
+        boolean byPriority = dimensions.contains(Dimension.PRIORITY);
+        boolean byAssignee = dimensions.contains(Dimension.ASSIGNEE);
+        int priorities = priorityGroups(dimensions);
+        int names = assigneeGroups();
+        for (int group = 0; group < counts.length; group++) {
+            if (counts[group] == 0) continue;
+            int a = group % names;
+            int p = group / names % priorities;
+            int s = group / names / priorities;
+            visitor.group(byStatus ? STATUSES[s] : null, byPriority ? PRIORITIES[p] : null,
+                    byAssignee ? assignees.get(a) : null, counts[group]);
+        }
+    }
+
+    private int assigneeGroups() {
+        return dimensions.contains(Dimension.ASSIGNEE) ? assignees.size() : 1;
+    }
+
+    private void check(Dimension dimension, Object value) {
+        if (dimensions.contains(dimension) != (value != null)) {
+            throw new IllegalArgumentException(dimensions.contains(dimension)
+                    ? "Missing " + dimension.name().toLowerCase() + " for a grouped dimension"
+                    : "Not grouped by " + dimension.name().toLowerCase());
+        }
+    }
+}
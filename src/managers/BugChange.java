@@ -0,0 +1,46 @@
+package managers;
+
+import java.time.Instant;
+
+/**
+ * One entry of a bug's history: its creation, a change of one field, or its deletion,
+ * with who made it and when. Immutable.
+ */
+public final class BugChange {
+    public enum Type { CREATED, CHANGED, DELETED }
+
+    private final int bugId;
+    private final Type type;
+    private final long time;
+    private final String author;
+    private final int field;
+    private final String oldValue;
+    private final String newValue;
+
+    BugChange(int bugId, Type type, long time, String author, int field, String oldValue, String newValue) {
+        this.bugId = bugId;
+        this.type = type;
+        this.time = time;
+        this.author = author;
+        this.field = field;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    public int getBugId() { return bugId; }
+    public Type getType() { return type; }
+    // Milliseconds since the epoch
+    public long getTime() { return time; }
+    // Username of whoever made the change, or null if unknown
+    public String getAuthor() { return author; }
+    // Field that changed (1-5, same numbering as updateBugField), or 0 unless CHANGED
+    public int getField() { return field; }
+    // Values before and after a change, status and priority by name; null unless CHANGED
+    public String getOldValue() { return oldValue; }
+    public String getNewValue() { return newValue; }
+
+    @Override
+    public String toString() {
+        return Instant.ofEpochMilli(time) + " " + author + " " + type + " " + bugId + (type == Type.CHANGED ? " " + field + ": " + oldValue + " -> " + newValue : "");
+    }
+}
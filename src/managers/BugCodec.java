@@ -0,0 +1,326 @@
+package managers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import models.Bug;
+import models.Comment;
+
+/**
+ * Text record format (schema v2) of bugs.txt, CSV imports and exports, and the mutation log.
+ *
+ * <pre>
+ * #v2,id,title,description,status,priority,assignedTo,comments...      header line
+ * 7,"Crash, then hang",Steps: open; save,NEW,HIGH,alice,first,"say ""hi"""
+ * </pre>
+ *
+ * Fields follow RFC 4180: a field holding a comma, double quote, CR or LF is quoted and its
+ * quotes are doubled, so any text survives a round trip. A bug record is id, title, description,
+ * status, priority and assignee followed by one field per comment. Records end with LF; CRLF is
+ * accepted, and a last record without a line break is accepted where noted.
+ * Files without the header are schema v1, which split on commas and pipes without escaping and
+ * cannot hold those characters; callers read them with their old line parser.
+ * <p>
+ * {@link Reader} is a state machine over bytes. Delimiters are ASCII and never occur inside a
+ * UTF-8 multi-byte sequence, so fields are found without decoding and each one is decoded
+ * straight from the buffer into its String; only fields with doubled quotes are copied first.
+ */
+final class BugCodec {
+    static final int VERSION = 2;
+    static final String HEADER = "#v" + VERSION + ",id,title,description,status,priority,assignedTo,comments...";
+    // Fields of a bug record before the comments
+    static final int BUG_FIELDS = 6;
+
+    private BugCodec() {
+    }
+
+    /**
+     * Append one field, quoting it if needed. Null is written as an empty field.
+     */
+    static void appendField(StringBuilder sb, String value) {
+        if (value == null) return;
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            sb.append(value);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') sb.append('"');
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Append a bug record, without the line break. Only the comments' text is written.
+     */
+    static void appendBug(StringBuilder sb, Bug bug) {
+        appendFields(sb, bug);
+        for (Comment comment : bug.getComments()) {
+            sb.append(',');
+            appendField(sb, comment.getText());
+        }
+    }
+
+    /**
+     * Append a bug record with no comments, without the line break.
+     */
+    static void appendFields(StringBuilder sb, Bug bug) {
+        sb.append(bug.getId()).append(',');
+        appendField(sb, bug.getTitle());
+        sb.append(',');
+        appendField(sb, bug.getDescription());
+        sb.append(',').append(bug.getStatus().name());
+        sb.append(',').append(bug.getPriority().name()).append(',');
+        appendField(sb, bug.getAssignedTo());
+    }
+
+    /**
+     * Schema version of a file from its first bytes.
+     *
+     * @param buf the start of the file, from its position to its limit; not moved
+     * @return the version named by the header, or 1 if there is no header
+     */
+    static int version(ByteBuffer buf) {
+        int pos = buf.position();
+        if (buf.limit() - pos < 3 || buf.get(pos) != '#' || buf.get(pos + 1) != 'v') {
+            return 1;
+        }
+        int version = 0;
+        int i = pos + 2;
+        while (i < buf.limit() && buf.get(i) >= '0' && buf.get(i) <= '9' && version < 1000) {
+            version = version * 10 + (buf.get(i++) - '0');
+        }
+        return i > pos + 2 ? version : 1;
+    }
+
+    /**
+     * Reads records one at a time from a buffer holding whole records.
+     */
+    static final class Reader {
+        private final ByteBuffer buf;
+        private final int limit;
+        private int pos;
+        private int line = 1;
+        private int recordLine;
+        private int recordEnd;
+        private boolean terminated;
+        private byte[] scratch = new byte[256];
+
+        /**
+         * @param buf the records, from its position to its limit; not moved
+         * @param firstLine line number of the first record, for error messages
+         */
+        Reader(ByteBuffer buf, int firstLine) {
+            this.buf = buf;
+            this.pos = buf.position();
+            this.limit = buf.limit();
+            this.line = firstLine;
+            this.recordEnd = pos;
+        }
+
+        /**
+         * Skip the header line if the buffer starts with one.
+         *
+         * @return the schema version it names, or 1 if there is none
+         * @throws IllegalArgumentException if the version is newer than this codec
+         */
+        int readHeader() {
+            int version = version(buf);
+            if (version > VERSION) {
+                throw new IllegalArgumentException("Unsupported record schema version " + version);
+            }
+            if (version > 1) {
+                skipLine();
+                recordEnd = pos;
+            }
+            return version;
+        }
+
+        /**
+         * Read the next record.
+         *
+         * @param fields cleared, then given the record's fields
+         * @return false at the end of the input
+         * @throws IllegalArgumentException if the record is malformed; reading resumes after its line
+         */
+        boolean next(List<String> fields) {
+            fields.clear();
+            if (pos >= limit) {
+                return false;
+            }
+            recordLine = line;
+            while (true) {
+                if (buf.get(pos) == '"') {
+                    quotedField(fields);
+                } else {
+                    int start = pos;
+                    while (pos < limit) {
+                        byte b = buf.get(pos);
+                        if (b == ',' || b == '\n' || b == '\r') break;
+                        if (b == '"') throw malformed("quote inside an unquoted field");
+                        pos++;
+                    }
+                    fields.add(decode(start, pos));
+                }
+                if (pos >= limit) {
+                    terminated = false;
+                    recordEnd = pos;
+                    return true;
+                }
+                byte b = buf.get(pos++);
+                if (b == ',') {
+                    if (pos >= limit) {
+                        fields.add("");
+                        terminated = false;
+                        recordEnd = pos;
+                        return true;
+                    }
+                    continue;
+                }
+                if (b == '\r' && pos < limit && buf.get(pos) == '\n') pos++;
+                line++;
+                terminated = true;
+                recordEnd = pos;
+                return true;
+            }
+        }
+
+        private void quotedField(List<String> fields) {
+            int start = ++pos;
+            boolean doubled = false;
+            while (true) {
+                if (pos >= limit) throw malformed("quoted field is never closed");
+                byte b = buf.get(pos);
+                if (b == '"') {
+                    if (pos + 1 < limit && buf.get(pos + 1) == '"') {
+                        doubled = true;
+                        pos += 2;
+                        continue;
+                    }
+                    break;
+                }
+                if (b == '\n') line++;
+                pos++;
+            }
+            fields.add(doubled ? unescape(start, pos) : decode(start, pos));
+            pos++; // Closing quote
+            if (pos < limit) {
+                byte b = buf.get(pos);
+                if (b != ',' && b != '\n' && b != '\r') throw malformed("text after a closing quote");
+            }
+        }
+
+        /**
+         * @return true if the last record read ended with a line break
+         */
+        boolean terminated() {
+            return terminated;
+        }
+
+        /**
+         * @return buffer index just past the last record read
+         */
+        int recordEnd() {
+            return recordEnd;
+        }
+
+        /**
+         * @return line the last record read started on
+         */
+        int recordLine() {
+            return recordLine;
+        }
+
+        private String decode(int from, int to) {
+            if (buf.hasArray()) {
+                return new String(buf.array(), buf.arrayOffset() + from, to - from, StandardCharsets.UTF_8);
+            }
+            byte[] bytes = scratch(to - from);
+            buf.get(from, bytes, 0, to - from);
+            return new String(bytes, 0, to - from, StandardCharsets.UTF_8);
+        }
+
+        // Decode a quoted field's content, turning each doubled quote into one
+        private String unescape(int from, int to) {
+            byte[] bytes = scratch(to - from);
+            int n = 0;
+            for (int i = from; i < to; i++) {
+                byte b = buf.get(i);
+                bytes[n++] = b;
+                if (b == '"') i++;
+            }
+            return new String(bytes, 0, n, StandardCharsets.UTF_8);
+        }
+
+        private byte[] scratch(int length) {
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            return scratch;
+        }
+
+        private void skipLine() {
+            while (pos < limit && buf.get(pos++) != '\n') {
+                // Skip
+            }
+            line++;
+        }
+
+        // Give up on the current record; the caller can still ask for its line
+        private IllegalArgumentException malformed(String problem) {
+            skipLine();
+            recordEnd = pos;
+            return new IllegalArgumentException(problem);
+        }
+    }
+
+    /**
+     * Finds record boundaries in a byte stream read block by block, so whole records can be
+     * handed to parallel parsers. Only tracks whether it is inside quotes, which is all a
+     * boundary needs; the parser checks everything else.
+     */
+    static final class Splitter {
+        private boolean quoted;
+        private int lines;
+        private int boundaryLines;
+
+        /**
+         * Scan more bytes of the stream.
+         *
+         * @param bytes the bytes
+         * @param from first byte not scanned before
+         * @param to end of the bytes read so far
+         * @return index just past the last line break outside quotes in [from, to), or -1
+         */
+        int scan(byte[] bytes, int from, int to) {
+            int boundary = -1;
+            for (int i = from; i < to; i++) {
+                byte b = bytes[i];
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n') {
+                    lines++;
+                    if (!quoted) {
+                        boundary = i + 1;
+                        boundaryLines = lines;
+                    }
+                }
+            }
+            return boundary;
+        }
+
+        /**
+         * @return line breaks up to the last boundary returned by {@link #scan}
+         */
+        int boundaryLines() {
+            return boundaryLines;
+        }
+    }
+}
@@ -0,0 +1,525 @@
+package managers;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import models.Bug;
+import models.Priority;
+import models.Status;
+
+/**
+ * Optional column store of the fields analytics scans group and filter on, kept outside the
+ * Java heap. Each bug is one row in dense id, status, priority and assignee columns held in
+ * direct buffers; assignee names live once in a heap-side symbol table and rows store their
+ * symbol number. Counting and grouping then run as primitive loops over the columns instead of
+ * walking millions of {@link Bug} objects, and the columns add nothing for the GC to trace.
+ *
+ * <pre>
+ * BugColumns columns = new BugColumns(manager);
+ * int[][] matrix = columns.countByStatusAndPriority();
+ * </pre>
+ *
+ * Rows follow the manager as a {@link BugSubscriber}: mutations reach the columns in batches a
+ * few milliseconds after they return, and cost the writers nothing but publishing the event.
+ * A deleted row is filled with the last row, so rows stay dense but are in no particular order. Assignees are grouped by
+ * lower-cased name, with no assignee counted under "", as in {@link StatisticsManager}.
+ * Scans may run on any number of threads at once; updates wait for running scans.
+ */
+public class BugColumns implements BugSubscriber {
+    private static final Status[] STATUSES = Status.values();
+    private static final Priority[] PRIORITIES = Priority.values();
+    private static final int INITIAL_CAPACITY = 1024;
+    // Smallest slice of rows worth a fork-join task of its own
+    private static final int MIN_SLICE = 1 << 16;
+
+    private final BugManager manager;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Columns; only rows below size are in use
+    private IntBuffer ids;
+    private ByteBuffer statuses;
+    private ByteBuffer priorities;
+    private IntBuffer assignees;
+    private int size;
+
+    // Row of each id: open addressing with linear probing, slots holding row + 1 and 0 when free
+    private IntBuffer slotIds;
+    private IntBuffer slotRows;
+    private int slotMask;
+
+    // Assignee symbol table; symbols are never removed, there are only a few hundred names
+    private final List<String> symbols = new ArrayList<>();
+    private final Map<String, Integer> symbolIds = new HashMap<>();
+
+    /**
+     * Build the columns from the manager's bugs and follow its later mutations.
+     *
+     * @param manager the bugs to mirror
+     */
+    public BugColumns(BugManager manager) {
+        this.manager = manager;
+        allocate(INITIAL_CAPACITY);
+        // Subscribe first, then copy, so no mutation falls in between. The copy holds the lock, so events
+        // arriving meanwhile wait and are applied after it; a bug is read as it is now and adding it
+        // again is an upsert, so a mutation both seen in the copy and delivered afterwards is harmless.
+        manager.subscribe(this);
+        load();
+    }
+
+    // Copy every bug into the columns
+    private void load() {
+        lock.writeLock().lock();
+        try {
+            List<Bug> bugs = manager.loadBugs();
+            int capacity = ids.capacity();
+            while (capacity < size + bugs.size()) capacity <<= 1;
+            if (capacity > ids.capacity()) grow(capacity);
+            for (Bug bug : bugs) {
+                add(bug);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stop following the manager and drop the columns. The off-heap memory is returned once the
+     * buffers are collected.
+     */
+    public void close() {
+        manager.unsubscribe(this);
+        lock.writeLock().lock();
+        try {
+            allocate(0);
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ========================= SCANS =========================
+
+    /**
+     * @return number of rows
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return bug counts indexed by status ordinal
+     */
+    public int[] countByStatus() {
+        int[] counts = new int[STATUSES.length];
+        lock.readLock().lock();
+        try {
+            ByteBuffer column = statuses;
+            for (int row = 0, n = size; row < n; row++) {
+                counts[column.get(row)]++;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return counts;
+    }
+
+    /**
+     * @return bug counts indexed by priority ordinal
+     */
+    public int[] countByPriority() {
+        int[] counts = new int[PRIORITIES.length];
+        lock.readLock().lock();
+        try {
+            ByteBuffer column = priorities;
+            for (int row = 0, n = size; row < n; row++) {
+                counts[column.get(row)]++;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return counts;
+    }
+
+    /**
+     * @return bug counts indexed by status ordinal, then priority ordinal
+     */
+    public int[][] countByStatusAndPriority() {
+        int[] flat = new int[STATUSES.length * PRIORITIES.length];
+        lock.readLock().lock();
+        try {
+            ByteBuffer s = statuses;
+            ByteBuffer p = priorities;
+            int width = PRIORITIES.length;
+            for (int row = 0, n = size; row < n; row++) {
+                flat[s.get(row) * width + p.get(row)]++;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        int[][] counts = new int[STATUSES.length][];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new int[PRIORITIES.length];
+            System.arraycopy(flat, i * PRIORITIES.length, counts[i], 0, PRIORITIES.length);
+        }
+        return counts;
+    }
+
+    /**
+     * @return bug counts keyed by lower-cased assignee name, leaving out names with no bugs
+     */
+    public Map<String, Integer> countByAssignee() {
+        int[] counts;
+        String[] names;
+        lock.readLock().lock();
+        try {
+            names = symbols.toArray(new String[0]);
+            counts = new int[names.length];
+            IntBuffer column = assignees;
+            for (int row = 0, n = size; row < n; row++) {
+                counts[column.get(row)]++;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Map<String, Integer> result = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            if (counts[i] > 0) result.put(names[i], counts[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Count the bugs with a given status and priority.
+     *
+     * @param status the status to match, or null for any
+     * @param priority the priority to match, or null for any
+     * @return number of matching bugs
+     */
+    public int count(Status status, Priority priority) {
+        lock.readLock().lock();
+        try {
+            if (status == null && priority == null) return size;
+            int count = 0;
+            if (priority == null) {
+                byte s = (byte) status.ordinal();
+                ByteBuffer column = statuses;
+                for (int row = 0, n = size; row < n; row++) {
+                    if (column.get(row) == s) count++;
+                }
+            } else if (status == null) {
+                byte p = (byte) priority.ordinal();
+                ByteBuffer column = priorities;
+                for (int row = 0, n = size; row < n; row++) {
+                    if (column.get(row) == p) count++;
+                }
+            } else {
+                byte s = (byte) status.ordinal();
+                byte p = (byte) priority.ordinal();
+                ByteBuffer sc = statuses;
+                ByteBuffer pc = priorities;
+                for (int row = 0, n = size; row < n; row++) {
+                    if (sc.get(row) == s && pc.get(row) == p) count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the ids of the bugs with a given status and priority.
+     *
+     * @param status the status to match, or null for any
+     * @param priority the priority to match, or null for any
+     * @return the matching ids in ascending order
+     */
+    public int[] ids(Status status, Priority priority) {
+        int[] result;
+        lock.readLock().lock();
+        try {
+            int s = status == null ? -1 : status.ordinal();
+            int p = priority == null ? -1 : priority.ordinal();
+            result = new int[count(status, priority)];
+            int found = 0;
+            for (int row = 0, n = size; row < n; row++) {
+                if ((s < 0 || statuses.get(row) == s) && (p < 0 || priorities.get(row) == p)) {
+                    result[found++] = ids.get(row);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Group and count all bugs in one pass over the columns. The rows are split across the
+     * common fork-join pool; each task counts its slice into its own primitive array and the
+     * arrays are summed as the tasks join. Updates wait until the pass is done.
+     *
+     * @param dimensions the dimensions to group by; none gives a single total
+     * @return the counts
+     */
+    public BugAggregate aggregate(BugAggregate.Dimension... dimensions) {
+        Set<BugAggregate.Dimension> grouped = EnumSet.noneOf(BugAggregate.Dimension.class);
+        Collections.addAll(grouped, dimensions);
+        lock.readLock().lock();
+        try {
+            List<String> names = new ArrayList<>(symbols);
+            int statusStride = BugAggregate.priorityGroups(grouped) * (grouped.contains(BugAggregate.Dimension.ASSIGNEE) ? names.size() : 1);
+            int priorityStride = grouped.contains(BugAggregate.Dimension.ASSIGNEE) ? names.size() : 1;
+            AggregateTask task = new AggregateTask(0, size,
+                    Math.max(MIN_SLICE, size / (ForkJoinPool.getCommonPoolParallelism() * 4)),
+                    BugAggregate.statusGroups(grouped) * statusStride,
+                    grouped.contains(BugAggregate.Dimension.STATUS) ? statusStride : 0,
+                    grouped.contains(BugAggregate.Dimension.PRIORITY) ? priorityStride : 0,
+                    grouped.contains(BugAggregate.Dimension.ASSIGNEE));
+            return new BugAggregate(grouped, names, ForkJoinPool.commonPool().invoke(task));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Counts one slice of rows, splitting it in two while it is larger than the slice size.
+    // Reads the columns without the lock: the caller holds the read lock for the whole pass.
+    @SuppressWarnings("serial") // Fork-join tasks are never serialized
+    private final class AggregateTask extends RecursiveTask<int[]> {
+        private final int from;
+        private final int to;
+        private final int slice;
+        private final int groups;
+        private final int statusStride; // 0 when not grouped by status
+        private final int priorityStride; // 0 when not grouped by priority
+        private final boolean byAssignee;
+
+        AggregateTask(int from, int to, int slice, int groups, int statusStride, int priorityStride, boolean byAssignee) {
+            this.from = from;
+            this.to = to;
+            this.slice = slice;
+            this.groups = groups;
+            this.statusStride = statusStride;
+            this.priorityStride = priorityStride;
+            this.byAssignee = byAssignee;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from <= slice) {
+                return scan();
+            }
+            int mid = (from + to) >>> 1;
+            AggregateTask left = new AggregateTask(from, mid, slice, groups, statusStride, priorityStride, byAssignee);
+            left.fork();
+            int[] counts = new AggregateTask(mid, to, slice, groups, statusStride, priorityStride, byAssignee).compute();
+            int[] other = left.join();
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other[i];
+            }
+            return counts;
+        }
+
+        private int[] scan() {
+            int[] counts = new int[groups];
+            ByteBuffer s = statuses;
+            ByteBuffer p = priorities;
+            IntBuffer a = assignees;
+            int ss = statusStride;
+            int ps = priorityStride;
+            if (ss != 0 && ps != 0 && byAssignee) {
+                for (int row = from; row < to; row++) counts[s.get(row) * ss + p.get(row) * ps + a.get(row)]++;
+            } else if (byAssignee) {
+                // Status or priority may also be grouped; an ungrouped one has stride 0
+                for (int row = from; row < to; row++) counts[(ss != 0 ? s.get(row) * ss : 0) + (ps != 0 ? p.get(row) * ps : 0) + a.get(row)]++;
+            } else if (ss != 0 && ps != 0) {
+                for (int row = from; row < to; row++) counts[s.get(row) * ss + p.get(row)]++;
+            } else if (ss != 0) {
+                for (int row = from; row < to; row++) counts[s.get(row)]++;
+            } else if (ps != 0) {
+                for (int row = from; row < to; row++) counts[p.get(row)]++;
+            } else {
+                counts[0] += to - from;
+            }
+            return counts;
+        }
+    }
+
+    // ========================= UPDATES =========================
+
+    // One batch under one write lock, so scans wait once per batch rather than once per mutation
+    @Override
+    public void onEvents(List<BugEvent> events) {
+        lock.writeLock().lock();
+        try {
+            for (BugEvent event : events) {
+                switch (event.getType()) {
+                    case CREATED: add(event.getBug()); break;
+                    case CHANGED: change(event.getBugId(), event.getField(), event.getNewValue()); break;
+                    case DELETED: delete(event.getBugId()); break;
+                    default: break; // Comments are not columns
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Events were lost, so start again from the bugs as they are now
+    @Override
+    public void onOverflow(long missed) {
+        lock.writeLock().lock();
+        try {
+            allocate(ids.capacity());
+            size = 0;
+            load();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(Bug bug) {
+        int row = row(bug.getId());
+        if (row < 0) {
+            if (size == ids.capacity()) grow(ids.capacity() * 2);
+            row = size++;
+            putRow(bug.getId(), row);
+            ids.put(row, bug.getId());
+        }
+        statuses.put(row, (byte) bug.getStatus().ordinal());
+        priorities.put(row, (byte) bug.getPriority().ordinal());
+        assignees.put(row, symbol(bug.getAssignedTo()));
+    }
+
+    private void delete(int id) {
+        int slot = slot(id);
+        int row = slotRows.get(slot) - 1;
+        if (row < 0) return;
+        removeSlot(slot);
+        int last = --size;
+        if (row != last) {
+            // Move the last row into the hole
+            int movedId = ids.get(last);
+            ids.put(row, movedId);
+            statuses.put(row, statuses.get(last));
+            priorities.put(row, priorities.get(last));
+            assignees.put(row, assignees.get(last));
+            slotRows.put(slot(movedId), row + 1);
+        }
+    }
+
+    private void change(int id, int field, String newValue) {
+        if (field < 3) return; // Title and description are not columns
+        int row = row(id);
+        if (row < 0) return;
+        switch (field) {
+            case 3: statuses.put(row, (byte) Status.valueOf(newValue).ordinal()); break;
+            case 4: priorities.put(row, (byte) Priority.valueOf(newValue).ordinal()); break;
+            case 5: assignees.put(row, symbol(newValue)); break;
+            default: break;
+        }
+    }
+
+    private int symbol(String assignee) {
+        String key = assignee == null ? "" : assignee.toLowerCase();
+        Integer symbol = symbolIds.get(key);
+        if (symbol == null) {
+            symbol = symbols.size();
+            symbols.add(key);
+            symbolIds.put(key, symbol);
+        }
+        return symbol;
+    }
+
+    // ========================= STORAGE =========================
+
+    private static IntBuffer intColumn(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    private void allocate(int capacity) {
+        ids = intColumn(capacity);
+        statuses = ByteBuffer.allocateDirect(capacity);
+        priorities = ByteBuffer.allocateDirect(capacity);
+        assignees = intColumn(capacity);
+        // At most half the slots in use keeps probe runs short
+        int slots = Math.max(2, Integer.highestOneBit(Math.max(1, capacity)) * 2);
+        slotIds = intColumn(slots);
+        slotRows = intColumn(slots);
+        slotMask = slots - 1;
+    }
+
+    private void grow(int capacity) {
+        IntBuffer oldIds = ids;
+        ByteBuffer oldStatuses = statuses;
+        ByteBuffer oldPriorities = priorities;
+        IntBuffer oldAssignees = assignees;
+        int n = size;
+        allocate(Math.max(INITIAL_CAPACITY, capacity));
+        for (int row = 0; row < n; row++) {
+            ids.put(row, oldIds.get(row));
+            putRow(oldIds.get(row), row);
+        }
+        statuses.put(0, oldStatuses, 0, n);
+        priorities.put(0, oldPriorities, 0, n);
+        assignees.put(0, oldAssignees, 0, n);
+    }
+
+    private int home(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ h >>> 16) & slotMask;
+    }
+
+    // Slot holding the id, or the free slot where it would go
+    private int slot(int id) {
+        int slot = home(id);
+        while (slotRows.get(slot) != 0 && slotIds.get(slot) != id) {
+            slot = (slot + 1) & slotMask;
+        }
+        return slot;
+    }
+
+    private int row(int id) {
+        return slotRows.get(slot(id)) - 1;
+    }
+
+    private void putRow(int id, int row) {
+        int slot = slot(id);
+        slotIds.put(slot, id);
+        slotRows.put(slot, row + 1);
+    }
+
+    // Free a slot and shift later entries of its probe run back, so lookups never stop short
+    private void removeSlot(int slot) {
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & slotMask;
+            if (slotRows.get(next) == 0) break;
+            int home = home(slotIds.get(next));
+            boolean movable = hole <= next ? home <= hole || home > next : home <= hole && home > next;
+            if (movable) {
+                slotIds.put(hole, slotIds.get(next));
+                slotRows.put(hole, slotRows.get(next));
+                hole = next;
+            }
+        }
+        slotRows.put(hole, 0);
+    }
+}
@@ -0,0 +1,49 @@
+package managers;
+
+import models.Bug;
+import models.Comment;
+
+/**
+ * One mutation made through a {@link BugManager}, as delivered to a {@link BugSubscriber}. Immutable.
+ * Events are numbered in the order they were published; the events of one bug are always in the
+ * order its mutations were applied. Replacing a bug publishes a deletion and then a creation.
+ */
+public final class BugEvent {
+    public enum Type { CREATED, CHANGED, COMMENTED, DELETED }
+
+    private final long sequence;
+    private final Type type;
+    private final Bug bug;
+    private final int field;
+    private final String oldValue;
+    private final String newValue;
+    private final Comment comment;
+
+    BugEvent(long sequence, Type type, Bug bug, int field, String oldValue, String newValue, Comment comment) {
+        this.sequence = sequence;
+        this.type = type;
+        this.bug = bug;
+        this.field = field;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+        this.comment = comment;
+    }
+
+    public long getSequence() { return sequence; }
+    public Type getType() { return type; }
+    public int getBugId() { return bug.getId(); }
+    // The bug itself, which may have changed again since; for DELETED, the bug that was removed
+    public Bug getBug() { return bug; }
+    // Field that changed (1-5, same numbering as updateBugField), or 0 unless CHANGED
+    public int getField() { return field; }
+    // Values before and after a change, status and priority by name; null unless CHANGED
+    public String getOldValue() { return oldValue; }
+    public String getNewValue() { return newValue; }
+    // The comment added, or null unless COMMENTED
+    public Comment getComment() { return comment; }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + type + " " + getBugId() + (type == Type.CHANGED ? " " + field + ": " + oldValue + " -> " + newValue : "");
+    }
+}
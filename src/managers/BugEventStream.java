@@ -0,0 +1,247 @@
+package managers;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import models.Bug;
+import models.Comment;
+
+/**
+ * Bounded ring of {@link BugEvent}s with one reader thread per subscriber.
+ *
+ * Publishing never blocks and takes no lock: it claims the next sequence number and fills in that
+ * sequence's slot, overwriting whatever was there. Slots are allocated once and reused, so publishing
+ * allocates nothing and the ring holds no events for the collector to copy; readers copy each event out.
+ * A slot's sequence is marked busy while it is filled and stamped when it is done, so a reader can
+ * tell a whole event from one being overwritten under it. A reader that finds an event newer than
+ * the one it expects has been lapped, reports the gap and jumps to the newest events; one that finds
+ * an older event has caught up, and waits. Readers poll, so writers never have to wake them: a reader
+ * goes straight on only after a full batch, so a steady trickle of events is gathered into batches
+ * rather than costing the writers a busy reader, and backs off further while nothing arrives.
+ */
+class BugEventStream {
+    // Slots in the ring; a power of two so the slot is a mask of the sequence. Kept modest because every
+    // slot keeps its bug and values reachable, which young collections then have to trace.
+    private static final int CAPACITY = 1 << 13;
+    // Most events handed to a subscriber in one call
+    private static final int BATCH_SIZE = 1024;
+    // Idle readers poll at this interval at first, doubling up to the maximum
+    private static final long MIN_WAIT_NANOS = 1_000_000;
+    private static final long MAX_WAIT_NANOS = 10_000_000;
+
+    // Slot sequences: the sequence of the event in the slot, EMPTY, or BUSY while it is being filled
+    private static final long EMPTY = -1;
+    private static final long BUSY = -2;
+
+    // Allocated by the first subscriber
+    private Slot[] slots;
+    private AtomicLongArray sequences;
+    private final AtomicLong next = new AtomicLong(); // Sequence of the next event to publish
+    private final Map<BugSubscriber, Reader> readers = new ConcurrentHashMap<>();
+    private volatile boolean subscribed;
+
+    /**
+     * @return true if anyone would read a published event; publishing is skipped otherwise
+     */
+    boolean hasSubscribers() {
+        return subscribed;
+    }
+
+    void created(Bug bug) {
+        publish(BugEvent.Type.CREATED, bug, 0, null, null, null);
+    }
+
+    void changed(Bug bug, int field, String oldValue, String newValue) {
+        publish(BugEvent.Type.CHANGED, bug, field, oldValue, newValue, null);
+    }
+
+    void commented(Bug bug, Comment comment) {
+        publish(BugEvent.Type.COMMENTED, bug, 0, null, null, comment);
+    }
+
+    void deleted(Bug bug) {
+        publish(BugEvent.Type.DELETED, bug, 0, null, null, null);
+    }
+
+    private void publish(BugEvent.Type type, Bug bug, int field, String oldValue, String newValue, Comment comment) {
+        long sequence = next.getAndIncrement();
+        int i = (int) sequence & (CAPACITY - 1);
+        // Only contended if a writer stalled here for a whole lap of the ring
+        while (true) {
+            long previous = sequences.get(i);
+            if (previous > sequence) {
+                return; // Overwritten by a later lap already; readers see it as missed
+            }
+            if (previous != BUSY && sequences.compareAndSet(i, previous, BUSY)) {
+                break;
+            }
+            Thread.onSpinWait();
+        }
+        VarHandle.storeStoreFence(); // The busy mark before any field
+        Slot slot = slots[i];
+        slot.type = type;
+        slot.bug = bug;
+        slot.field = field;
+        slot.oldValue = oldValue;
+        slot.newValue = newValue;
+        slot.comment = comment;
+        sequences.set(i, sequence);
+    }
+
+    /**
+     * Start delivering events published from now on to a subscriber. Subscribing twice does nothing.
+     */
+    synchronized void subscribe(BugSubscriber subscriber) {
+        if (readers.containsKey(subscriber)) {
+            return;
+        }
+        if (slots == null) {
+            Slot[] ring = new Slot[CAPACITY];
+            AtomicLongArray stamps = new AtomicLongArray(CAPACITY);
+            for (int i = 0; i < CAPACITY; i++) {
+                ring[i] = new Slot();
+                stamps.set(i, EMPTY);
+            }
+            slots = ring;
+            sequences = stamps; // Both seen by writers through the write of subscribed below
+        }
+        Reader reader = new Reader(subscriber, next.get());
+        readers.put(subscriber, reader);
+        subscribed = true;
+        reader.thread.start();
+    }
+
+    /**
+     * Stop delivering to a subscriber, once it has been given every event published before this call.
+     */
+    void unsubscribe(BugSubscriber subscriber) {
+        Reader reader;
+        synchronized (this) {
+            reader = readers.remove(subscriber);
+            subscribed = !readers.isEmpty();
+        }
+        if (reader != null) {
+            reader.stop();
+        }
+    }
+
+    /**
+     * Stop every subscriber, each once it has been given every event published so far.
+     */
+    void close() {
+        for (BugSubscriber subscriber : new ArrayList<>(readers.keySet())) {
+            unsubscribe(subscriber);
+        }
+    }
+
+    private static final class Slot {
+        BugEvent.Type type;
+        Bug bug;
+        int field;
+        String oldValue;
+        String newValue;
+        Comment comment;
+    }
+
+    private final class Reader implements Runnable {
+        private final BugSubscriber subscriber;
+        private final Thread thread;
+        private final List<BugEvent> batch = new ArrayList<>();
+        private volatile boolean running = true;
+        private long position; // Sequence of the next event to deliver
+
+        Reader(BugSubscriber subscriber, long position) {
+            this.subscriber = subscriber;
+            this.position = position;
+            this.thread = new Thread(this, "bug-events-" + subscriber.getClass().getSimpleName());
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long wait = MIN_WAIT_NANOS;
+            while (running) {
+                int delivered = deliver();
+                if (delivered == BATCH_SIZE) {
+                    continue; // Behind; catch up
+                }
+                wait = delivered > 0 ? MIN_WAIT_NANOS : Math.min(wait * 2, MAX_WAIT_NANOS);
+                LockSupport.parkNanos(this, wait);
+            }
+            // Whatever was published before the stop was asked for
+            long end = next.get();
+            while (position < end) {
+                if (deliver() == 0) {
+                    Thread.onSpinWait(); // An event claimed but not yet stored
+                }
+            }
+        }
+
+        /**
+         * Hand the subscriber the events available now, up to one batch.
+         *
+         * @return number of events handed over, with a gap counting as one
+         */
+        private int deliver() {
+            long missed = 0;
+            while (batch.size() < BATCH_SIZE) {
+                int i = (int) position & (CAPACITY - 1);
+                long sequence = sequences.get(i);
+                if (sequence == position) {
+                    Slot slot = slots[i];
+                    BugEvent event = new BugEvent(position, slot.type, slot.bug, slot.field, slot.oldValue, slot.newValue, slot.comment);
+                    VarHandle.loadLoadFence(); // Every field before the check
+                    sequence = sequences.get(i);
+                    if (sequence == position) {
+                        batch.add(event);
+                        position++;
+                        continue;
+                    }
+                }
+                if (sequence >= 0 && sequence < position) {
+                    break; // Not published yet
+                }
+                if (sequence == EMPTY || sequence == BUSY && next.get() - position <= CAPACITY) {
+                    break; // Being published
+                }
+                // Lapped: the expected event was overwritten, or is being
+                long newest = next.get();
+                missed = newest - position;
+                position = newest;
+                break;
+            }
+            int delivered = batch.size() + (missed > 0 ? 1 : 0);
+            try {
+                if (!batch.isEmpty()) {
+                    subscriber.onEvents(batch);
+                }
+                if (missed > 0) {
+                    subscriber.onOverflow(missed);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error in bug event subscriber: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+            return delivered;
+        }
+
+        void stop() {
+            running = false;
+            LockSupport.unpark(thread);
+            if (Thread.currentThread() == thread) {
+                return; // Unsubscribed from its own callback; the loop ends after this batch
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
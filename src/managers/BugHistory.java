@@ -0,0 +1,684 @@
+package managers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32C;
+import models.Bug;
+import models.Priority;
+import models.Status;
+
+/**
+ * Append-only segment file holding the field-level history of every bug, kept next to the bug snapshot.
+ * Each mutation appends one small record holding only what it changed, so history costs a few dozen
+ * bytes per edit and is never rewritten. Records wait in a buffer until it fills, they are read or
+ * {@link #sync} is called, so a bulk import does not pay a write per bug.
+ *
+ * <pre>
+ * header (16 bytes)  magic "BHST", version, base time (epoch millis when the file was started)
+ * records            length of the rest (int), CRC32C of the rest (int), kind (byte), bug id (int),
+ *                    distance back to the bug's previous record (varint, 0 for its first),
+ *                    time since the base (varint millis), author (string), then by kind:
+ *                    CHANGE  field (byte), old value, new value
+ *                    DELETE  title, description, status, priority and assignee as they were
+ * </pre>
+ *
+ * Varints are unsigned LEB128. A string is its UTF-8 length plus one as a varint, 0 for null, then
+ * its bytes; a status or priority value is one byte holding the ordinal.
+ * <p>
+ * A bug's records form a chain running back from its newest one, so its state at a point in time is
+ * found by undoing, from its current state, only the changes made after that time. Record times never
+ * go backwards, so the file is in time order; the time and offset of the first record in every block
+ * of the file are kept in memory, and a query over a time range reads just the blocks the range covers.
+ * The newest record of each bug and the block list are saved to an index file by {@link #checkpoint},
+ * so opening reads that file and scans only the records appended since. A torn last record left by
+ * a crash fails its checksum and is cut off.
+ * <p>
+ * Bugs that predate the history have no record of how they got to their state when it began,
+ * and read as having been in that state all along.
+ */
+class BugHistory implements Closeable {
+    private static final int MAGIC = 0x42485354; // "BHST"
+    private static final int INDEX_MAGIC = 0x48494458; // "HIDX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    // Record layout: length and checksum, then the checksummed part starting with the kind
+    private static final int RECORD_HEAD = 8;
+    private static final int KIND = 8;
+    private static final int BUG_ID = 9;
+    private static final int CHAIN = 13;
+    // Smallest record: kind, bug id and three one-byte varints
+    private static final int MIN_REST = 8;
+
+    private static final byte CREATE = 'A';
+    private static final byte CHANGE = 'U';
+    private static final byte DELETE = 'D';
+    private static final long NONE = -1;
+
+    // A block starts at the first record at or after each multiple of this many bytes
+    private static final int BLOCK_BYTES = 64 << 10;
+
+    private final File file;
+    private final File indexFile;
+    private FileChannel channel;
+    private long base; // Epoch millis that record times count from
+    private long length; // End of the last record, including those still pending
+    private long lastTime; // Time of the newest record; later ones never go below it
+    private Heads heads = new Heads();
+    private long[] blockTimes = new long[16];
+    private long[] blockOffsets = new long[16];
+    private int blocks;
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer scratch = ByteBuffer.allocate(256);
+    private final CRC32C crc = new CRC32C();
+    private int unsynced; // Records handed to the OS since the last sync
+
+    /**
+     * Open a history, reading its index and the records appended after it.
+     *
+     * @param path the history file; created on the first append
+     * @param indexPath the index file written by checkpoints
+     */
+    BugHistory(String path, String indexPath) {
+        this.file = new File(path);
+        this.indexFile = new File(indexPath);
+        try {
+            load();
+        } catch (IOException e) {
+            System.err.println("Error loading bug history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Record that a bug was added.
+     */
+    synchronized void created(int bugId, String author) {
+        try {
+            begin(CREATE, bugId, author);
+            finish(bugId);
+        } catch (IOException e) {
+            System.err.println("Error writing bug history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Record a change of one field.
+     *
+     * @param field 1-5, same numbering as updateBugField
+     * @param oldValue the value before; status and priority by name
+     * @param newValue the value after; status and priority by name
+     */
+    synchronized void changed(int bugId, int field, String oldValue, String newValue, String author) {
+        try {
+            begin(CHANGE, bugId, author);
+            pending.put((byte) field);
+            putValue(field, oldValue);
+            putValue(field, newValue);
+            finish(bugId);
+        } catch (IOException e) {
+            System.err.println("Error writing bug history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Record that a bug was deleted, keeping its last state so earlier states can still be read.
+     */
+    synchronized void deleted(Bug bug, String author) {
+        try {
+            begin(DELETE, bug.getId(), author);
+            putString(bug.getTitle());
+            putString(bug.getDescription());
+            pending.put((byte) bug.getStatus().ordinal());
+            pending.put((byte) bug.getPriority().ordinal());
+            putString(bug.getAssignedTo());
+            finish(bug.getId());
+        } catch (IOException e) {
+            System.err.println("Error writing bug history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param bugId the bug
+     * @return every recorded change of the bug, oldest first
+     */
+    synchronized List<BugChange> history(int bugId) {
+        List<BugChange> result = new ArrayList<>();
+        try {
+            flush();
+            long offset = heads.get(bugId);
+            while (offset != NONE) {
+                ByteBuffer record = read(offset);
+                result.add(decode(record));
+                offset = previous(record, offset);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading bug history: " + e.getMessage());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Work out a bug's state at a point in time by undoing, from its current state, what changed after it.
+     * Call with the bug locked, so that no change lands between reading it and walking its history.
+     *
+     * @param current the bug as it is now, or null if it does not exist now
+     * @param bugId the bug's id
+     * @param time epoch millis
+     * @return a copy of the bug as it was then, without comments; null if it did not exist then
+     */
+    synchronized Bug at(Bug current, int bugId, long time) {
+        String[] state = current == null ? null : new String[] {
+                current.getTitle(), current.getDescription(), current.getStatus().name(),
+                current.getPriority().name(), current.getAssignedTo()};
+        try {
+            flush();
+            long offset = heads.get(bugId);
+            while (offset != NONE) {
+                ByteBuffer record = read(offset);
+                byte kind = record.get(KIND);
+                record.position(CHAIN);
+                long previous = previous(getVarLong(record), offset);
+                if (base + getVarLong(record) <= time) {
+                    break;
+                }
+                getString(record); // Author
+                if (kind == CREATE) {
+                    state = null;
+                } else if (kind == DELETE) {
+                    state = new String[] {getString(record), getString(record),
+                            getValue(record, 3), getValue(record, 4), getString(record)};
+                } else if (state != null) {
+                    int field = record.get();
+                    state[field - 1] = getValue(record, field);
+                }
+                offset = previous;
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading bug history: " + e.getMessage());
+        }
+        if (state == null) {
+            return null;
+        }
+        return new Bug(bugId, state[0], state[1], Status.valueOf(state[2]), Priority.valueOf(state[3]), state[4]);
+    }
+
+    /**
+     * Every change of a field across all bugs within a time range, reading only the blocks of the file
+     * the range covers.
+     *
+     * @param field 1-5 for changes of that field, or 0 for every change, creation and deletion
+     * @param from epoch millis, inclusive
+     * @param to epoch millis, inclusive
+     * @return the changes in the order they were made
+     */
+    synchronized List<BugChange> changes(int field, long from, long to) {
+        List<BugChange> result = new ArrayList<>();
+        if (length == 0 || from > to) {
+            return result;
+        }
+        // Find the first block starting at or after the range; everything before the block ahead of it is earlier
+        int lo = 0;
+        int hi = blocks;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blockTimes[mid] < from) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        long position = lo > 0 ? blockOffsets[lo - 1] : HEADER_SIZE;
+        try {
+            flush();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+                in.skipNBytes(position);
+                byte[] body = new byte[256];
+                while (position < length) {
+                    int rest = in.readInt();
+                    in.readInt(); // Checksum, verified when the file was opened
+                    if (body.length < RECORD_HEAD + rest) {
+                        body = new byte[RECORD_HEAD + rest];
+                    }
+                    in.readFully(body, RECORD_HEAD, rest);
+                    position += RECORD_HEAD + rest;
+                    ByteBuffer record = ByteBuffer.wrap(body, 0, RECORD_HEAD + rest);
+                    record.position(CHAIN);
+                    getVarLong(record);
+                    long time = base + getVarLong(record);
+                    if (time < from) continue;
+                    if (time > to) break;
+                    if (field == 0 || body[KIND] == CHANGE && fieldOf(record) == field) {
+                        result.add(decode(record));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading bug history: " + e.getMessage());
+        }
+        return result;
+    }
+
+    // Field number of a CHANGE record positioned just after its time
+    private static int fieldOf(ByteBuffer record) {
+        int mark = record.position();
+        getString(record);
+        int field = record.get();
+        record.position(mark);
+        return field;
+    }
+
+    /**
+     * Save the index so the next open can skip every record written so far.
+     */
+    synchronized void checkpoint() {
+        if (length == 0) {
+            return; // Nothing was ever recorded
+        }
+        try {
+            flush();
+            channel().force(false);
+            unsynced = 0;
+            writeIndex();
+        } catch (IOException e) {
+            System.err.println("Error saving bug history index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Force every appended record to disk.
+     */
+    synchronized void sync() throws IOException {
+        flush();
+        if (channel != null && unsynced > 0) {
+            channel.force(false);
+        }
+        unsynced = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // Start a record in the pending buffer, leaving room for its length and checksum
+    private void begin(byte kind, int bugId, String author) throws IOException {
+        if (length == 0) {
+            base = System.currentTimeMillis();
+            lastTime = base;
+            pending.putInt(MAGIC).putInt(VERSION).putLong(base);
+            length = HEADER_SIZE;
+        }
+        // Leave a record room to start in; long text grows the buffer as it is written
+        if (pending.remaining() < 1 << 10) {
+            flush();
+        }
+        lastTime = Math.max(lastTime, System.currentTimeMillis());
+        long head = heads.get(bugId);
+        pending.mark();
+        pending.putLong(0);
+        pending.put(kind).putInt(bugId);
+        putVarLong(pending, head == NONE ? 0 : length - head);
+        putVarLong(pending, lastTime - base);
+        putString(author);
+    }
+
+    // Fill in the length and checksum of the record begun last and make it the bug's newest
+    private void finish(int bugId) throws IOException {
+        int end = pending.position();
+        pending.reset();
+        int start = pending.position();
+        int size = end - start;
+        pending.putInt(start, size - RECORD_HEAD);
+        pending.putInt(start + 4, checksum(pending.array(), start, size));
+        pending.position(end);
+        long offset = length;
+        length += size;
+        heads.put(bugId, offset);
+        noteBlock(lastTime, offset);
+        unsynced++;
+    }
+
+    private void noteBlock(long time, long offset) {
+        if (blocks > 0 && offset / BLOCK_BYTES == blockOffsets[blocks - 1] / BLOCK_BYTES) {
+            return;
+        }
+        if (blocks == blockTimes.length) {
+            blockTimes = Arrays.copyOf(blockTimes, blocks * 2);
+            blockOffsets = Arrays.copyOf(blockOffsets, blocks * 2);
+        }
+        blockTimes[blocks] = time;
+        blockOffsets[blocks] = offset;
+        blocks++;
+    }
+
+    private int checksum(byte[] record, int start, int size) {
+        crc.reset();
+        crc.update(record, start + RECORD_HEAD, size - RECORD_HEAD);
+        return (int) crc.getValue();
+    }
+
+    private void flush() throws IOException {
+        if (pending.position() == 0) {
+            return;
+        }
+        pending.flip();
+        long position = length - pending.remaining();
+        FileChannel channel = channel();
+        while (pending.hasRemaining()) {
+            position += channel.write(pending, position);
+        }
+        pending.clear();
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return channel;
+    }
+
+    // Read one whole record into the scratch buffer
+    private ByteBuffer read(long offset) throws IOException {
+        scratch.clear();
+        scratch.limit((int) Math.min(scratch.capacity(), length - offset));
+        readFully(scratch, offset);
+        int size = RECORD_HEAD + scratch.getInt(0);
+        if (size > scratch.limit()) {
+            if (size > scratch.capacity()) {
+                scratch = ByteBuffer.allocate(size);
+            }
+            scratch.clear().limit(size);
+            readFully(scratch, offset);
+        }
+        scratch.flip();
+        return scratch;
+    }
+
+    private void readFully(ByteBuffer buf, long offset) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel().read(buf, offset);
+            if (n < 0) {
+                throw new EOFException("Bug history record at " + offset + " is truncated");
+            }
+            offset += n;
+        }
+    }
+
+    // Offset of the record before this one in its bug's chain
+    private static long previous(ByteBuffer record, long offset) {
+        record.position(CHAIN);
+        return previous(getVarLong(record), offset);
+    }
+
+    private static long previous(long distance, long offset) {
+        return distance == 0 ? NONE : offset - distance;
+    }
+
+    private BugChange decode(ByteBuffer record) {
+        byte kind = record.get(KIND);
+        int bugId = record.getInt(BUG_ID);
+        record.position(CHAIN);
+        getVarLong(record);
+        long time = base + getVarLong(record);
+        String author = getString(record);
+        if (kind == CREATE) {
+            return new BugChange(bugId, BugChange.Type.CREATED, time, author, 0, null, null);
+        }
+        if (kind == DELETE) {
+            return new BugChange(bugId, BugChange.Type.DELETED, time, author, 0, null, null);
+        }
+        int field = record.get();
+        String oldValue = getValue(record, field);
+        return new BugChange(bugId, BugChange.Type.CHANGED, time, author, field, oldValue, getValue(record, field));
+    }
+
+    private void putValue(int field, String value) {
+        if (field == 3) {
+            pending.put((byte) Status.valueOf(value).ordinal());
+        } else if (field == 4) {
+            pending.put((byte) Priority.valueOf(value).ordinal());
+        } else {
+            putString(value);
+        }
+    }
+
+    private static String getValue(ByteBuffer buf, int field) {
+        if (field == 3) return Status.values()[buf.get()].name();
+        if (field == 4) return Priority.values()[buf.get()].name();
+        return getString(buf);
+    }
+
+    private void putString(String s) {
+        if (s == null) {
+            pending.put((byte) 0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        // Room for the value and the fixed-size values that may follow it
+        if (pending.remaining() < bytes.length + 16) {
+            grow(bytes.length + 16);
+        }
+        putVarLong(pending, bytes.length + 1);
+        pending.put(bytes);
+    }
+
+    // Make room in the pending buffer without moving the record begun last, which must stay contiguous
+    private void grow(int needed) {
+        int end = pending.position();
+        pending.reset();
+        int start = pending.position();
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, end + needed));
+        bigger.put(pending.array(), 0, start).mark();
+        bigger.put(pending.array(), start, end - start);
+        pending = bigger;
+    }
+
+    private static String getString(ByteBuffer buf) {
+        int size = (int) getVarLong(buf) - 1;
+        if (size < 0) {
+            return null;
+        }
+        String s = new String(buf.array(), buf.position(), size, StandardCharsets.UTF_8);
+        buf.position(buf.position() + size);
+        return s;
+    }
+
+    private static void putVarLong(ByteBuffer buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buf) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        long size = file.length();
+        if (size < HEADER_SIZE) {
+            channel().truncate(0); // Crashed before the header was written
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a bug history of a known version: " + file);
+            }
+            base = in.readLong();
+        }
+        lastTime = base;
+        length = scan(readIndex(size), size);
+        if (length < size) {
+            // Cut off a torn record so the next one does not land after it
+            channel().truncate(length);
+        }
+    }
+
+    // Load the index if it describes this history; returns where the scan starts
+    private long readIndex(long size) {
+        if (!indexFile.exists()) {
+            return HEADER_SIZE;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 1 << 16))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != VERSION || in.readLong() != base) {
+                return HEADER_SIZE;
+            }
+            long covered = in.readLong();
+            if (covered > size) {
+                return HEADER_SIZE;
+            }
+            long newest = in.readLong();
+            Heads loaded = new Heads();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                loaded.put(in.readInt(), in.readLong());
+            }
+            int blockCount = in.readInt();
+            long[] times = new long[Math.max(16, blockCount)];
+            long[] offsets = new long[times.length];
+            for (int i = 0; i < blockCount; i++) {
+                times[i] = in.readLong();
+                offsets[i] = in.readLong();
+            }
+            heads = loaded;
+            blockTimes = times;
+            blockOffsets = offsets;
+            blocks = blockCount;
+            lastTime = newest;
+            return covered;
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable bug history index: " + e.getMessage());
+            heads = new Heads();
+            blocks = 0;
+            lastTime = base;
+            return HEADER_SIZE;
+        }
+    }
+
+    // Index the records from an offset on; returns the end of the last intact one
+    private long scan(long from, long size) throws IOException {
+        long position = from;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            in.skipNBytes(from);
+            byte[] body = new byte[256];
+            while (size - position >= RECORD_HEAD + MIN_REST) {
+                int rest = in.readInt();
+                int sum = in.readInt();
+                if (rest < MIN_REST || rest > size - position - RECORD_HEAD) break;
+                if (body.length < RECORD_HEAD + rest) {
+                    body = new byte[RECORD_HEAD + rest];
+                }
+                in.readFully(body, RECORD_HEAD, rest);
+                if (checksum(body, 0, RECORD_HEAD + rest) != sum) break;
+                ByteBuffer record = ByteBuffer.wrap(body);
+                record.position(CHAIN);
+                getVarLong(record);
+                long time = base + getVarLong(record);
+                lastTime = Math.max(lastTime, time);
+                heads.put(record.getInt(BUG_ID), position);
+                noteBlock(time, position);
+                position += RECORD_HEAD + rest;
+            }
+        }
+        return position;
+    }
+
+    private void writeIndex() throws IOException {
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(base);
+            out.writeLong(length);
+            out.writeLong(lastTime);
+            out.writeInt(heads.size);
+            for (int slot = 0; slot < heads.ids.length; slot++) {
+                if (heads.heads[slot] == 0) continue;
+                out.writeInt(heads.ids[slot]);
+                out.writeLong(heads.heads[slot]);
+            }
+            out.writeInt(blocks);
+            for (int i = 0; i < blocks; i++) {
+                out.writeLong(blockTimes[i]);
+                out.writeLong(blockOffsets[i]);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Bug id to the offset of its newest record. Open addressing with linear probing;
+    // a head of 0 marks a free slot, as no record starts there. Entries are never removed.
+    private static final class Heads {
+        int[] ids = new int[16];
+        long[] heads = new long[16];
+        int size;
+
+        long get(int id) {
+            int mask = ids.length - 1;
+            for (int slot = home(id, mask); heads[slot] != 0; slot = (slot + 1) & mask) {
+                if (ids[slot] == id) return heads[slot];
+            }
+            return NONE;
+        }
+
+        void put(int id, long head) {
+            if ((size + 1) * 2 > ids.length) {
+                grow();
+            }
+            int mask = ids.length - 1;
+            int slot = home(id, mask);
+            while (heads[slot] != 0 && ids[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            if (heads[slot] == 0) size++;
+            ids[slot] = id;
+            heads[slot] = head;
+        }
+
+        private void grow() {
+            int[] oldIds = ids;
+            long[] oldHeads = heads;
+            ids = new int[oldIds.length * 2];
+            heads = new long[oldIds.length * 2];
+            size = 0;
+            for (int slot = 0; slot < oldIds.length; slot++) {
+                if (oldHeads[slot] != 0) put(oldIds[slot], oldHeads[slot]);
+            }
+        }
+
+        private static int home(int id, int mask) {
+            int h = id * 0x9E3779B9;
+            return (h ^ h >>> 16) & mask;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package managers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of {@link BugManager#importBugs(String)}: how many records were committed,
+ * how many were rejected, and why the first few were rejected.
+ */
+public class BugImportResult {
+    // Keep the report readable when a whole file is in the wrong format
+    private static final int MAX_ERRORS = 20;
+
+    private int imported;
+    private int rejected;
+    private final List<String> errors = new ArrayList<>();
+
+    void reject(int line, String reason) {
+        rejected++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add("line " + line + ": " + reason);
+        }
+    }
+
+    void setImported(int imported) {
+        this.imported = imported;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return reasons for the first rejected records, each prefixed with its line number
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+}
@@ -0,0 +1,87 @@
+package managers;
+
+import java.util.ArrayList;
+import java.util.List;
+import models.Bug;
+import models.Comment;
+
+/**
+ * One-line JSON encoding of a bug, used for JSONL import and export:
+ *
+ * <pre>
+ * {"id":7,"title":"...","description":"...","status":"NEW","priority":"LOW","assignedTo":"...","comments":["..."]}
+ * </pre>
+ *
+ * Comments are written as their text only.
+ * The reader accepts exactly these flat objects (keys in any order, unknown keys with string,
+ * number, boolean or null values skipped), using {@link JsonText}.
+ */
+class BugJson {
+    /**
+     * Raw field values of one decoded line. Status and priority stay strings so the caller can validate them.
+     */
+    static final class Fields {
+        Integer id;
+        String title = "";
+        String description = "";
+        String status;
+        String priority;
+        String assignedTo = "";
+        List<String> comments = new ArrayList<>();
+    }
+
+    private BugJson() {
+    }
+
+    static String format(Bug bug) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("{\"id\":").append(bug.getId());
+        sb.append(",\"title\":");
+        quote(sb, bug.getTitle());
+        sb.append(",\"description\":");
+        quote(sb, bug.getDescription());
+        sb.append(",\"status\":");
+        quote(sb, bug.getStatus().name());
+        sb.append(",\"priority\":");
+        quote(sb, bug.getPriority().name());
+        sb.append(",\"assignedTo\":");
+        quote(sb, bug.getAssignedTo());
+        sb.append(",\"comments\":[");
+        List<Comment> comments = bug.getComments();
+        for (int i = 0; i < comments.size(); i++) {
+            if (i > 0) sb.append(',');
+            quote(sb, comments.get(i).getText());
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Decode one line.
+     *
+     * @param line the JSON object
+     * @return its fields
+     * @throws IllegalArgumentException if the line is not a bug object
+     */
+    static Fields parse(String line) {
+        JsonText in = new JsonText(line);
+        Fields fields = new Fields();
+        in.object(key -> {
+            switch (key) {
+                case "id": fields.id = in.integer(); break;
+                case "title": fields.title = in.string(); break;
+                case "description": fields.description = in.string(); break;
+                case "status": fields.status = in.string(); break;
+                case "priority": fields.priority = in.string(); break;
+                case "assignedTo": fields.assignedTo = in.string(); break;
+                case "comments": fields.comments = in.strings(); break;
+                default: in.value(); break;
+            }
+        });
+        return fields;
+    }
+
+    // Missing text is exported as empty rather than null
+    private static void quote(StringBuilder sb, String s) {
+        JsonText.quote(sb, s != null ? s : "");
+    }
+}
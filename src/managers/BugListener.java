@@ -0,0 +1,38 @@
+package managers;
+
+import models.Bug;
+import models.Comment;
+
+/**
+ * Receives every mutation made through a {@link BugManager}, right after it is applied,
+ * on the thread that made it and while the bug is still locked.
+ * Register with {@link BugManager#addListener(BugListener)}. See {@link BugSubscriber}
+ * for receiving mutations without holding up the writer.
+ */
+public interface BugListener {
+
+    /**
+     * A bug was added.
+     */
+    default void bugAdded(Bug bug) {}
+
+    /**
+     * A field of a bug was changed.
+     *
+     * @param bug the bug, already holding the new value
+     * @param field the field that changed (1-5, same numbering as {@link BugManager#updateBugField})
+     * @param oldValue the previous value; status and priority are given by name
+     * @param newValue the new value; status and priority are given by name
+     */
+    default void bugChanged(Bug bug, int field, String oldValue, String newValue) {}
+
+    /**
+     * A comment was added to a bug.
+     */
+    default void bugCommented(Bug bug, Comment comment) {}
+
+    /**
+     * A bug was deleted.
+     */
+    default void bugDeleted(Bug bug) {}
+}
@@ -0,0 +1,326 @@
+package managers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import models.Bug;
+
+/**
+ * Append-only log of bug mutations, kept next to the bugs file.
+ * Each mutation is written as one {@link BugCodec} record, so a change costs the size of the change
+ * instead of a rewrite of every bug, and values may hold any text. Records are idempotent, which
+ * lets the log be replayed over a snapshot that already contains some of its changes:
+ *
+ * <pre>
+ * A,&lt;bug record fields&gt;       add (or replace) a whole bug, apart from its comments
+ * U,&lt;id&gt;,&lt;field&gt;,&lt;value&gt;      set one field (1-5, same numbering as updateBugField)
+ * C,&lt;id&gt;,&lt;index&gt;,&lt;comment&gt;   add a comment if the bug has exactly index comments (older logs only)
+ * D,&lt;id&gt;                      delete a bug
+ * S,&lt;next id&gt;                 bug ids below this one have been handed out
+ * </pre>
+ *
+ * Comments are kept in the {@link CommentSegment}; add records of older logs may still carry them.
+ * The log starts with the codec's header line. A log without it holds unescaped schema v1 lines;
+ * it is still read, and should be folded into the snapshot before anything is appended.
+ * A torn last record left by a crash is skipped when reading and cut off before the next write.
+ *
+ * Appending only queues a record in memory; {@link #flush()} writes every queued record with one
+ * fsync, and is called by whoever decides how long a change may stay in memory. While queued, a
+ * record is dropped when a later one makes it redundant: a field set again, or a bug that is then
+ * added or deleted as a whole. A bug's records keep their order; records of different bugs touch
+ * different bugs, and sequence records are replayed as a maximum, so their order does not matter.
+ */
+class BugLog implements Closeable {
+    static final char ADD = 'A';
+    static final char UPDATE = 'U';
+    static final char COMMENT = 'C';
+    static final char DELETE = 'D';
+    static final char SEQUENCE = 'S';
+
+    private final File file;
+    private FileOutputStream out;
+    private Writer writer;
+    private final StringBuilder line = new StringBuilder(256);
+    private int records; // Written to the file; queued records are counted separately
+    private long validLength = -1; // End of the last complete record, once read
+    private boolean legacy;
+    // Queued records, keyed so that a later record for the same bug and field replaces an earlier one:
+    // the id shifted left by three, plus the field number for an update or 0 for an add or delete
+    private Map<Long, String> queued = new LinkedHashMap<>();
+    private int queuedSequence; // Highest sequence record queued, or 0
+    // Held while records are written, so a flush, truncate or close sees the file to itself
+    // while appends go on queueing
+    private final Object fileLock = new Object();
+
+    BugLog(String path) {
+        this.file = new File(path);
+    }
+
+    /**
+     * Read every complete record in the log. A torn last record left by a crash is skipped.
+     *
+     * @return records in write order; element 0 of each is the type, the rest are its fields
+     */
+    synchronized List<String[]> readRecords() {
+        List<String[]> result = new ArrayList<>();
+        validLength = 0;
+        legacy = false;
+        if (!file.exists()) {
+            records = 0;
+            return result;
+        }
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (buf.hasRemaining() && BugCodec.version(buf) == 1) {
+                legacy = true;
+                readLegacy(new String(buf.array(), StandardCharsets.UTF_8), result);
+                byte[] bytes = buf.array();
+                for (int i = bytes.length; i > 0 && validLength == 0; i--) {
+                    if (bytes[i - 1] == '\n') validLength = i;
+                }
+            } else {
+                BugCodec.Reader reader = new BugCodec.Reader(buf, 1);
+                reader.readHeader();
+                validLength = reader.recordEnd();
+                List<String> fields = new ArrayList<>();
+                while (true) {
+                    try {
+                        if (!reader.next(fields)) break;
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Skipping malformed bug log record on line " + reader.recordLine() + ": " + e.getMessage());
+                        continue;
+                    }
+                    if (!reader.terminated()) break; // Torn last record
+                    validLength = reader.recordEnd();
+                    if (fields.get(0).length() == 1) {
+                        result.add(fields.toArray(new String[0]));
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error reading bug log: " + e.getMessage());
+        }
+        records = result.size();
+        return result;
+    }
+
+    // Split schema v1 lines into the same fields a v2 record has. Their values were never escaped,
+    // so a comma or pipe inside one was already ambiguous when it was written.
+    private void readLegacy(String text, List<String[]> result) {
+        String[] lines = text.split("\n", -1);
+        // The last piece is empty after a final line break, and a torn record otherwise
+        for (int i = 0; i < lines.length - 1; i++) {
+            String line = lines[i];
+            if (line.length() < 3 || line.charAt(1) != ',') continue;
+            String body = line.substring(2);
+            String type = line.substring(0, 1);
+            switch (line.charAt(0)) {
+                case ADD: {
+                    String[] parts = body.split(",", -1);
+                    if (parts.length != 7) continue;
+                    List<String> fields = new ArrayList<>();
+                    fields.add(type);
+                    for (int f = 0; f < BugCodec.BUG_FIELDS; f++) fields.add(parts[f]);
+                    if (!parts[6].trim().isEmpty()) Collections.addAll(fields, parts[6].trim().split("\\|"));
+                    result.add(fields.toArray(new String[0]));
+                    break;
+                }
+                case UPDATE:
+                case COMMENT: {
+                    String[] parts = body.split(",", 3);
+                    if (parts.length == 3) result.add(new String[] {type, parts[0], parts[1], parts[2]});
+                    break;
+                }
+                default:
+                    result.add(new String[] {type, body});
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @return true if the log read last holds schema v1 lines
+     */
+    synchronized boolean isLegacy() {
+        return legacy;
+    }
+
+    /**
+     * Queue an add record for a bug, without its comments. Queued records of the bug are dropped.
+     */
+    synchronized void appendBug(Bug bug) {
+        line.setLength(0);
+        line.append(ADD).append(',');
+        BugCodec.appendFields(line, bug);
+        queueWhole(bug.getId());
+    }
+
+    /**
+     * Queue a delete record. Queued records of the bug are dropped.
+     */
+    synchronized void appendDelete(int id) {
+        line.setLength(0);
+        line.append(DELETE).append(',').append(id);
+        queueWhole(id);
+    }
+
+    /**
+     * Queue an update record, replacing a queued update of the same field.
+     *
+     * @param field 1-5, same numbering as updateBugField
+     */
+    synchronized void appendUpdate(int id, int field, String value) {
+        line.setLength(0);
+        line.append(UPDATE).append(',').append(id).append(',').append(field).append(',');
+        BugCodec.appendField(line, value);
+        queue(key(id, field));
+    }
+
+    /**
+     * Queue a sequence record. Only the highest queued one is written.
+     *
+     * @param next bug ids below this one have been handed out
+     */
+    synchronized void appendSequence(int next) {
+        queuedSequence = Math.max(queuedSequence, next);
+    }
+
+    private static long key(int id, int field) {
+        return (long) id << 3 | field;
+    }
+
+    // An add or delete stands for the whole bug, so nothing queued before it for the bug matters
+    private void queueWhole(int id) {
+        for (int field = 1; field <= 5; field++) {
+            queued.remove(key(id, field));
+        }
+        queue(key(id, 0));
+    }
+
+    private void queue(long key) {
+        line.append('\n');
+        // Removed first so the record moves behind the ones queued since the record it replaces
+        queued.remove(key);
+        queued.put(key, line.toString());
+    }
+
+    /**
+     * @return number of records queued and not yet written
+     */
+    synchronized int queuedSize() {
+        return queued.size() + (queuedSequence > 0 ? 1 : 0);
+    }
+
+    /**
+     * Write every queued record and force the log to disk. Records queued while this runs
+     * are left for the next flush.
+     */
+    void flush() throws IOException {
+        synchronized (fileLock) {
+            Map<Long, String> batch;
+            int sequence;
+            synchronized (this) {
+                if (queued.isEmpty() && queuedSequence == 0) {
+                    return;
+                }
+                batch = queued;
+                sequence = queuedSequence;
+                queued = new LinkedHashMap<>();
+                queuedSequence = 0;
+            }
+            open();
+            if (sequence > 0) {
+                writer.append(SEQUENCE).append(',').append(String.valueOf(sequence)).append('\n');
+            }
+            for (String record : batch.values()) {
+                writer.append(record);
+            }
+            writer.flush();
+            out.getFD().sync();
+            synchronized (this) {
+                records += batch.size() + (sequence > 0 ? 1 : 0);
+            }
+        }
+    }
+
+    /**
+     * @return number of records in the log, queued ones included
+     */
+    synchronized int size() {
+        return records + queuedSize();
+    }
+
+    /**
+     * Drop every record, queued ones included. Called once a snapshot holding all of them is safely on disk.
+     */
+    void truncate() {
+        synchronized (fileLock) {
+            try {
+                closeFile();
+                new FileOutputStream(file).close();
+                synchronized (this) {
+                    queued.clear();
+                    queuedSequence = 0;
+                    records = 0;
+                    validLength = 0;
+                    legacy = false;
+                }
+            } catch (IOException e) {
+                System.err.println("Error truncating bug log: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Flush the queued records and release the file. Records queued later open it again.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (fileLock) {
+            flush();
+            closeFile();
+        }
+    }
+
+    private void closeFile() throws IOException {
+        if (out != null) {
+            writer.close();
+            out = null;
+            writer = null;
+        }
+    }
+
+    private void open() throws IOException {
+        if (out != null) {
+            return;
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        if (validLength < 0) {
+            readRecords();
+        }
+        if (file.exists() && file.length() > validLength) {
+            // Cut off a half-written record so it cannot merge with the next one
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        boolean empty = !file.exists() || file.length() == 0;
+        out = new FileOutputStream(file, true);
+        writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (empty) {
+            writer.write(BugCodec.HEADER);
+            writer.write('\n');
+        }
+    }
+}
@@ -1,95 +1,965 @@
 package managers;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 import models.Bug;
+import models.Comment;
 import models.Priority;
 import models.Status;
 
 public class BugManager {
-    private static final String FILE_PATH = "data/bugs.txt";
+    /**
+     * When a mutation may return relative to its records reaching the disk.
+     */
+    public enum Durability {
+        /** Return once the records are queued; a background writer flushes them. A crash loses what is queued. */
+        WRITE_BEHIND,
+        /** Return once the records are on disk. Mutations that finish together share one flush. */
+        SYNC
+    }
+
+    private static final String SNAPSHOT_PATH = "data/bugs.dat";
+    private static final String CSV_PATH = "data/bugs.txt";
+    private static final String LOG_PATH = "data/bugs.log";
+    private static final String COMMENTS_PATH = "data/comments.dat";
+    private static final String COMMENT_INDEX_PATH = "data/comments.idx";
+    private static final String HISTORY_PATH = "data/history.dat";
+    private static final String HISTORY_INDEX_PATH = "data/history.idx";
+    // Fold the log back into the snapshot once it holds this many records
+    private static final int COMPACT_THRESHOLD = 10_000;
+    // Number of per-bug lock stripes; a power of two so the stripe is a mask of the id
+    private static final int STRIPES = 64;
+    // Lines per bulk import parse task, for JSON Lines and schema v1 CSV
+    private static final int IMPORT_CHUNK_LINES = 8192;
+    // Bytes of whole records per bulk import parse task, for schema v2 CSV
+    private static final int IMPORT_CHUNK_BYTES = 1 << 20;
+    // Largest ID an import may carry. The status, priority and assignee bitsets are indexed by ID,
+    // so a single bug near 2^31 would cost each of them 256 MiB; at this bound the cost is 2 MiB
+    private static final int MAX_IMPORTED_ID = (1 << 24) - 1;
+    // Write-behind defaults: queued records wait at most this long, or until this many are queued
+    private static final long FLUSH_INTERVAL_MS = 200;
+    private static final int FLUSH_BATCH_SIZE = 256;
+
+    // Resident copy of every bug keyed by id, in id order. Reads go straight to the map without locking.
+    // The binary snapshot plus the mutation log are the durable copy.
+    private final Map<Integer, Bug> bugsById = new ConcurrentSkipListMap<>();
+    private final BugLog log = new BugLog(LOG_PATH);
+    // Every bug in the map reads its comments from here
+    private final CommentSegment comments = new CommentSegment(COMMENTS_PATH, COMMENT_INDEX_PATH, log::flush);
+    // Set while opening if older files held comments that were moved into the segment
+    private boolean commentsMoved;
+    // Who changed what and when; written alongside the log, never replayed from it
+    private final BugHistory history = new BugHistory(HISTORY_PATH, HISTORY_INDEX_PATH);
+    private final SecondaryIndex index = new SecondaryIndex();
+    // Built on the first keyword search so startup does not decode every title and description
+    private volatile InvertedIndex keywordIndex;
+    private final List<BugListener> listeners = new CopyOnWriteArrayList<>();
+    private final BugEventStream events = new BugEventStream();
+    // Next id to hand out; recovered from the snapshot header and the log, and never moved backwards
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private volatile Durability durability = Durability.WRITE_BEHIND;
+    private volatile long flushIntervalMs = FLUSH_INTERVAL_MS;
+    private volatile int flushBatchSize = FLUSH_BATCH_SIZE;
+    // Flushes queued records in the background; started by the first mutation, stopped by close
+    private volatile Thread writer;
+
+    // Mutations of one bug are serialized by the stripe its id falls in; bugs in other stripes proceed in parallel
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    // Held shared by every mutation and exclusively while the log is folded into the snapshot or all bugs are replaced
+    private final ReentrantReadWriteLock storeLock = new ReentrantReadWriteLock();
+    // Guards the map's membership together with the status, priority, assignee and keyword indexes,
+    // so an index query always sees bugs in the state they were indexed in
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+
+    public BugManager() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        File snapshotFile = new File(SNAPSHOT_PATH);
+        boolean fromCsv = !snapshotFile.exists();
+        if (fromCsv) {
+            // First start on a CSV data set: import it once, then switch to the snapshot
+            for (Bug bug : readBugsFromCsv(CSV_PATH)) {
+                if (bugsById.putIfAbsent(bug.getId(), bug) != null) continue;
+                if (bug.getCommentCount() > 0) {
+                    comments.replace(bug.getId(), bug.getComments());
+                    commentsMoved = true;
+                }
+                bug.setCommentStore(comments);
+                noteId(bug.getId());
+            }
+        } else {
+            try {
+                BugSnapshot snapshot = BugSnapshot.open(snapshotFile);
+                nextId.set(Math.max(1, snapshot.nextId()));
+                for (int i = 0; i < snapshot.size(); i++) {
+                    Bug bug = snapshot.bug(i);
+                    List<String> inline = snapshot.comments(i);
+                    if (!inline.isEmpty()) {
+                        comments.replace(bug.getId(), toComments(inline));
+                        commentsMoved = true;
+                    }
+                    bug.setCommentStore(comments);
+                    bugsById.putIfAbsent(bug.getId(), bug);
+                    noteId(bug.getId());
+                }
+            } catch (IOException e) {
+                System.err.println("Error loading bugs: " + e.getMessage());
+            }
+        }
+        for (String[] record : log.readRecords()) {
+            replay(record);
+        }
+        // A deletion or replacement can reach the log without the records that clear the bug's comments
+        comments.retain(bugsById::containsKey);
+        for (Bug bug : bugsById.values()) {
+            index.add(bug);
+        }
+        // Also fold a log of unescaped schema v1 lines away before new records are appended to it,
+        // and drop comments moved out of older files so they are not moved again
+        if (fromCsv && !bugsById.isEmpty() || log.isLegacy() || commentsMoved) {
+            compact();
+        }
+    }
 
     /**
-     * Load bugs from the file.
+     * Get all bugs currently held in memory, in ID order.
+     * The snapshot is only read once, when the manager is created.
+     * Safe to call while other threads mutate bugs; the list is a point-in-time copy.
      * 
      * @return list of bugs
      */
     public List<Bug> loadBugs() {
+        return new ArrayList<>(bugsById.values());
+    }
+
+    /**
+     * Import bugs from a CSV file, adding new bugs and replacing bugs with the same ID.
+     * 
+     * @param path the CSV file to read
+     * @return number of bugs imported
+     * @see #importBugs(String)
+     */
+    public int importCsv(String path) {
+        return importBugs(path).getImported();
+    }
+
+    /**
+     * Bulk import bugs from a CSV file, or from a JSON Lines file if the name ends in .jsonl.
+     * The input is read in chunks that are parsed in parallel on the common fork-join pool.
+     * Records with a bad ID, status or priority are rejected and reported rather than defaulted;
+     * an ID is bad unless it is positive and below 2^24.
+     * All accepted bugs are committed together with a single snapshot write, replacing bugs with the same ID.
+     * 
+     * @param path the file to read
+     * @return counts of imported and rejected records
+     */
+    public BugImportResult importBugs(String path) {
+        BugImportResult result = new BugImportResult();
+        boolean json = isJsonLines(path);
+        List<ForkJoinTask<ImportChunk>> tasks = new ArrayList<>();
+        try {
+            if (!json && csvVersion(path) > 1) {
+                submitRecordChunks(path, tasks);
+            } else {
+                submitLineChunks(path, json, tasks);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error importing bugs: " + e.getMessage());
+            return result;
+        }
+
         List<Bug> bugs = new ArrayList<>();
-        File file = new File(FILE_PATH);
-        if (!file.exists()) {
-            return bugs;
+        for (ForkJoinTask<ImportChunk> task : tasks) {
+            ImportChunk chunk = task.join();
+            bugs.addAll(chunk.bugs);
+            for (int i = 0; i < chunk.errorLines.size(); i++) {
+                result.reject(chunk.errorLines.get(i), chunk.errors.get(i));
+            }
         }
+        addBugs(bugs);
+        result.setImported(bugs.size());
+        return result;
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(FILE_PATH))) {
+    // Schema version of a CSV file, from its header line
+    private static int csvVersion(String path) throws IOException {
+        int version;
+        try (InputStream in = new FileInputStream(path)) {
+            version = BugCodec.version(ByteBuffer.wrap(in.readNBytes(16)));
+        }
+        if (version > BugCodec.VERSION) {
+            throw new IllegalArgumentException("Unsupported record schema version " + version);
+        }
+        return version;
+    }
+
+    private void submitLineChunks(String path, boolean json, List<ForkJoinTask<ImportChunk>> tasks) throws IOException {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8), 1 << 16)) {
+            ImportChunk chunk = new ImportChunk(1);
             String line;
             while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",", -1);
-                // Expected fields: id,title,description,status,priority,assignedTo,comments
-                if (parts.length == 7) {
-                    int id = Integer.parseInt(parts[0]);
-                    String title = parts[1];
-                    String description = parts[2];
-                    Status status = stringToStatus(parts[3]);
-                    Priority priority = stringToPriority(parts[4]);
-                    String assignedTo = parts[5];
-
-                    List<String> comments = new ArrayList<>();
-                    String commentsField = parts[6].trim();
-                    if (!commentsField.isEmpty()) {
-                        String[] commentParts = commentsField.split("\\|");
-                        for (String c : commentParts) {
-                            comments.add(c);
-                        }
+                chunk.lines.add(line);
+                if (chunk.lines.size() == IMPORT_CHUNK_LINES) {
+                    tasks.add(submitChunk(chunk, json));
+                    chunk = new ImportChunk(chunk.firstLine + IMPORT_CHUNK_LINES);
+                }
+            }
+            if (!chunk.lines.isEmpty()) {
+                tasks.add(submitChunk(chunk, json));
+            }
+        }
+    }
+
+    // Cut a schema v2 file into blocks of whole records and parse the blocks in parallel.
+    // A quoted field may span lines, so blocks end at line breaks outside quotes.
+    private void submitRecordChunks(String path, List<ForkJoinTask<ImportChunk>> tasks) throws IOException {
+        try (InputStream in = new FileInputStream(path)) {
+            BugCodec.Splitter splitter = new BugCodec.Splitter();
+            byte[] block = new byte[IMPORT_CHUNK_BYTES];
+            int length = 0;
+            int boundary = -1;
+            int firstLine = 1;
+            int n;
+            while ((n = in.read(block, length, block.length - length)) >= 0) {
+                int end = splitter.scan(block, length, length + n);
+                if (end >= 0) boundary = end;
+                length += n;
+                if (length < block.length) continue;
+                if (boundary < 0) {
+                    block = Arrays.copyOf(block, block.length * 2); // One record longer than a block
+                    continue;
+                }
+                tasks.add(submitRecords(Arrays.copyOf(block, boundary), firstLine));
+                firstLine = splitter.boundaryLines() + 1;
+                System.arraycopy(block, boundary, block, 0, length - boundary);
+                length -= boundary;
+                boundary = -1;
+            }
+            if (length > 0) {
+                tasks.add(submitRecords(Arrays.copyOf(block, length), firstLine));
+            }
+        }
+    }
+
+    private ForkJoinTask<ImportChunk> submitRecords(byte[] records, int firstLine) {
+        return ForkJoinPool.commonPool().submit(() -> {
+            ImportChunk chunk = new ImportChunk(firstLine);
+            chunk.lines = null;
+            BugCodec.Reader reader = new BugCodec.Reader(ByteBuffer.wrap(records), firstLine);
+            if (firstLine == 1) {
+                reader.readHeader();
+            }
+            List<String> fields = new ArrayList<>(BugCodec.BUG_FIELDS + 4);
+            while (true) {
+                try {
+                    if (!reader.next(fields)) break;
+                    if (fields.size() == 1 && fields.get(0).isEmpty()) continue; // Blank line
+                    if (fields.size() < BugCodec.BUG_FIELDS) {
+                        throw new IllegalArgumentException("expected at least " + BugCodec.BUG_FIELDS + " fields, found " + fields.size());
                     }
+                    chunk.bugs.add(importedBug(parseId(fields.get(0)), fields.get(1), fields.get(2), fields.get(3),
+                            fields.get(4), fields.get(5), fields.subList(BugCodec.BUG_FIELDS, fields.size())));
+                } catch (IllegalArgumentException e) {
+                    chunk.errorLines.add(reader.recordLine());
+                    chunk.errors.add(e.getMessage());
+                }
+            }
+            return chunk;
+        });
+    }
+
+    private static int parseId(String field) {
+        try {
+            return Integer.parseInt(field.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad id '" + field + "'");
+        }
+    }
+
+    private ForkJoinTask<ImportChunk> submitChunk(ImportChunk chunk, boolean json) {
+        return ForkJoinPool.commonPool().submit(() -> {
+            for (int i = 0; i < chunk.lines.size(); i++) {
+                String line = chunk.lines.get(i);
+                if (line.isBlank()) continue;
+                try {
+                    chunk.bugs.add(json ? importJson(line) : importCsvLine(line));
+                } catch (IllegalArgumentException e) {
+                    chunk.errorLines.add(chunk.firstLine + i);
+                    chunk.errors.add(e.getMessage());
+                }
+            }
+            chunk.lines = null; // Let the raw text go as soon as it is parsed
+            return chunk;
+        });
+    }
 
-                    // Ensure status and priority defaults if null
-                    if (status == null) status = Status.NEW;
-                    if (priority == null) priority = Priority.LOW;
+    // A run of input lines and what parsing them produced
+    private static final class ImportChunk {
+        final int firstLine;
+        List<String> lines = new ArrayList<>(IMPORT_CHUNK_LINES);
+        final List<Bug> bugs = new ArrayList<>();
+        final List<Integer> errorLines = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
 
-                    Bug bug = new Bug(id, title, description, status, priority, assignedTo, comments);
-                    bugs.add(bug);
+        ImportChunk(int firstLine) {
+            this.firstLine = firstLine;
+        }
+    }
+
+    private Bug importCsvLine(String line) {
+        String[] parts = line.split(",", -1);
+        if (parts.length != 7) {
+            throw new IllegalArgumentException("expected 7 fields, found " + parts.length);
+        }
+        List<String> comments = new ArrayList<>();
+        String commentsField = parts[6].trim();
+        if (!commentsField.isEmpty()) {
+            Collections.addAll(comments, commentsField.split("\\|"));
+        }
+        return importedBug(parseId(parts[0]), parts[1], parts[2], parts[3], parts[4], parts[5], comments);
+    }
+
+    private Bug importJson(String line) {
+        BugJson.Fields f = BugJson.parse(line);
+        if (f.id == null) {
+            throw new IllegalArgumentException("missing id");
+        }
+        return importedBug(f.id, f.title, f.description, f.status, f.priority, f.assignedTo, f.comments);
+    }
+
+    private Bug importedBug(int id, String title, String description, String status, String priority,
+                            String assignedTo, List<String> comments) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("bad id " + id);
+        }
+        if (id > MAX_IMPORTED_ID) {
+            throw new IllegalArgumentException("id " + id + " is above the largest importable id " + MAX_IMPORTED_ID);
+        }
+        Status s = status == null ? null : stringToStatus(status.trim());
+        if (s == null) {
+            throw new IllegalArgumentException("unknown status '" + status + "'");
+        }
+        Priority p = priority == null ? null : stringToPriority(priority.trim());
+        if (p == null) {
+            throw new IllegalArgumentException("unknown priority '" + priority + "'");
+        }
+        return new Bug(id, title, description, s, p, assignedTo, toComments(comments));
+    }
+
+    /**
+     * Export every bug to a CSV file.
+     * 
+     * @param path the CSV file to write
+     */
+    public void exportCsv(String path) {
+        exportBugs(path);
+    }
+
+    /**
+     * Export every bug to a CSV file, or to a JSON Lines file if the name ends in .jsonl.
+     * Bugs are streamed to the file one at a time, without copying the whole set first;
+     * bugs changed while the export runs may appear in either state.
+     * 
+     * @param path the file to write
+     * @return number of bugs written
+     */
+    public int exportBugs(String path) {
+        boolean json = isJsonLines(path);
+        int written = 0;
+        try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8), 1 << 16)) {
+            StringBuilder sb = new StringBuilder(256);
+            if (!json) {
+                bw.write(BugCodec.HEADER);
+                bw.write('\n');
+            }
+            for (Bug bug : bugsById.values()) {
+                sb.setLength(0);
+                if (json) {
+                    sb.append(BugJson.format(bug));
+                } else {
+                    BugCodec.appendBug(sb, bug);
                 }
+                sb.append('\n');
+                bw.append(sb);
+                written++;
             }
         } catch (IOException e) {
+            System.err.println("Error exporting bugs: " + e.getMessage());
+        }
+        return written;
+    }
+
+    private static boolean isJsonLines(String path) {
+        return path.toLowerCase().endsWith(".jsonl");
+    }
+
+    /**
+     * Parse every bug from a CSV file, in schema v2 or in the unescaped schema v1.
+     * 
+     * @param path the CSV file to read
+     * @return list of bugs
+     */
+    private List<Bug> readBugsFromCsv(String path) {
+        List<Bug> bugs = new ArrayList<>();
+        File file = new File(path);
+        if (!file.exists()) {
+            return bugs;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (BugCodec.version(buf) == 1) {
+                for (String line : StandardCharsets.UTF_8.decode(buf).toString().split("\r?\n")) {
+                    Bug bug = parseBug(line);
+                    if (bug != null) {
+                        bugs.add(bug);
+                    }
+                }
+                return bugs;
+            }
+            BugCodec.Reader reader = new BugCodec.Reader(buf, 1);
+            reader.readHeader();
+            List<String> fields = new ArrayList<>();
+            while (true) {
+                try {
+                    if (!reader.next(fields)) break;
+                } catch (IllegalArgumentException e) {
+                    continue; // Malformed records are skipped, like malformed v1 lines
+                }
+                Bug bug = toBug(fields);
+                if (bug != null) {
+                    bugs.add(bug);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
             System.err.println("Error loading bugs: " + e.getMessage());
         }
         return bugs;
     }
 
     /**
-     * Save bugs to the file.
+     * Parse one schema v1 bug line.
+     * 
+     * @param line id,title,description,status,priority,assignedTo,comments
+     * @return the bug, or null if the line is malformed
+     */
+    private Bug parseBug(String line) {
+        String[] parts = line.split(",", -1);
+        // Expected fields: id,title,description,status,priority,assignedTo,comments
+        if (parts.length != 7) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>(Arrays.asList(parts).subList(0, BugCodec.BUG_FIELDS));
+        String commentsField = parts[6].trim();
+        if (!commentsField.isEmpty()) {
+            Collections.addAll(fields, commentsField.split("\\|"));
+        }
+        return toBug(fields);
+    }
+
+    /**
+     * Build a bug from the fields of a bug record, defaulting a bad status or priority.
+     * 
+     * @param fields id, title, description, status, priority, assignee, then one per comment
+     * @return the bug, or null if the record is too short or the id is bad
+     */
+    private Bug toBug(List<String> fields) {
+        if (fields.size() < BugCodec.BUG_FIELDS) {
+            return null;
+        }
+        int id;
+        try {
+            id = Integer.parseInt(fields.get(0));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        Status status = stringToStatus(fields.get(3));
+        Priority priority = stringToPriority(fields.get(4));
+
+        // Ensure status and priority defaults if null
+        if (status == null) status = Status.NEW;
+        if (priority == null) priority = Priority.LOW;
+
+        return new Bug(id, fields.get(1), fields.get(2), status, priority, fields.get(5),
+                toComments(fields.subList(BugCodec.BUG_FIELDS, fields.size())));
+    }
+
+    /**
+     * Save bugs to the snapshot file.
+     * The new snapshot is written to a temporary file and moved over the old one,
+     * so a crash mid-write leaves the previous snapshot intact.
+     * Bugs still backed by the old snapshot keep reading from its mapping.
      * 
      * @param bugs list of bugs to save
      */
-    public void saveBugs(List<Bug> bugs) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(FILE_PATH))) {
-            for (Bug bug : bugs) {
-                String commentsStr = String.join("|", bug.getComments());
-                bw.write(String.format("%d,%s,%s,%s,%s,%s,%s\n",
-                        bug.getId(),
-                        bug.getTitle(),
-                        bug.getDescription(),
-                        bug.getStatus().name(),
-                        bug.getPriority().name(),
-                        bug.getAssignedTo(),
-                        commentsStr));
-            }
+    public synchronized void saveBugs(List<Bug> bugs) {
+        File target = new File(SNAPSHOT_PATH);
+        File tmp = new File(SNAPSHOT_PATH + ".tmp");
+        // The data directory may not exist yet: the log only creates it when it first flushes
+        target.getAbsoluteFile().getParentFile().mkdirs();
+        try {
+            BugSnapshot.write(tmp, bugs, nextId.get());
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException e) {
             System.err.println("Error saving bugs: " + e.getMessage());
         }
     }
 
     /**
-     * Add a new bug to the system.
+     * Fold the mutation log back into the snapshot and empty the log.
+     */
+    public void compact() {
+        storeLock.writeLock().lock();
+        try {
+            saveBugs(loadBugs());
+            comments.checkpoint();
+            history.checkpoint();
+            log.truncate();
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Register a listener to be told about every later mutation.
+     * 
+     * @param listener the listener to add
+     */
+    public void addListener(BugListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Register a listener, first handing the seed the status, priority and assignee index with no
+     * mutation in between, so a listener that keeps counts starts from exact ones without a pass
+     * over the bugs.
+     * 
+     * @param listener the listener to add
+     * @param seed reads the index; runs while every mutation waits, and must not mutate the bugs
+     */
+    void addListener(BugListener listener, Consumer<SecondaryIndex> seed) {
+        storeLock.writeLock().lock();
+        try {
+            seed.accept(index);
+            listeners.add(listener);
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Unregister a listener.
+     * 
+     * @param listener the listener to remove
+     */
+    public void removeListener(BugListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Deliver every later mutation to a subscriber as {@link BugEvent}s, in batches on a thread of its own.
+     * Unlike a listener, a subscriber never holds up the mutation; one that falls too far behind
+     * is told how many events it missed.
+     * 
+     * @param subscriber the subscriber to add
+     */
+    public void subscribe(BugSubscriber subscriber) {
+        events.subscribe(subscriber);
+    }
+
+    /**
+     * Stop delivering events to a subscriber. Returns once it has been given every event
+     * of the mutations that finished before the call.
+     * 
+     * @param subscriber the subscriber to remove
+     */
+    public void unsubscribe(BugSubscriber subscriber) {
+        events.unsubscribe(subscriber);
+    }
+
+    /**
+     * Choose when mutations return relative to their records reaching the disk.
+     * The default is {@link Durability#WRITE_BEHIND}.
+     * 
+     * @param durability the new durability
+     */
+    public void setDurability(Durability durability) {
+        this.durability = Objects.requireNonNull(durability);
+        if (durability == Durability.SYNC) {
+            flush();
+        }
+    }
+
+    /**
+     * Tune the write-behind writer. Records are flushed at the latest intervalMs after being queued,
+     * or sooner once batchSize records are queued; repeated edits of one bug field in between are
+     * written once.
+     * 
+     * @param intervalMs longest time a record stays queued, positive
+     * @param batchSize number of queued records that triggers an early flush, positive
+     */
+    public void setWriteBehind(long intervalMs, int batchSize) {
+        if (intervalMs <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("interval and batch size must be positive: " + intervalMs + ", " + batchSize);
+        }
+        flushIntervalMs = intervalMs;
+        flushBatchSize = batchSize;
+        Thread t = writer;
+        if (t != null) LockSupport.unpark(t);
+    }
+
+    /**
+     * Write every acknowledged mutation, comment and history record to disk before returning.
+     */
+    public void flush() {
+        try {
+            log.flush();
+        } catch (IOException e) {
+            System.err.println("Error writing bug log: " + e.getMessage());
+        }
+        try {
+            comments.sync();
+        } catch (IOException e) {
+            System.err.println("Error writing comments: " + e.getMessage());
+        }
+        try {
+            history.sync();
+        } catch (IOException e) {
+            System.err.println("Error writing bug history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Give subscribers their outstanding events and stop them, then flush pending log,
+     * comment and history records to disk and release their files.
+     */
+    public void close() {
+        events.close();
+        stopWriter();
+        try {
+            log.close();
+        } catch (IOException e) {
+            System.err.println("Error closing bug log: " + e.getMessage());
+        }
+        try {
+            comments.close();
+        } catch (IOException e) {
+            System.err.println("Error closing comments: " + e.getMessage());
+        }
+        try {
+            history.close();
+        } catch (IOException e) {
+            System.err.println("Error closing bug history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Take the locks a mutation of one bug needs. Pair with {@link #unlockBug(int)}.
+     */
+    private void lockBug(int id) {
+        storeLock.readLock().lock();
+        stripes[id & (STRIPES - 1)].lock();
+    }
+
+    private void unlockBug(int id) {
+        stripes[id & (STRIPES - 1)].unlock();
+        storeLock.readLock().unlock();
+        if (log.size() >= COMPACT_THRESHOLD) {
+            compactIfFull();
+        }
+        written();
+    }
+
+    /**
+     * Make the records a mutation just queued as durable as the durability asks.
+     * Called after the mutation's locks are released, so other mutations are not held up by the disk.
+     */
+    private void written() {
+        if (durability == Durability.SYNC) {
+            flush();
+            return;
+        }
+        Thread t = writer;
+        if (t == null) {
+            t = startWriter();
+        }
+        if (log.queuedSize() >= flushBatchSize) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    private synchronized Thread startWriter() {
+        if (writer == null) {
+            Thread t = new Thread(this::writeBehind, "bug-writer");
+            t.setDaemon(true);
+            writer = t;
+            t.start();
+        }
+        return writer;
+    }
+
+    // Body of the writer thread. An unpark, from a full batch or from close, ends the wait early.
+    private void writeBehind() {
+        Thread self = Thread.currentThread();
+        while (writer == self) {
+            LockSupport.parkNanos(this, flushIntervalMs * 1_000_000);
+            flush();
+        }
+    }
+
+    private void stopWriter() {
+        Thread t;
+        synchronized (this) {
+            t = writer;
+            writer = null;
+        }
+        if (t != null) {
+            LockSupport.unpark(t);
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Fold the log into the snapshot unless another thread already did while this one waited.
+     */
+    private void compactIfFull() {
+        storeLock.writeLock().lock();
+        try {
+            if (log.size() >= COMPACT_THRESHOLD) {
+                compact();
+            }
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Apply one log record to the in-memory bugs. Malformed records are ignored.
+     * 
+     * @param record the type, then the record's fields
+     */
+    private void replay(String[] record) {
+        try {
+            switch (record[0].charAt(0)) {
+                case BugLog.ADD: {
+                    Bug bug = toBug(Arrays.asList(record).subList(1, record.length));
+                    if (bug != null) {
+                        // Records from older logs carry the bug's comments, and while comments are being moved
+                        // out of older files the log is what they follow; otherwise the segment is already current
+                        if (record.length > 1 + BugCodec.BUG_FIELDS || commentsMoved) {
+                            comments.replace(bug.getId(), bug.getComments());
+                            commentsMoved = true;
+                        }
+                        bug.setCommentStore(comments);
+                        bugsById.put(bug.getId(), bug);
+                        noteId(bug.getId());
+                    }
+                    break;
+                }
+                case BugLog.UPDATE: {
+                    Bug bug = bugsById.get(Integer.parseInt(record[1]));
+                    if (bug != null) applyField(bug, Integer.parseInt(record[2]), record[3]);
+                    break;
+                }
+                case BugLog.COMMENT: {
+                    // Only older logs hold comments
+                    Bug bug = bugsById.get(Integer.parseInt(record[1]));
+                    // The index makes the record idempotent when the snapshot already has the comment
+                    if (bug != null && bug.getCommentCount() == Integer.parseInt(record[2])) {
+                        bug.addComment(new Comment(record[3], null, 0));
+                        commentsMoved = true;
+                    }
+                    break;
+                }
+                case BugLog.DELETE: {
+                    int id = Integer.parseInt(record[1]);
+                    bugsById.remove(id);
+                    if (commentsMoved) comments.replace(id, Collections.emptyList());
+                    break;
+                }
+                case BugLog.SEQUENCE:
+                    nextId.accumulateAndGet(Integer.parseInt(record[1]), Math::max);
+                    break;
+                default:
+                    break;
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Skipping malformed bug log record: " + String.join(",", record));
+        }
+    }
+
+    /**
+     * Hand out a fresh bug ID without looking at the existing bugs.
+     * IDs of added or deleted bugs are never handed out again, even after a restart;
+     * an ID that was taken but never used for a bug may be.
+     * 
+     * @return the new ID
+     */
+    public int nextBugId() {
+        return nextId.getAndIncrement();
+    }
+
+    /**
+     * Reserve a block of consecutive bug IDs for a bulk import.
+     * The reservation is logged, so the block is not handed out again after a restart.
+     * 
+     * @param count number of IDs to reserve
+     * @return the first ID of the block; the block ends before first + count
+     */
+    public int reserveBugIds(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive: " + count);
+        }
+        int first;
+        storeLock.readLock().lock();
+        try {
+            first = nextId.getAndAdd(count);
+            log.appendSequence(first + count);
+        } finally {
+            storeLock.readLock().unlock();
+        }
+        written();
+        return first;
+    }
+
+    // Keep the sequence ahead of an ID that was assigned elsewhere, e.g. by a CSV import
+    private void noteId(int id) {
+        if (id >= nextId.get()) {
+            nextId.accumulateAndGet(id + 1, Math::max);
+        }
+    }
+
+    /**
+     * Add a new bug to the system, without recording who added it.
+     * Use {@link #nextBugId()} for the ID of a new bug; a bug with an existing ID replaces it.
      * 
      * @param bug the bug to add
      */
     public void addBug(Bug bug) {
-        List<Bug> bugs = loadBugs();
-        bugs.add(bug);
-        saveBugs(bugs);
+        addBug(bug, null);
+    }
+
+    /**
+     * Add a new bug to the system and record who added it in its history.
+     * Use {@link #nextBugId()} for the ID of a new bug; a bug with an existing ID replaces it.
+     * 
+     * @param bug the bug to add
+     * @param author username of whoever added it, or null if unknown
+     */
+    public void addBug(Bug bug, String author) {
+        int id = bug.getId();
+        noteId(id);
+        lockBug(id);
+        try {
+            comments.adopt(Collections.singletonList(bug));
+            Bug old;
+            indexLock.writeLock().lock();
+            try {
+                old = bugsById.put(id, bug);
+                if (old != null) index.remove(old);
+                index.add(bug);
+                if (keywordIndex != null) {
+                    if (old != null) keywordIndex.remove(old.getId(), searchableText(old));
+                    keywordIndex.add(id, searchableText(bug));
+                }
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+            log.appendBug(bug);
+            if (old != null) history.deleted(old, author);
+            history.created(id, author);
+            for (BugListener l : listeners) {
+                if (old != null) l.bugDeleted(old);
+                l.bugAdded(bug);
+            }
+            if (events.hasSubscribers()) {
+                if (old != null) events.deleted(old);
+                events.created(bug);
+            }
+        } finally {
+            unlockBug(id);
+        }
+    }
+
+    /**
+     * Add or replace many bugs at once. The batch is folded straight into the snapshot
+     * with one write instead of logging each bug.
+     * 
+     * @param bugs the bugs to add; a later bug replaces an earlier one with the same ID
+     */
+    public void addBugs(Collection<Bug> bugs) {
+        if (bugs.isEmpty()) {
+            return;
+        }
+        storeLock.writeLock().lock();
+        try {
+            comments.adopt(bugs);
+            List<Bug> replaced = new ArrayList<>();
+            indexLock.writeLock().lock();
+            try {
+                for (Bug bug : bugs) {
+                    noteId(bug.getId());
+                    Bug old = bugsById.put(bug.getId(), bug);
+                    if (old != null) {
+                        index.remove(old);
+                        if (keywordIndex != null) keywordIndex.remove(old.getId(), searchableText(old));
+                        replaced.add(old);
+                        history.deleted(old, null);
+                    }
+                    history.created(bug.getId(), null);
+                    index.add(bug);
+                    if (keywordIndex != null) keywordIndex.add(bug.getId(), searchableText(bug));
+                }
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+            compact();
+            for (BugListener l : listeners) {
+                for (Bug bug : replaced) l.bugDeleted(bug);
+                for (Bug bug : bugs) l.bugAdded(bug);
+            }
+            if (events.hasSubscribers()) {
+                for (Bug bug : replaced) events.deleted(bug);
+                for (Bug bug : bugs) events.created(bug);
+            }
+        } finally {
+            storeLock.writeLock().unlock();
+        }
     }
 
     /**
@@ -98,7 +968,52 @@ public class BugManager {
      * @param bugs list of updated bugs
      */
     public void updateBugs(List<Bug> bugs) {
-        saveBugs(bugs);
+        storeLock.writeLock().lock();
+        try {
+            List<Bug> old = new ArrayList<>(bugsById.values());
+            indexLock.writeLock().lock();
+            try {
+                bugsById.clear();
+                for (Bug bug : bugs) {
+                    bugsById.putIfAbsent(bug.getId(), bug);
+                    noteId(bug.getId());
+                }
+                for (Bug bug : old) {
+                    if (!bugsById.containsKey(bug.getId())) comments.replace(bug.getId(), Collections.emptyList());
+                    // A bug passed back in unchanged has nothing to record; what was done to it in place is not known
+                    if (bugsById.get(bug.getId()) != bug) history.deleted(bug, null);
+                }
+                Set<Bug> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+                kept.addAll(old);
+                for (Bug bug : bugsById.values()) {
+                    if (!kept.contains(bug)) history.created(bug.getId(), null);
+                }
+                comments.adopt(bugsById.values());
+                index.clear();
+                for (Bug bug : bugsById.values()) {
+                    index.add(bug);
+                }
+                if (keywordIndex != null) {
+                    keywordIndex = buildKeywordIndex();
+                }
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+            saveBugs(bugs);
+            comments.checkpoint();
+            history.checkpoint();
+            log.truncate();
+            for (BugListener l : listeners) {
+                for (Bug bug : old) l.bugDeleted(bug);
+                for (Bug bug : bugsById.values()) l.bugAdded(bug);
+            }
+            if (events.hasSubscribers()) {
+                for (Bug bug : old) events.deleted(bug);
+                for (Bug bug : bugsById.values()) events.created(bug);
+            }
+        } finally {
+            storeLock.writeLock().unlock();
+        }
     }
 
     /**
@@ -108,38 +1023,96 @@ public class BugManager {
      * @return the found bug, or null if not found
      */
     public Bug findBugById(int id) {
-        List<Bug> bugs = loadBugs();
-        for (Bug b : bugs) {
-            if (b.getId() == id) {
-                return b;
-            }
+        return bugsById.get(id);
+    }
+
+    /**
+     * Find a bug as it was at a point in time. Only that bug's history is read, and only back to the time.
+     * Bugs that predate the history read as they were when it began.
+     * 
+     * @param id the ID of the bug
+     * @param time epoch millis
+     * @return a copy of the bug as it was then, without comments; null if it did not exist then
+     */
+    public Bug findBugAt(int id, long time) {
+        // Locked so that no change lands between reading the bug and undoing its later changes
+        storeLock.readLock().lock();
+        stripes[id & (STRIPES - 1)].lock();
+        try {
+            return history.at(bugsById.get(id), id, time);
+        } finally {
+            stripes[id & (STRIPES - 1)].unlock();
+            storeLock.readLock().unlock();
         }
-        return null;
     }
 
     /**
-     * Delete a bug by its ID.
+     * Get the recorded history of a bug: its creation, every field change and its deletion,
+     * with who made them and when.
+     * 
+     * @param id the ID of the bug
+     * @return the changes, oldest first; empty if none were recorded
+     */
+    public List<BugChange> getHistory(int id) {
+        return history.history(id);
+    }
+
+    /**
+     * Get the changes of one field across all bugs within a time range, e.g. every status
+     * transition of the last week. Only the part of the history covering the range is read.
+     * 
+     * @param field the field (1-5, same numbering as updateBugField), or 0 for every change, creation and deletion
+     * @param from epoch millis, inclusive
+     * @param to epoch millis, inclusive
+     * @return the changes in the order they were made
+     */
+    public List<BugChange> getChanges(int field, long from, long to) {
+        return history.changes(field, from, to);
+    }
+
+    /**
+     * Delete a bug by its ID, without recording who deleted it.
      * 
      * @param id the ID of the bug to delete
      * @return true if deleted, false if not found
      */
     public boolean deleteBug(int id) {
-        List<Bug> bugs = loadBugs();
-        Bug found = null;
-        for (Bug b : bugs) {
-            if (b.getId() == id) {
-                found = b;
-                break;
+        return deleteBug(id, null);
+    }
+
+    /**
+     * Delete a bug by its ID and record who deleted it in its history.
+     * 
+     * @param id the ID of the bug to delete
+     * @param author username of whoever deleted it, or null if unknown
+     * @return true if deleted, false if not found
+     */
+    public boolean deleteBug(int id, String author) {
+        lockBug(id);
+        try {
+            Bug removed;
+            indexLock.writeLock().lock();
+            try {
+                removed = bugsById.remove(id);
+                if (removed == null) return false;
+                index.remove(removed);
+                if (keywordIndex != null) keywordIndex.remove(id, searchableText(removed));
+            } finally {
+                indexLock.writeLock().unlock();
             }
+            log.appendDelete(id);
+            history.deleted(removed, author);
+            comments.replace(id, Collections.emptyList());
+            for (BugListener l : listeners) l.bugDeleted(removed);
+            if (events.hasSubscribers()) events.deleted(removed);
+            return true;
+        } finally {
+            unlockBug(id);
         }
-        if (found == null) return false;
-        bugs.remove(found);
-        saveBugs(bugs);
-        return true;
     }
 
     /**
-     * Update a specific field of a bug by its ID.
+     * Update a specific field of a bug by its ID, without recording who changed it.
      * 
      * @param id the ID of the bug to update
      * @param fieldChoice the field to update (1-5)
@@ -147,51 +1120,183 @@ public class BugManager {
      * @return true if updated, false if not found
      */
     public boolean updateBugField(int id, int fieldChoice, String newValue) {
-        List<Bug> bugs = loadBugs();
-        for (int i = 0; i < bugs.size(); i++) {
-            Bug b = bugs.get(i);
-            if (b.getId() == id) {
-                switch (fieldChoice) {
-                    case 1: b.setTitle(newValue); break;
-                    case 2: b.setDescription(newValue); break;
-                    case 3:
-                        Status s = stringToStatus(newValue);
-                        if (s == null) s = Status.NEW;
-                        b.setStatus(s);
-                        break;
-                    case 4:
-                        Priority p = stringToPriority(newValue);
-                        if (p == null) p = Priority.LOW;
-                        b.setPriority(p);
-                        break;
-                    case 5: b.setAssignedTo(newValue); break;
-                    default: return false;
-                }
-                saveBugs(bugs);
-                return true;
+        return updateBugField(id, fieldChoice, newValue, null);
+    }
+
+    /**
+     * Update a specific field of a bug by its ID and record the change, with who made it, in its history.
+     * Setting a field to the value it already has is not recorded.
+     * 
+     * @param id the ID of the bug to update
+     * @param fieldChoice the field to update (1-5)
+     * @param newValue the new value for the field
+     * @param author username of whoever made the change, or null if unknown
+     * @return true if updated, false if not found
+     */
+    public boolean updateBugField(int id, int fieldChoice, String newValue, String author) {
+        lockBug(id);
+        try {
+            Bug b = bugsById.get(id);
+            return b != null && changeField(b, fieldChoice, newValue, author, true);
+        } finally {
+            unlockBug(id);
+        }
+    }
+
+    /**
+     * Update several fields of a bug at once and record each change, with who made it, in its history.
+     * No other mutation of the bug runs in between, and the log gets the new bug as one record, so
+     * after a crash either every field has its new value or none has.
+     * 
+     * @param id the ID of the bug to update
+     * @param values the new value of each field to update, by field number (1-5)
+     * @param author username of whoever made the change, or null if unknown
+     * @return true if updated, false if not found
+     * @throws IllegalArgumentException if a field number is not 1-5; nothing is changed
+     */
+    public boolean updateBugFields(int id, Map<Integer, String> values, String author) {
+        for (int fieldChoice : values.keySet()) {
+            if (fieldChoice < 1 || fieldChoice > 5) throw new IllegalArgumentException("no field " + fieldChoice);
+        }
+        if (values.size() == 1) {
+            Map.Entry<Integer, String> only = values.entrySet().iterator().next();
+            return updateBugField(id, only.getKey(), only.getValue(), author);
+        }
+        lockBug(id);
+        try {
+            Bug b = bugsById.get(id);
+            if (b == null) return false;
+            for (Map.Entry<Integer, String> entry : values.entrySet()) {
+                changeField(b, entry.getKey(), entry.getValue(), author, false);
             }
+            if (!values.isEmpty()) log.appendBug(b);
+            return true;
+        } finally {
+            unlockBug(id);
         }
-        return false;
+    }
+
+    // Set one field of a bug whose stripe lock the caller holds, and log it unless the caller logs the whole bug
+    private boolean changeField(Bug b, int fieldChoice, String newValue, String author, boolean logged) {
+        int id = b.getId();
+        String oldValue = fieldValue(b, fieldChoice);
+        indexLock.writeLock().lock();
+        try {
+            boolean textChange = keywordIndex != null && (fieldChoice == 1 || fieldChoice == 2);
+            boolean indexedChange = fieldChoice >= 3 && fieldChoice <= 5;
+            List<String> oldText = textChange ? searchableText(b) : null;
+            if (indexedChange) index.remove(b);
+            boolean applied = applyField(b, fieldChoice, newValue);
+            if (indexedChange) index.add(b);
+            if (!applied) return false;
+            if (textChange) {
+                keywordIndex.remove(id, oldText);
+                keywordIndex.add(id, searchableText(b));
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+        if (logged) log.appendUpdate(id, fieldChoice, newValue);
+        String appliedValue = fieldValue(b, fieldChoice);
+        if (!Objects.equals(oldValue, appliedValue)) history.changed(id, fieldChoice, oldValue, appliedValue, author);
+        for (BugListener l : listeners) l.bugChanged(b, fieldChoice, oldValue, appliedValue);
+        if (events.hasSubscribers()) events.changed(b, fieldChoice, oldValue, appliedValue);
+        return true;
+    }
+
+    private static String fieldValue(Bug b, int fieldChoice) {
+        switch (fieldChoice) {
+            case 1: return b.getTitle();
+            case 2: return b.getDescription();
+            case 3: return b.getStatus().name();
+            case 4: return b.getPriority().name();
+            case 5: return b.getAssignedTo();
+            default: return null;
+        }
+    }
+
+    private boolean applyField(Bug b, int fieldChoice, String newValue) {
+        switch (fieldChoice) {
+            case 1: b.setTitle(newValue); break;
+            case 2: b.setDescription(newValue); break;
+            case 3:
+                Status s = stringToStatus(newValue);
+                if (s == null) s = Status.NEW;
+                b.setStatus(s);
+                break;
+            case 4:
+                Priority p = stringToPriority(newValue);
+                if (p == null) p = Priority.LOW;
+                b.setPriority(p);
+                break;
+            case 5: b.setAssignedTo(newValue); break;
+            default: return false;
+        }
+        return true;
+    }
+
+    /**
+     * Update the status of a bug by its ID.
+     * 
+     * @param id the ID of the bug to update
+     * @param status the new status
+     * @return true if updated, false if not found
+     */
+    public boolean updateBugStatus(int id, Status status) {
+        return updateBugField(id, 3, status.name());
     }
 
     /**
-     * Add a comment to a bug by its ID.
+     * Update the status of a bug by its ID and record who changed it.
+     * 
+     * @param id the ID of the bug to update
+     * @param status the new status
+     * @param author username of whoever made the change, or null if unknown
+     * @return true if updated, false if not found
+     */
+    public boolean updateBugStatus(int id, Status status, String author) {
+        return updateBugField(id, 3, status.name(), author);
+    }
+
+    /**
+     * Add a comment to a bug by its ID, without an author.
      * 
      * @param id the ID of the bug
      * @param comment the comment to add
      * @return true if successful, false if not found
      */
     public boolean addCommentToBug(int id, String comment) {
-        List<Bug> bugs = loadBugs();
-        for (int i = 0; i < bugs.size(); i++) {
-            Bug b = bugs.get(i);
-            if (b.getId() == id) {
+        return addCommentToBug(id, null, comment);
+    }
+
+    /**
+     * Add a comment to a bug by its ID, stamped with its author and the current time.
+     * The comment is appended to the comment segment; the bug itself is not rewritten.
+     * 
+     * @param id the ID of the bug
+     * @param author username of the writer, or null if unknown
+     * @param text the comment to add
+     * @return true if successful, false if not found
+     */
+    public boolean addCommentToBug(int id, String author, String text) {
+        lockBug(id);
+        try {
+            Bug b = bugsById.get(id);
+            if (b == null) return false;
+            Comment comment = new Comment(text, author, System.currentTimeMillis());
+            indexLock.writeLock().lock();
+            try {
                 b.addComment(comment);
-                saveBugs(bugs);
-                return true;
+                if (keywordIndex != null) keywordIndex.add(id, Collections.singletonList(text));
+            } finally {
+                indexLock.writeLock().unlock();
             }
+            for (BugListener l : listeners) l.bugCommented(b, comment);
+            if (events.hasSubscribers()) events.commented(b, comment);
+            return true;
+        } finally {
+            unlockBug(id);
         }
-        return false;
     }
 
     /**
@@ -225,45 +1330,284 @@ public class BugManager {
     /**
      * Search bugs with optional keyword and status filters, and then sort by either priority or status.
      * 
-     * @param keyword Filter bugs containing keyword in title or description (null or empty = no keyword filter)
+     * @param keyword Keyword query over title, description and comments, see {@link #searchByKeyword}
+     *                (null or empty = no keyword filter)
      * @param statusFilter Filter by specific status (null = no status filter)
-     * @param sortBy "priority" or "status" for sorting. null or anything else = no particular sorting.
+     * @param sortBy "priority", "priority_desc", "status" or "status_desc". null or anything else = ID order.
      * @return list of filtered and sorted bugs
      */
     public List<Bug> searchBugs(String keyword, Status statusFilter, String sortBy) {
-        List<Bug> bugs = loadBugs();
-        List<Bug> results = new ArrayList<>();
-
-        boolean filterByKeyword = (keyword != null && !keyword.trim().isEmpty());
-        boolean filterByStatus = (statusFilter != null);
-
-        // Filter
-        for (Bug bug : bugs) {
-            boolean matches = true;
-            if (filterByKeyword) {
-                String kw = keyword.toLowerCase();
-                if (!bug.getTitle().toLowerCase().contains(kw) &&
-                    !bug.getDescription().toLowerCase().contains(kw)) {
-                    matches = false;
-                }
+        return searchBugs(keyword, statusFilter, sortBy, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Search bugs and return only the first results in sort order, e.g. the 50 highest-priority NEW bugs:
+     * {@code searchBugs(null, Status.NEW, "priority_desc", 50)}.
+     * Sorted results are read bucket by bucket from the priority or status index, so the cost is
+     * one pass over the index bit sets plus the bugs returned; the matches are never sorted.
+     * 
+     * @param keyword keyword query, or null or empty for none
+     * @param statusFilter status to match, or null for any
+     * @param sortBy "priority", "priority_desc", "status" or "status_desc"; anything else means ID order
+     * @param limit maximum number of bugs to return
+     * @return the first matching bugs
+     */
+    public List<Bug> searchBugs(String keyword, Status statusFilter, String sortBy, int limit) {
+        return query(new BugQuery().keyword(keyword).status(statusFilter).orderBy(sortOrder(sortBy)).limit(limit));
+    }
+
+    /**
+     * Map the sort names used by {@link #searchBugs} to a query order.
+     * 
+     * @param sortBy "priority", "priority_desc", "status" or "status_desc"; anything else means ID order
+     * @return the order
+     */
+    public static BugQuery.Order sortOrder(String sortBy) {
+        if (sortBy == null) return BugQuery.Order.ID;
+        switch (sortBy.trim().toLowerCase()) {
+            case "priority": return BugQuery.Order.PRIORITY;
+            case "priority_desc": return BugQuery.Order.PRIORITY_DESC;
+            case "status": return BugQuery.Order.STATUS;
+            case "status_desc": return BugQuery.Order.STATUS_DESC;
+            default: return BugQuery.Order.ID;
+        }
+    }
+
+    /**
+     * Find bugs whose title, description or comments match a keyword query.
+     * Words are matched whole and case-insensitively. Several words must all match,
+     * OR between words matches either side, "quoted words" must appear together,
+     * and a trailing * matches any word with that prefix.
+     * 
+     * @param query the keyword query
+     * @return matching bugs in ID order
+     */
+    public List<Bug> searchByKeyword(String query) {
+        ensureKeywordIndex();
+        indexLock.readLock().lock();
+        try {
+            int[] ids = keywordIndex.search(query, this::containsPhrase);
+            List<Bug> results = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                results.add(bugsById.get(id));
+            }
+            return results;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find bugs matching every criterion of a query, using the status, priority,
+     * assignee and keyword indexes rather than scanning the bugs.
+     * 
+     * @param query the criteria
+     * @return matching bugs in query order
+     */
+    public List<Bug> query(BugQuery query) {
+        return stream(query).collect(Collectors.toList());
+    }
+
+    /**
+     * Stream the bugs matching a query, in query order, honoring its position, offset and limit.
+     * Only a bit set of matching IDs is built up front; each bug is looked up as the stream
+     * reaches it, and bugs deleted in the meantime are left out.
+     * 
+     * @param query the criteria
+     * @return the matching bugs
+     */
+    public Stream<Bug> stream(BugQuery query) {
+        return keys(query).mapToObj(key -> bugsById.get((int) key))
+                .filter(Objects::nonNull)
+                .skip(query.getOffset())
+                .limit(query.getLimit());
+    }
+
+    /**
+     * Fetch one page of results. Only the bugs on the page are looked up.
+     * 
+     * @param query the criteria, with a limit as the page size
+     * @return the page, which also gives the query for the next page unless the limit is 0
+     */
+    public BugPage page(BugQuery query) {
+        int limit = query.getLimit();
+        int skip = query.getOffset();
+        List<Bug> bugs = new ArrayList<>(Math.min(limit, 1024));
+        BugQuery next = null;
+        long lastKey = 0;
+        PrimitiveIterator.OfLong keys = keys(query).iterator();
+        while (keys.hasNext()) {
+            long key = keys.nextLong();
+            Bug bug = bugsById.get((int) key);
+            if (bug == null) continue;
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            if (bugs.size() == limit) {
+                // An empty page cannot move the position on, so a limit of 0 has no next page
+                if (limit > 0) next = query.after((int) (lastKey >>> 32), (int) lastKey);
+                break;
             }
-            if (matches && filterByStatus) {
-                if (bug.getStatus() != statusFilter) {
-                    matches = false;
+            bugs.add(bug);
+            lastKey = key;
+        }
+        return new BugPage(bugs, next);
+    }
+
+    /**
+     * Matching positions in query order, each packed as (sort group &lt;&lt; 32 | id), starting after the query's keyset position.
+     * The sort group is the ordinal of the priority or status the bug was indexed under, or 0 in ID order.
+     */
+    private LongStream keys(BugQuery query) {
+        if (query.getKeyword() != null) {
+            ensureKeywordIndex();
+        }
+        List<BitSet> groups;
+        indexLock.readLock().lock();
+        try {
+            groups = groups(matchingIds(query), query.getOrder());
+        } finally {
+            indexLock.readLock().unlock();
+        }
+
+        int afterGroup = query.getAfterGroup();
+        int afterId = query.getAfterId();
+        if (afterGroup < 0 && afterId >= 0) {
+            afterGroup = groupOf(query.getOrder(), afterId);
+        }
+        LongStream keys = LongStream.empty();
+        for (int g = Math.max(afterGroup, 0); g < groups.size(); g++) {
+            BitSet ids = groups.get(g);
+            int from = g == afterGroup ? afterId + 1 : 0;
+            if (from < 0) continue; // Position was the largest possible id
+            long group = (long) g << 32;
+            keys = LongStream.concat(keys, IntStream.iterate(ids.nextSetBit(from), id -> id >= 0, id -> ids.nextSetBit(id + 1))
+                    .mapToLong(id -> group | id));
+        }
+        return keys;
+    }
+
+    // Split matching ids into one set per sort value, in sort order
+    private List<BitSet> groups(BitSet ids, BugQuery.Order order) {
+        List<BitSet> groups = new ArrayList<>();
+        switch (order) {
+            case PRIORITY:
+            case PRIORITY_DESC:
+                for (Priority p : Priority.values()) {
+                    BitSet group = (BitSet) ids.clone();
+                    index.retainPriorities(group, EnumSet.of(p));
+                    groups.add(group);
+                }
+                break;
+            case STATUS:
+            case STATUS_DESC:
+                for (Status s : Status.values()) {
+                    BitSet group = (BitSet) ids.clone();
+                    index.retainStatuses(group, EnumSet.of(s));
+                    groups.add(group);
                 }
+                break;
+            default:
+                groups.add(ids);
+                break;
+        }
+        if (isDescending(order)) {
+            Collections.reverse(groups);
+        }
+        return groups;
+    }
+
+    // Position in groups() of a bug given only by ID; one that no longer exists counts as the first group
+    private int groupOf(BugQuery.Order order, int id) {
+        Bug bug = bugsById.get(id);
+        if (bug == null || order == BugQuery.Order.ID) return 0;
+        boolean byPriority = order == BugQuery.Order.PRIORITY || order == BugQuery.Order.PRIORITY_DESC;
+        int ordinal = byPriority ? bug.getPriority().ordinal() : bug.getStatus().ordinal();
+        int count = byPriority ? Priority.values().length : Status.values().length;
+        return isDescending(order) ? count - 1 - ordinal : ordinal;
+    }
+
+    private static boolean isDescending(BugQuery.Order order) {
+        return order == BugQuery.Order.PRIORITY_DESC || order == BugQuery.Order.STATUS_DESC;
+    }
+
+    private BitSet matchingIds(BugQuery query) {
+        BitSet ids = index.all();
+        if (!query.getStatuses().isEmpty()) {
+            index.retainStatuses(ids, query.getStatuses());
+        }
+        if (!query.getPriorities().isEmpty()) {
+            index.retainPriorities(ids, query.getPriorities());
+        }
+        if (query.getAssignee() != null) {
+            index.retainAssignee(ids, query.getAssignee());
+        }
+        if (query.getAssigneeContaining() != null) {
+            index.retainAssigneeContaining(ids, query.getAssigneeContaining());
+        }
+        if (query.getKeyword() != null && !ids.isEmpty()) {
+            BitSet matches = new BitSet();
+            for (int id : keywordIndex.search(query.getKeyword(), this::containsPhrase)) {
+                matches.set(id);
+            }
+            ids.and(matches);
+        }
+        return ids;
+    }
+
+    /**
+     * Build the keyword index on first use. Once built it is only ever replaced, never dropped,
+     * so callers can rely on it after taking the read lock.
+     */
+    private void ensureKeywordIndex() {
+        if (keywordIndex != null) {
+            return;
+        }
+        indexLock.writeLock().lock();
+        try {
+            if (keywordIndex == null) {
+                keywordIndex = buildKeywordIndex();
             }
-            if (matches) {
-                results.add(bug);
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    private InvertedIndex buildKeywordIndex() {
+        InvertedIndex built = new InvertedIndex();
+        for (Bug bug : bugsById.values()) {
+            built.add(bug.getId(), searchableText(bug));
+        }
+        return built;
+    }
+
+    private boolean containsPhrase(int id, List<String> phrase) {
+        for (String text : searchableText(bugsById.get(id))) {
+            if (Collections.indexOfSubList(InvertedIndex.tokenize(text), phrase) >= 0) {
+                return true;
             }
         }
+        return false;
+    }
 
-        // Sort
-        if ("priority".equalsIgnoreCase(sortBy)) {
-            results.sort((b1, b2) -> b1.getPriority().compareTo(b2.getPriority()));
-        } else if ("status".equalsIgnoreCase(sortBy)) {
-            results.sort((b1, b2) -> b1.getStatus().compareTo(b2.getStatus()));
+    private static List<String> searchableText(Bug bug) {
+        List<Comment> comments = bug.getComments();
+        List<String> text = new ArrayList<>(2 + comments.size());
+        text.add(bug.getTitle());
+        text.add(bug.getDescription());
+        for (Comment comment : comments) {
+            text.add(comment.getText());
         }
+        return text;
+    }
 
-        return results;
+    // Comments read from a file that only held their text
+    private static List<Comment> toComments(List<String> texts) {
+        List<Comment> comments = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            comments.add(new Comment(text, null, 0));
+        }
+        return comments;
     }
 }
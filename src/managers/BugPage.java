@@ -0,0 +1,58 @@
+package managers;
+
+import java.util.Collections;
+import java.util.List;
+import models.Bug;
+
+/**
+ * One page of results from {@link BugManager#page(BugQuery)}.
+ *
+ * <pre>
+ * BugQuery q = new BugQuery().status(Status.NEW).limit(20);
+ * BugPage page = manager.page(q);
+ * while (page.hasMore()) page = manager.page(page.nextQuery());
+ * </pre>
+ */
+public class BugPage {
+    private final List<Bug> bugs;
+    private final BugQuery next;
+
+    BugPage(List<Bug> bugs, BugQuery next) {
+        this.bugs = bugs;
+        this.next = next;
+    }
+
+    /**
+     * @return the bugs on this page, in query order
+     */
+    public List<Bug> getBugs() {
+        return Collections.unmodifiableList(bugs);
+    }
+
+    /**
+     * @return true if more results follow this page
+     */
+    public boolean hasMore() {
+        return next != null;
+    }
+
+    /**
+     * The same query, positioned right after the last bug on this page. Paging this way does not
+     * skip or repeat bugs when others are added or deleted in between.
+     *
+     * @return the query for the next page, or null if this is the last page
+     */
+    public BugQuery nextQuery() {
+        return next;
+    }
+
+    /**
+     * The position of {@link #nextQuery()} as text, to hand to {@link BugQuery#cursor(String)}
+     * together with the same criteria and order.
+     *
+     * @return the cursor, or null if this is the last page
+     */
+    public String getNextCursor() {
+        return next == null ? null : next.cursor();
+    }
+}
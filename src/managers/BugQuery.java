@@ -0,0 +1,182 @@
+package managers;
+
+import java.util.EnumSet;
+import java.util.Set;
+import models.Priority;
+import models.Status;
+
+/**
+ * Criteria for {@link BugManager#query(BugQuery)}. Every criterion that is set must match;
+ * several statuses or priorities match any of them.
+ *
+ * <pre>
+ * manager.query(new BugQuery().status(Status.NEW, Status.IN_PROGRESS).priority(Priority.CRITICAL).assignee("alice"));
+ * </pre>
+ *
+ * Results come in {@link Order order} and can be paged with {@link #limit(int)} plus either
+ * {@link #offset(int)} or a keyset position ({@link #afterId(int)}, or {@link BugPage#nextQuery()}).
+ */
+public class BugQuery {
+    /**
+     * Result order. PRIORITY and STATUS follow the enum declaration order (LOW first, NEW first);
+     * the _DESC variants reverse it, so PRIORITY_DESC puts CRITICAL first.
+     * Sorted orders keep ID order among bugs with the same value.
+     */
+    public enum Order { ID, PRIORITY, PRIORITY_DESC, STATUS, STATUS_DESC }
+
+    private final Set<Status> statuses = EnumSet.noneOf(Status.class);
+    private final Set<Priority> priorities = EnumSet.noneOf(Priority.class);
+    private String assignee;
+    private String assigneeContaining;
+    private String keyword;
+    private Order order = Order.ID;
+    private int offset;
+    private int limit = Integer.MAX_VALUE;
+    // Keyset position: results start after this (group, id) pair; group is the sort value's ordinal
+    private int afterGroup = -1;
+    private int afterId = -1;
+
+    public BugQuery() {
+    }
+
+    private BugQuery(BugQuery other) {
+        statuses.addAll(other.statuses);
+        priorities.addAll(other.priorities);
+        assignee = other.assignee;
+        assigneeContaining = other.assigneeContaining;
+        keyword = other.keyword;
+        order = other.order;
+        offset = other.offset;
+        limit = other.limit;
+        afterGroup = other.afterGroup;
+        afterId = other.afterId;
+    }
+
+    /**
+     * Match bugs with any of the given statuses. Null values are ignored.
+     */
+    public BugQuery status(Status... values) {
+        for (Status s : values) {
+            if (s != null) statuses.add(s);
+        }
+        return this;
+    }
+
+    /**
+     * Match bugs with any of the given priorities. Null values are ignored.
+     */
+    public BugQuery priority(Priority... values) {
+        for (Priority p : values) {
+            if (p != null) priorities.add(p);
+        }
+        return this;
+    }
+
+    /**
+     * Match bugs assigned to exactly this name, ignoring case.
+     */
+    public BugQuery assignee(String name) {
+        this.assignee = name;
+        return this;
+    }
+
+    /**
+     * Match bugs whose assignee name contains this text, ignoring case.
+     */
+    public BugQuery assigneeContaining(String text) {
+        this.assigneeContaining = text;
+        return this;
+    }
+
+    /**
+     * Match bugs whose text matches a keyword query, see {@link BugManager#searchByKeyword(String)}.
+     * Null or blank means no keyword filter.
+     */
+    public BugQuery keyword(String query) {
+        this.keyword = query;
+        return this;
+    }
+
+    /**
+     * Sort results. Null means ID order.
+     */
+    public BugQuery orderBy(Order order) {
+        this.order = order == null ? Order.ID : order;
+        return this;
+    }
+
+    /**
+     * Skip this many results. Prefer {@link #afterId(int)} for deep pages; an offset still walks the skipped ids.
+     */
+    public BugQuery offset(int offset) {
+        if (offset < 0) throw new IllegalArgumentException("offset must not be negative: " + offset);
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Return at most this many results.
+     */
+    public BugQuery limit(int limit) {
+        if (limit < 0) throw new IllegalArgumentException("limit must not be negative: " + limit);
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Start after the bug with this ID. In a sorted order, use {@link BugPage#nextQuery()} instead,
+     * which also remembers the sort value the page ended on.
+     */
+    public BugQuery afterId(int id) {
+        this.afterGroup = -1;
+        this.afterId = id;
+        return this;
+    }
+
+    /**
+     * Start after the position named by {@link BugPage#getNextCursor()}, for clients that
+     * cannot hold on to the query object between pages.
+     *
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public BugQuery cursor(String cursor) {
+        int colon = cursor.indexOf(':');
+        try {
+            int group = Integer.parseInt(cursor.substring(0, colon));
+            int id = Integer.parseInt(cursor.substring(colon + 1));
+            this.afterGroup = group;
+            this.afterId = id;
+            this.offset = 0;
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Bad cursor: " + cursor);
+        }
+        return this;
+    }
+
+    String cursor() {
+        return afterGroup + ":" + afterId;
+    }
+
+    // A copy of this query positioned after the given result
+    BugQuery after(int group, int id) {
+        BugQuery next = new BugQuery(this);
+        next.offset = 0;
+        next.afterGroup = group;
+        next.afterId = id;
+        return next;
+    }
+
+    Set<Status> getStatuses() { return statuses; }
+    Set<Priority> getPriorities() { return priorities; }
+    String getAssignee() { return assignee; }
+    String getAssigneeContaining() { return assigneeContaining; }
+    Order getOrder() { return order; }
+    int getOffset() { return offset; }
+    int getLimit() { return limit; }
+    int getAfterGroup() { return afterGroup; }
+    int getAfterId() { return afterId; }
+
+    String getKeyword() {
+        return keyword == null || keyword.trim().isEmpty() ? null : keyword;
+    }
+}
@@ -0,0 +1,259 @@
+package managers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import models.Bug;
+import models.Priority;
+import models.Status;
+
+/**
+ * Versioned binary snapshot of every bug, read through a memory mapping.
+ *
+ * <pre>
+ * header (32 bytes)   magic "BUGS", version, record size, count, next bug id (0 if unknown),
+ *                     strings start, strings length
+ * records (40 bytes)  id, status ordinal, priority ordinal, then offset/length pairs into the
+ *                     string area for title, description, assignee and comments
+ * strings             UTF-8 bodies; comments are a run of (int length, bytes) entries
+ * </pre>
+ *
+ * Opening a snapshot only reads the fixed-width records. Strings are decoded by
+ * {@link MappedBug} the first time a getter asks for them.
+ * Comments now live in the {@link CommentSegment}, so snapshots are written with empty comment
+ * runs; the runs of older snapshots are read once to move their comments there.
+ */
+class BugSnapshot {
+    static final int MAGIC = 0x42554753; // "BUGS"
+    static final short VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 40;
+
+    private static final int ID = 0;
+    private static final int STATUS = 4;
+    private static final int PRIORITY = 5;
+    private static final int TITLE = 8;
+    private static final int DESCRIPTION = 16;
+    private static final int ASSIGNEE = 24;
+    private static final int COMMENTS = 32;
+
+    private static final Status[] STATUSES = Status.values();
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final ByteBuffer records;
+    private final ByteBuffer strings;
+    private final int count;
+    private final int nextId;
+
+    private BugSnapshot(ByteBuffer records, ByteBuffer strings, int count, int nextId) {
+        this.records = records;
+        this.strings = strings;
+        this.count = count;
+        this.nextId = nextId;
+    }
+
+    /**
+     * Map a snapshot file.
+     *
+     * @param file the snapshot to open
+     * @return the mapped snapshot
+     * @throws IOException if the file cannot be read or is not a snapshot of a known version
+     */
+    static BugSnapshot open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Bug snapshot is truncated: " + file);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ByteOrder.BIG_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a bug snapshot: " + file);
+            }
+            short version = header.getShort(4);
+            if (version != VERSION || header.getShort(6) != RECORD_SIZE) {
+                throw new IOException("Unsupported bug snapshot version " + version + ": " + file);
+            }
+            int count = header.getInt(8);
+            int nextId = header.getInt(12);
+            long stringsStart = header.getLong(16);
+            long stringsLength = header.getLong(24);
+            if (stringsStart != HEADER_SIZE + (long) count * RECORD_SIZE || stringsStart + stringsLength > channel.size()) {
+                throw new IOException("Bug snapshot is truncated: " + file);
+            }
+            // A mapping stays valid after its channel is closed
+            ByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, stringsStart - HEADER_SIZE);
+            ByteBuffer strings = channel.map(FileChannel.MapMode.READ_ONLY, stringsStart, stringsLength);
+            return new BugSnapshot(records, strings, count, nextId);
+        }
+    }
+
+    /**
+     * Write bugs to a new snapshot file.
+     *
+     * @param file the file to create or overwrite
+     * @param bugs the bugs to write
+     * @param nextId the next bug id to hand out
+     * @throws IOException if writing fails
+     */
+    static void write(File file, Collection<Bug> bugs, int nextId) throws IOException {
+        long stringsStart = HEADER_SIZE + (long) bugs.size() * RECORD_SIZE;
+        ByteBuffer records = ByteBuffer.allocate(bugs.size() * RECORD_SIZE);
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(stringsStart);
+            StringArea area = new StringArea(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            for (Bug bug : bugs) {
+                records.putInt(bug.getId());
+                records.put((byte) bug.getStatus().ordinal());
+                records.put((byte) bug.getPriority().ordinal());
+                records.putShort((short) 0);
+                area.putString(records, bug.getTitle());
+                area.putString(records, bug.getDescription());
+                area.putString(records, bug.getAssignedTo());
+                area.putComments(records, Collections.emptyList());
+            }
+            area.out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.putShort((short) RECORD_SIZE);
+            header.putInt(bugs.size());
+            header.putInt(nextId);
+            header.putLong(stringsStart);
+            header.putLong(area.length);
+            header.flip();
+            records.flip();
+            writeFully(channel, header, 0);
+            writeFully(channel, records, HEADER_SIZE);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * @return number of bugs in the snapshot
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * @return the next bug id recorded when the snapshot was written, or 0 for snapshots written before it was kept
+     */
+    int nextId() {
+        return nextId;
+    }
+
+    /**
+     * Create a lazily decoded bug for a record.
+     *
+     * @param record record number, 0 to size() - 1
+     * @return the bug
+     */
+    Bug bug(int record) {
+        int base = record * RECORD_SIZE;
+        return new MappedBug(this, record, records.getInt(base + ID),
+                STATUSES[records.get(base + STATUS)], PRIORITIES[records.get(base + PRIORITY)]);
+    }
+
+    String title(int record) {
+        return string(record * RECORD_SIZE + TITLE);
+    }
+
+    String description(int record) {
+        return string(record * RECORD_SIZE + DESCRIPTION);
+    }
+
+    String assignee(int record) {
+        return string(record * RECORD_SIZE + ASSIGNEE);
+    }
+
+    /**
+     * Comments held in the record, by snapshots written before comments moved to the comment segment.
+     *
+     * @param record record number, 0 to size() - 1
+     * @return the comment texts, usually none
+     */
+    List<String> comments(int record) {
+        int base = record * RECORD_SIZE + COMMENTS;
+        int pos = records.getInt(base);
+        int end = pos + records.getInt(base + 4);
+        List<String> comments = new ArrayList<>();
+        while (pos < end) {
+            int len = strings.getInt(pos);
+            comments.add(decode(pos + 4, len));
+            pos += 4 + len;
+        }
+        return comments;
+    }
+
+    private String string(int slot) {
+        return decode(records.getInt(slot), records.getInt(slot + 4));
+    }
+
+    private String decode(int offset, int length) {
+        byte[] bytes = new byte[length];
+        strings.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    // Appends string bodies and records their offset/length pairs
+    private static final class StringArea {
+        final OutputStream out;
+        long length;
+
+        StringArea(OutputStream out) {
+            this.out = out;
+        }
+
+        void putString(ByteBuffer records, String s) throws IOException {
+            byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+            records.putInt(offset());
+            records.putInt(bytes.length);
+            write(bytes);
+        }
+
+        void putComments(ByteBuffer records, List<String> comments) throws IOException {
+            int start = offset();
+            for (String c : comments) {
+                byte[] bytes = c.getBytes(StandardCharsets.UTF_8);
+                out.write(bytes.length >>> 24);
+                out.write(bytes.length >>> 16);
+                out.write(bytes.length >>> 8);
+                out.write(bytes.length);
+                length += 4;
+                write(bytes);
+            }
+            records.putInt(start);
+            records.putInt((int) (length - start));
+        }
+
+        private int offset() throws IOException {
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Bug snapshot string area exceeds 2 GB");
+            }
+            return (int) length;
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            out.write(bytes);
+            length += bytes.length;
+        }
+    }
+}
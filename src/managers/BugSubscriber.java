@@ -0,0 +1,28 @@
+package managers;
+
+import java.util.List;
+
+/**
+ * Receives the mutations made through a {@link BugManager} in batches, on a thread of its own,
+ * so that keeping a derived view current costs the writers nothing. Register with
+ * {@link BugManager#subscribe(BugSubscriber)}. Use a {@link BugListener} instead when the view
+ * must be current the moment a mutation returns.
+ */
+public interface BugSubscriber {
+
+    /**
+     * Events published since the last batch, in sequence order. Called from one thread at a time.
+     *
+     * @param events the batch; only valid during the call
+     */
+    void onEvents(List<BugEvent> events);
+
+    /**
+     * The subscriber fell so far behind that events were overwritten before it read them.
+     * Delivery carries on with the newest events; a view built from events should be rebuilt from
+     * {@link BugManager#loadBugs()}, which already reflects some of the events that follow.
+     *
+     * @param missed number of events skipped
+     */
+    default void onOverflow(long missed) {}
+}
@@ -0,0 +1,642 @@
+package managers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.zip.CRC32C;
+import models.Bug;
+import models.Comment;
+import models.CommentStore;
+
+/**
+ * Append-only segment file holding the comments of every bug, kept next to the bug snapshot.
+ * Bugs read their comments from here only when asked, so loading, listing and searching bugs
+ * never touches comment text, and adding a comment appends one record without rewriting the bug.
+ *
+ * <pre>
+ * header (16 bytes)  magic "CMTS", version, generation
+ * records            length of the rest (int), CRC32C of the rest (int), kind (byte), bug id (int),
+ *                    offset of the bug's previous comment (long, -1 for its first),
+ *                    time (long, epoch millis, 0 if unknown), author length (int, -1 if unknown),
+ *                    author and text in UTF-8
+ * </pre>
+ *
+ * A bug's comments form a chain running back from its newest record. A comment without a previous
+ * one starts a new chain, replacing whatever the bug had, and a CLEAR record drops them all.
+ * The newest record of each bug is indexed in memory and saved to an index file by
+ * {@link #checkpoint}, so opening reads that file and scans only the records appended since.
+ * A torn last record left by a crash fails its checksum and is cut off.
+ * <p>
+ * Records are held in memory until the owner syncs, the buffer fills or a checkpoint runs, and the
+ * log of bug mutations is flushed before any of them is written, so a record never reaches the file
+ * ahead of the mutation it belongs to: a crash can lose the last comments but never clear or replace
+ * the comments of a bug whose deletion or replacement was lost.
+ * <p>
+ * Replaced and cleared records stay in the file until a checkpoint finds they make up most of it
+ * and copies the live chains into a fresh segment of the next generation. The index names the
+ * generation it describes, so an index left over from before a rewrite is never trusted.
+ */
+class CommentSegment implements CommentStore, Closeable {
+    private static final int MAGIC = 0x434D5453; // "CMTS"
+    private static final int INDEX_MAGIC = 0x43494458; // "CIDX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    // Record layout: length and checksum, then the checksummed part
+    private static final int RECORD_HEAD = 8;
+    private static final int KIND = 8;
+    private static final int BUG_ID = 9;
+    private static final int PREVIOUS = 13;
+    private static final int TIME = 21;
+    private static final int AUTHOR_LENGTH = 29;
+    private static final int AUTHOR = 33;
+    private static final int FIXED = AUTHOR - RECORD_HEAD;
+
+    private static final byte COMMENT = 'C';
+    private static final byte CLEAR = 'X';
+    private static final long NONE = -1;
+
+    // Dead records below this size are never worth a rewrite
+    private static final long REWRITE_MIN_BYTES = 1 << 20;
+
+    private final File file;
+    private final File indexFile;
+    private final Flushable ahead; // Flushed before any record is written
+    private FileChannel channel;
+    private long generation;
+    private long length; // End of the last record, including those still pending
+    private long garbage; // Bytes of records no chain reaches
+    private Threads threads = new Threads();
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer scratch = ByteBuffer.allocate(512);
+    private final CRC32C crc = new CRC32C();
+    private int unsynced; // Records committed since the last sync
+
+    /**
+     * Open a segment, reading its index and the records appended after it.
+     *
+     * @param path the segment file; created on the first append
+     * @param indexPath the index file written by checkpoints
+     * @param ahead flushed to disk before any record is written, so the file never runs ahead of it
+     */
+    CommentSegment(String path, String indexPath, Flushable ahead) {
+        this.file = new File(path);
+        this.indexFile = new File(indexPath);
+        this.ahead = ahead;
+        try {
+            load();
+        } catch (IOException e) {
+            System.err.println("Error loading comments: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized List<Comment> comments(int bugId) {
+        int slot = threads.find(bugId);
+        if (slot < 0) {
+            return Collections.emptyList();
+        }
+        Comment[] comments = new Comment[threads.counts[slot]];
+        long offset = threads.heads[slot];
+        try {
+            for (int i = comments.length - 1; i >= 0; i--) {
+                ByteBuffer record = read(offset);
+                comments[i] = decode(record);
+                offset = record.getLong(PREVIOUS);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading comments: " + e.getMessage());
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(comments));
+    }
+
+    @Override
+    public synchronized int count(int bugId) {
+        int slot = threads.find(bugId);
+        return slot < 0 ? 0 : threads.counts[slot];
+    }
+
+    @Override
+    public synchronized void add(int bugId, Comment comment) {
+        try {
+            int slot = threads.find(bugId);
+            long previous = slot < 0 ? NONE : threads.heads[slot];
+            long offset = append(COMMENT, bugId, previous, comment);
+            if (slot < 0) {
+                threads.put(bugId, offset, 1, length - offset);
+            } else {
+                threads.put(bugId, offset, threads.counts[slot] + 1, threads.bytes[slot] + length - offset);
+            }
+            commit();
+        } catch (IOException e) {
+            System.err.println("Error writing comments: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replace all comments of a bug.
+     *
+     * @param bugId the bug
+     * @param comments its new comments, oldest first; none drops them all
+     */
+    synchronized void replace(int bugId, List<Comment> comments) {
+        try {
+            reset(bugId, comments);
+            commit();
+        } catch (IOException e) {
+            System.err.println("Error writing comments: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Move the comments of bugs that hold them in memory into the segment, replacing any the
+     * segment had for their ids, and point the bugs at it. Bugs already kept here are left alone.
+     *
+     * @param bugs the bugs
+     */
+    void adopt(Collection<Bug> bugs) {
+        synchronized (this) {
+            try {
+                for (Bug bug : bugs) {
+                    if (bug.getCommentStore() != this) {
+                        reset(bug.getId(), bug.getComments());
+                    }
+                }
+                commit();
+            } catch (IOException e) {
+                System.err.println("Error writing comments: " + e.getMessage());
+            }
+        }
+        // Outside the segment's lock: a bug's lock is always taken before the segment's
+        for (Bug bug : bugs) {
+            if (bug.getCommentStore() != this) {
+                bug.setCommentStore(this);
+            }
+        }
+    }
+
+    /**
+     * Drop the comments of every bug that fails a test, e.g. bugs whose deletion reached the log
+     * while the records clearing their comments did not.
+     *
+     * @param keep whether a bug id is still in use
+     * @return number of bugs whose comments were dropped
+     */
+    synchronized int retain(IntPredicate keep) {
+        IntList dropped = new IntList();
+        for (int slot = 0; slot < threads.ids.length; slot++) {
+            if (threads.heads[slot] != 0 && !keep.test(threads.ids[slot])) {
+                dropped.add(threads.ids[slot]);
+            }
+        }
+        try {
+            for (int id : dropped.toArray()) {
+                reset(id, Collections.emptyList());
+            }
+            if (dropped.size() > 0) {
+                commit();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing comments: " + e.getMessage());
+        }
+        return dropped.size();
+    }
+
+    /**
+     * Save the index so the next open can skip every record written so far,
+     * first copying the live chains to a new segment if most of the file is dead.
+     */
+    synchronized void checkpoint() {
+        if (length == 0) {
+            return; // No comment was ever written
+        }
+        try {
+            flush();
+            if (garbage >= REWRITE_MIN_BYTES && garbage * 2 > length) {
+                rewrite();
+            }
+            channel().force(false);
+            unsynced = 0;
+            writeIndex();
+        } catch (IOException e) {
+            System.err.println("Error saving comment index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Force every appended record to disk.
+     */
+    synchronized void sync() throws IOException {
+        flush();
+        if (channel != null && unsynced > 0) {
+            channel.force(false);
+        }
+        unsynced = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // Replace a bug's chain without committing
+    private void reset(int bugId, List<Comment> comments) throws IOException {
+        int slot = threads.find(bugId);
+        if (comments.isEmpty()) {
+            if (slot >= 0) {
+                garbage += threads.bytes[slot];
+                long offset = append(CLEAR, bugId, NONE, null);
+                garbage += length - offset;
+                threads.remove(bugId);
+            }
+            return;
+        }
+        if (slot >= 0) {
+            garbage += threads.bytes[slot];
+        }
+        long previous = NONE;
+        long bytes = 0;
+        for (Comment comment : comments) {
+            long offset = append(COMMENT, bugId, previous, comment);
+            bytes += length - offset;
+            previous = offset;
+        }
+        threads.put(bugId, previous, comments.size(), bytes);
+    }
+
+    // Encode a record into the pending buffer and return its offset
+    private long append(byte kind, int bugId, long previous, Comment comment) throws IOException {
+        byte[] author = comment != null && comment.getAuthor() != null ? comment.getAuthor().getBytes(StandardCharsets.UTF_8) : null;
+        byte[] text = comment != null && comment.getText() != null ? comment.getText().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int size = RECORD_HEAD + FIXED + (author != null ? author.length : 0) + text.length;
+        if (length == 0) {
+            generation = 1;
+            pending.putInt(MAGIC).putInt(VERSION).putLong(generation);
+            length = HEADER_SIZE;
+        }
+        if (pending.remaining() < size) {
+            flush();
+            if (pending.capacity() < size) {
+                pending = ByteBuffer.allocate(size);
+            }
+        }
+        long offset = length;
+        int start = pending.position();
+        pending.putInt(size - RECORD_HEAD).putInt(0);
+        pending.put(kind).putInt(bugId).putLong(previous);
+        pending.putLong(comment != null ? comment.getTimestamp() : 0);
+        pending.putInt(author != null ? author.length : -1);
+        if (author != null) pending.put(author);
+        pending.put(text);
+        pending.putInt(start + 4, checksum(pending.array(), start, size));
+        length += size;
+        return offset;
+    }
+
+    private int checksum(byte[] record, int start, int size) {
+        crc.reset();
+        crc.update(record, start + RECORD_HEAD, size - RECORD_HEAD);
+        return (int) crc.getValue();
+    }
+
+    // Mark pending records as one committed change; the owner's next sync writes them after the bug log
+    private void commit() {
+        unsynced++;
+    }
+
+    // Write pending records, once whatever they must follow is on disk
+    private void flush() throws IOException {
+        if (pending.position() == 0) {
+            return;
+        }
+        ahead.flush();
+        pending.flip();
+        long position = length - pending.remaining();
+        FileChannel channel = channel();
+        while (pending.hasRemaining()) {
+            position += channel.write(pending, position);
+        }
+        pending.clear();
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return channel;
+    }
+
+    // Read one whole record into the scratch buffer, positioned at its start; pending records are copied from memory
+    private ByteBuffer read(long offset) throws IOException {
+        long written = length - pending.position();
+        if (offset >= written) {
+            int start = (int) (offset - written);
+            int size = RECORD_HEAD + pending.getInt(start);
+            if (size > scratch.capacity()) {
+                scratch = ByteBuffer.allocate(size);
+            }
+            scratch.clear();
+            scratch.put(pending.array(), start, size);
+            scratch.flip();
+            return scratch;
+        }
+        scratch.clear();
+        scratch.limit((int) Math.min(scratch.capacity(), written - offset));
+        readFully(scratch, offset);
+        int size = RECORD_HEAD + scratch.getInt(0);
+        if (size > scratch.limit()) {
+            if (size > scratch.capacity()) {
+                scratch = ByteBuffer.allocate(size);
+            }
+            scratch.clear().limit(size);
+            readFully(scratch, offset);
+        }
+        scratch.position(0).limit(size);
+        return scratch;
+    }
+
+    private void readFully(ByteBuffer buf, long offset) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel().read(buf, offset);
+            if (n < 0) {
+                throw new EOFException("Comment record at " + offset + " is truncated");
+            }
+            offset += n;
+        }
+    }
+
+    private static Comment decode(ByteBuffer record) {
+        int size = RECORD_HEAD + record.getInt(0);
+        int authorLength = record.getInt(AUTHOR_LENGTH);
+        String author = null;
+        int text = AUTHOR;
+        if (authorLength >= 0) {
+            author = new String(record.array(), AUTHOR, authorLength, StandardCharsets.UTF_8);
+            text += authorLength;
+        }
+        return new Comment(new String(record.array(), text, size - text, StandardCharsets.UTF_8),
+                author, record.getLong(TIME));
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        long size = file.length();
+        if (size < HEADER_SIZE) {
+            channel().truncate(0); // Crashed before the header was written
+            return;
+        }
+        long from;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a comment segment of a known version: " + file);
+            }
+            generation = in.readLong();
+        }
+        from = readIndex(size);
+        length = scan(from, size);
+        if (length < size) {
+            // Cut off a torn record so the next one does not land after it
+            channel().truncate(length);
+        }
+    }
+
+    // Load the index if it describes this generation of the segment; returns where the scan starts
+    private long readIndex(long size) {
+        if (!indexFile.exists()) {
+            return HEADER_SIZE;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 1 << 16))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != VERSION || in.readLong() != generation) {
+                return HEADER_SIZE;
+            }
+            long covered = in.readLong();
+            if (covered > size) {
+                return HEADER_SIZE;
+            }
+            long dead = in.readLong();
+            int count = in.readInt();
+            Threads loaded = new Threads();
+            for (int i = 0; i < count; i++) {
+                loaded.put(in.readInt(), in.readLong(), in.readInt(), in.readLong());
+            }
+            threads = loaded;
+            garbage = dead;
+            return covered;
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable comment index: " + e.getMessage());
+            threads = new Threads();
+            garbage = 0;
+            return HEADER_SIZE;
+        }
+    }
+
+    // Apply the records from an offset on; returns the end of the last intact one
+    private long scan(long from, long size) throws IOException {
+        long position = from;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            in.skipNBytes(from);
+            byte[] body = new byte[256];
+            while (size - position >= RECORD_HEAD + FIXED) {
+                int rest = in.readInt();
+                int sum = in.readInt();
+                if (rest < FIXED || rest > size - position - RECORD_HEAD) break;
+                if (body.length < RECORD_HEAD + rest) {
+                    body = new byte[RECORD_HEAD + rest];
+                }
+                in.readFully(body, RECORD_HEAD, rest);
+                if (checksum(body, 0, RECORD_HEAD + rest) != sum) break;
+                ByteBuffer record = ByteBuffer.wrap(body);
+                int bugId = record.getInt(BUG_ID);
+                int slot = threads.find(bugId);
+                long recordSize = RECORD_HEAD + rest;
+                if (body[KIND] == CLEAR) {
+                    garbage += recordSize;
+                    if (slot >= 0) {
+                        garbage += threads.bytes[slot];
+                        threads.remove(bugId);
+                    }
+                } else if (record.getLong(PREVIOUS) == NONE || slot < 0) {
+                    if (slot >= 0) garbage += threads.bytes[slot];
+                    threads.put(bugId, position, 1, recordSize);
+                } else {
+                    threads.put(bugId, position, threads.counts[slot] + 1, threads.bytes[slot] + recordSize);
+                }
+                position += recordSize;
+            }
+        }
+        return position;
+    }
+
+    private void writeIndex() throws IOException {
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(generation);
+            out.writeLong(length);
+            out.writeLong(garbage);
+            out.writeInt(threads.size);
+            for (int slot = 0; slot < threads.ids.length; slot++) {
+                if (threads.heads[slot] == 0) continue;
+                out.writeInt(threads.ids[slot]);
+                out.writeLong(threads.heads[slot]);
+                out.writeInt(threads.counts[slot]);
+                out.writeLong(threads.bytes[slot]);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Copy every live chain, oldest comment first, into a segment of the next generation
+    private void rewrite() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        Threads copied = new Threads();
+        long end = HEADER_SIZE;
+        try (FileChannel out = FileChannel.open(tmp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+            buf.putInt(MAGIC).putInt(VERSION).putLong(generation + 1);
+            for (int slot = 0; slot < threads.ids.length; slot++) {
+                if (threads.heads[slot] == 0) continue;
+                long[] chain = new long[threads.counts[slot]];
+                long offset = threads.heads[slot];
+                for (int i = chain.length - 1; i >= 0; i--) {
+                    chain[i] = offset;
+                    offset = read(offset).getLong(PREVIOUS);
+                }
+                long previous = NONE;
+                for (long from : chain) {
+                    ByteBuffer record = read(from);
+                    int size = record.remaining();
+                    record.putLong(PREVIOUS, previous);
+                    record.putInt(4, checksum(record.array(), 0, size));
+                    if (buf.remaining() < size) {
+                        writeAll(out, buf);
+                        if (buf.capacity() < size) buf = ByteBuffer.allocate(size);
+                    }
+                    buf.put(record);
+                    previous = end;
+                    end += size;
+                }
+                copied.put(threads.ids[slot], previous, chain.length, threads.bytes[slot]);
+            }
+            writeAll(out, buf);
+            out.force(true);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        channel = null;
+        generation++;
+        threads = copied;
+        length = end;
+        garbage = 0;
+    }
+
+    private static void writeAll(FileChannel out, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        buf.clear();
+    }
+
+    // Bug id to the newest record, comment count and record bytes of its chain.
+    // Open addressing with linear probing; a head of 0 marks a free slot, as no record starts there.
+    private static final class Threads {
+        int[] ids = new int[16];
+        long[] heads = new long[16];
+        int[] counts = new int[16];
+        long[] bytes = new long[16];
+        int size;
+
+        int find(int id) {
+            int mask = ids.length - 1;
+            for (int slot = home(id, mask); heads[slot] != 0; slot = (slot + 1) & mask) {
+                if (ids[slot] == id) return slot;
+            }
+            return -1;
+        }
+
+        void put(int id, long head, int count, long recordBytes) {
+            if ((size + 1) * 2 > ids.length) {
+                grow();
+            }
+            int mask = ids.length - 1;
+            int slot = home(id, mask);
+            while (heads[slot] != 0 && ids[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            if (heads[slot] == 0) size++;
+            ids[slot] = id;
+            heads[slot] = head;
+            counts[slot] = count;
+            bytes[slot] = recordBytes;
+        }
+
+        // Free the id's slot and shift later entries of its probe run back, so lookups never stop short
+        void remove(int id) {
+            int hole = find(id);
+            if (hole < 0) return;
+            int mask = ids.length - 1;
+            int next = hole;
+            while (true) {
+                next = (next + 1) & mask;
+                if (heads[next] == 0) break;
+                int home = home(ids[next], mask);
+                boolean movable = hole <= next ? home <= hole || home > next : home <= hole && home > next;
+                if (movable) {
+                    ids[hole] = ids[next];
+                    heads[hole] = heads[next];
+                    counts[hole] = counts[next];
+                    bytes[hole] = bytes[next];
+                    hole = next;
+                }
+            }
+            heads[hole] = 0;
+            size--;
+        }
+
+        private void grow() {
+            int[] oldIds = ids;
+            long[] oldHeads = heads;
+            int[] oldCounts = counts;
+            long[] oldBytes = bytes;
+            ids = new int[oldIds.length * 2];
+            heads = new long[oldIds.length * 2];
+            counts = new int[oldIds.length * 2];
+            bytes = new long[oldIds.length * 2];
+            size = 0;
+            for (int slot = 0; slot < oldIds.length; slot++) {
+                if (oldHeads[slot] != 0) put(oldIds[slot], oldHeads[slot], oldCounts[slot], oldBytes[slot]);
+            }
+        }
+
+        private static int home(int id, int mask) {
+            int h = id * 0x9E3779B9;
+            return (h ^ h >>> 16) & mask;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package managers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Short-lived record of passwords that recently passed the slow hash check, so a client
+ * logging in again and again pays one HMAC instead of the full PBKDF2 cost.
+ * Only a keyed digest of the password is kept, under a random key that never leaves the
+ * process. An entry only matches the stored hash it was verified against, so a password change
+ * invalidates it. When the cache is full an arbitrary entry makes room.
+ */
+class CredentialCache {
+    private static final String MAC = "HmacSHA256";
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final SecretKeySpec key;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private static final class Entry {
+        final String stored;
+        final byte[] digest;
+        final long expiresAt;
+
+        Entry(String stored, byte[] digest, long expiresAt) {
+            this.stored = stored;
+            this.digest = digest;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    CredentialCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, MAC);
+    }
+
+    /**
+     * @param userKey the case-folded username
+     * @param stored the user's current stored hash
+     * @param password the password being checked
+     * @return true if this password was verified against this stored hash within the TTL
+     */
+    boolean matches(String userKey, String stored, String password) {
+        Entry entry = entries.get(userKey);
+        if (entry == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() >= entry.expiresAt || !entry.stored.equals(stored)) {
+            entries.remove(userKey, entry);
+            return false;
+        }
+        return MessageDigest.isEqual(entry.digest, digest(userKey, password));
+    }
+
+    /**
+     * Remember a password that just passed the full check.
+     */
+    void put(String userKey, String stored, String password) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        if (entries.size() >= maxEntries && !entries.containsKey(userKey)) {
+            Iterator<String> victims = entries.keySet().iterator();
+            if (victims.hasNext()) {
+                victims.next();
+                victims.remove();
+            }
+        }
+        entries.put(userKey, new Entry(stored, digest(userKey, password), System.currentTimeMillis() + ttlMillis));
+    }
+
+    void remove(String userKey) {
+        entries.remove(userKey);
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private byte[] digest(String userKey, String password) {
+        try {
+            Mac mac = Mac.getInstance(MAC);
+            mac.init(key);
+            mac.update(userKey.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(MAC + " is not available", e); // Part of every Java SE runtime
+        }
+    }
+}
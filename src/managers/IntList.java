@@ -0,0 +1,119 @@
+package managers;
+
+import java.util.Arrays;
+
+/**
+ * Growable, sorted list of distinct primitive ints, used for index posting lists.
+ * Appending an id larger than the last one is O(1); other inserts and removals shift the tail.
+ */
+class IntList {
+    private static final int[] EMPTY = new int[0];
+
+    private int[] values = EMPTY;
+    private int size;
+
+    /**
+     * Insert a value, keeping the list sorted.
+     *
+     * @return true if added, false if already present
+     */
+    boolean add(int value) {
+        if (size == 0 || values[size - 1] < value) {
+            grow();
+            values[size++] = value;
+            return true;
+        }
+        int pos = Arrays.binarySearch(values, 0, size, value);
+        if (pos >= 0) {
+            return false;
+        }
+        pos = -pos - 1;
+        grow();
+        System.arraycopy(values, pos, values, pos + 1, size - pos);
+        values[pos] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * Remove a value.
+     *
+     * @return true if removed, false if not present
+     */
+    boolean remove(int value) {
+        int pos = Arrays.binarySearch(values, 0, size, value);
+        if (pos < 0) {
+            return false;
+        }
+        System.arraycopy(values, pos + 1, values, pos, size - pos - 1);
+        size--;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return a sorted copy of the values
+     */
+    int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Copy the values into an array.
+     *
+     * @return the index after the last value copied
+     */
+    int copyTo(int[] dest, int offset) {
+        System.arraycopy(values, 0, dest, offset, size);
+        return offset + size;
+    }
+
+    private void grow() {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(4, size + (size >> 1)));
+        }
+    }
+
+    /**
+     * Intersect two sorted id arrays.
+     */
+    static int[] and(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Merge two sorted id arrays without duplicates.
+     */
+    static int[] or(int[] a, int[] b) {
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) out[n++] = a[i++];
+            else if (i == a.length || b[j] < a[i]) out[n++] = b[j++];
+            else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+}
@@ -0,0 +1,222 @@
+package managers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Full-text index from lower-cased word tokens to sorted posting lists of bug ids.
+ *
+ * Query syntax:
+ * <pre>
+ * login crash          both words (AND)
+ * login OR crash       either word
+ * "null pointer"       the words next to each other in one field
+ * crash*               any word starting with "crash"
+ * </pre>
+ */
+class InvertedIndex {
+
+    /**
+     * Checks a candidate bug for an exact phrase, after the index has narrowed
+     * the candidates down to bugs containing every word of it.
+     */
+    interface PhraseMatcher {
+        boolean matches(int id, List<String> phrase);
+    }
+
+    private final TreeMap<String, IntList> postings = new TreeMap<>();
+
+    /**
+     * Index the given texts under a bug id.
+     */
+    void add(int id, Collection<String> texts) {
+        for (String text : texts) {
+            for (String token : tokenize(text)) {
+                postings.computeIfAbsent(token, k -> new IntList()).add(id);
+            }
+        }
+    }
+
+    /**
+     * Remove a bug id from every token of the given texts. The texts must be
+     * everything that was indexed for the bug, since a token may occur in several of them.
+     */
+    void remove(int id, Collection<String> texts) {
+        Set<String> tokens = new HashSet<>();
+        for (String text : texts) {
+            tokens.addAll(tokenize(text));
+        }
+        for (String token : tokens) {
+            IntList list = postings.get(token);
+            if (list != null && list.remove(id) && list.isEmpty()) {
+                postings.remove(token);
+            }
+        }
+    }
+
+    /**
+     * Run a query.
+     *
+     * @param query the query, see the class comment for the syntax
+     * @param matcher verifies phrase clauses on candidate bugs
+     * @return sorted ids of matching bugs
+     */
+    int[] search(String query, PhraseMatcher matcher) {
+        int[] result = new int[0];
+        for (List<Clause> group : parse(query)) {
+            int[][] lists = new int[group.size()][];
+            for (int i = 0; i < group.size(); i++) {
+                lists[i] = group.get(i).evaluate();
+            }
+            // Intersect the shortest lists first so the candidate set shrinks fast
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+            int[] ids = lists[0];
+            for (int i = 1; i < lists.length && ids.length > 0; i++) {
+                ids = IntList.and(ids, lists[i]);
+            }
+            for (Clause clause : group) {
+                if (clause.phrase != null && ids.length > 0) {
+                    ids = verify(ids, clause.phrase, matcher);
+                }
+            }
+            result = IntList.or(result, ids);
+        }
+        return result;
+    }
+
+    /**
+     * Split text into lower-cased runs of letters and digits.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            } else if (sb.length() > 0) {
+                tokens.add(sb.toString());
+                sb.setLength(0);
+            }
+        }
+        if (sb.length() > 0) {
+            tokens.add(sb.toString());
+        }
+        return tokens;
+    }
+
+    private int[] lookup(String token) {
+        IntList list = postings.get(token);
+        return list == null ? new int[0] : list.toArray();
+    }
+
+    private int[] lookupPrefix(String prefix) {
+        Collection<IntList> lists = postings.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values();
+        int total = 0;
+        for (IntList list : lists) {
+            total += list.size();
+        }
+        int[] all = new int[total];
+        int n = 0;
+        for (IntList list : lists) {
+            n = list.copyTo(all, n);
+        }
+        Arrays.sort(all);
+        // Drop ids that occur under several matching tokens
+        int distinct = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (distinct == 0 || all[distinct - 1] != all[i]) {
+                all[distinct++] = all[i];
+            }
+        }
+        return Arrays.copyOf(all, distinct);
+    }
+
+    private static int[] verify(int[] ids, List<String> phrase, PhraseMatcher matcher) {
+        int[] out = new int[ids.length];
+        int n = 0;
+        for (int id : ids) {
+            if (matcher.matches(id, phrase)) {
+                out[n++] = id;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    // Parses the query into OR-separated groups of AND-ed clauses
+    private List<List<Clause>> parse(String query) {
+        List<List<Clause>> groups = new ArrayList<>();
+        List<Clause> group = new ArrayList<>();
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                int end = query.indexOf('"', i + 1);
+                if (end < 0) end = query.length();
+                addWords(group, tokenize(query.substring(i + 1, end)), false);
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < query.length() && !Character.isWhitespace(query.charAt(end)) && query.charAt(end) != '"') {
+                    end++;
+                }
+                String word = query.substring(i, end);
+                if (word.equals("OR")) {
+                    if (!group.isEmpty()) groups.add(group);
+                    group = new ArrayList<>();
+                } else {
+                    addWords(group, tokenize(word), word.endsWith("*"));
+                }
+                i = end;
+            }
+        }
+        if (!group.isEmpty()) groups.add(group);
+        return groups;
+    }
+
+    private void addWords(List<Clause> group, List<String> tokens, boolean prefix) {
+        if (tokens.isEmpty()) {
+            return;
+        }
+        if (tokens.size() == 1) {
+            group.add(new Clause(tokens.get(0), prefix, null));
+            return;
+        }
+        // Several tokens in one word or quoted string: every token must be present,
+        // and they must appear in order
+        for (String token : tokens) {
+            group.add(new Clause(token, false, null));
+        }
+        group.add(new Clause(null, false, tokens));
+    }
+
+    private final class Clause {
+        final String token;
+        final boolean prefix;
+        final List<String> phrase;
+
+        Clause(String token, boolean prefix, List<String> phrase) {
+            this.token = token;
+            this.prefix = prefix;
+            this.phrase = phrase;
+        }
+
+        int[] evaluate() {
+            if (phrase != null) {
+                // Narrowed by the per-token clauses of the same phrase, verified afterwards
+                return lookup(phrase.get(0));
+            }
+            return prefix ? lookupPrefix(token) : lookup(token);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package managers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The JSON the tracker reads and writes, shared by the JSONL import and export and the HTTP API:
+ * quoted strings, and flat objects whose members are strings, numbers, booleans, null or, where a
+ * caller asks for one, an array of strings. It is not a general JSON parser.
+ */
+public final class JsonText {
+    private final String text;
+    private int pos;
+
+    JsonText(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Append a string as a JSON string literal, or null.
+     */
+    public static void quote(StringBuilder sb, String s) {
+        if (s == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Read a flat JSON object whose values are strings, numbers, booleans or null.
+     * Numbers and booleans are returned as their text; null values are left out.
+     *
+     * @param text the object
+     * @return the members in document order
+     * @throws IllegalArgumentException if the text is not such an object
+     */
+    public static Map<String, String> parseObject(String text) {
+        JsonText in = new JsonText(text);
+        Map<String, String> members = new LinkedHashMap<>();
+        in.object(key -> {
+            String value = in.value();
+            if (value != null) members.put(key, value);
+        });
+        return members;
+    }
+
+    /**
+     * Read the whole text as one object. For each member the reader is left at its value, which
+     * the member callback must read.
+     *
+     * @param member reads the value of the member with the given key
+     */
+    void object(Consumer<String> member) {
+        skipSpace();
+        expect('{');
+        skipSpace();
+        if (peek() == '}') {
+            pos++;
+        } else {
+            while (true) {
+                skipSpace();
+                String key = string();
+                skipSpace();
+                expect(':');
+                skipSpace();
+                member.accept(key);
+                skipSpace();
+                char c = next();
+                if (c == '}') break;
+                if (c != ',') throw error("expected , or }");
+            }
+        }
+        skipSpace();
+        if (pos != text.length()) throw error("trailing characters");
+    }
+
+    /**
+     * @return a string, number or boolean as its text, or null for null
+     */
+    String value() {
+        char c = peek();
+        if (c == '"') return string();
+        int start = pos;
+        while (pos < text.length() && "{}[],: \t\r\n\"".indexOf(text.charAt(pos)) < 0) pos++;
+        String literal = text.substring(start, pos);
+        if (literal.equals("null")) return null;
+        if (literal.equals("true") || literal.equals("false") || literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+            return literal;
+        }
+        throw error("unsupported value");
+    }
+
+    Integer integer() {
+        int start = pos;
+        if (peek() == '-') pos++;
+        while (pos < text.length() && Character.isDigit(text.charAt(pos))) pos++;
+        try {
+            return Integer.valueOf(text.substring(start, pos));
+        } catch (NumberFormatException e) {
+            throw error("expected an integer");
+        }
+    }
+
+    List<String> strings() {
+        List<String> values = new ArrayList<>();
+        expect('[');
+        skipSpace();
+        if (peek() == ']') {
+            pos++;
+            return values;
+        }
+        while (true) {
+            skipSpace();
+            values.add(string());
+            skipSpace();
+            char c = next();
+            if (c == ']') return values;
+            if (c != ',') throw error("expected , or ]");
+        }
+    }
+
+    String string() {
+        expect('"');
+        StringBuilder sb = null; // Only needed once an escape turns up
+        int start = pos;
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return sb == null ? text.substring(start, pos - 1) : sb.toString();
+            }
+            if (c != '\\') {
+                if (sb != null) sb.append(c);
+                continue;
+            }
+            if (sb == null) sb = new StringBuilder(text.substring(start, pos - 1));
+            char e = next();
+            switch (e) {
+                case '"': case '\\': case '/': sb.append(e); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > text.length()) throw error("bad escape");
+                    try {
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("bad escape");
+                    }
+                    pos += 4;
+                    break;
+                default: throw error("bad escape");
+            }
+        }
+    }
+
+    private void skipSpace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+    }
+
+    private char peek() {
+        if (pos >= text.length()) throw error("unexpected end of input");
+        return text.charAt(pos);
+    }
+
+    private char next() {
+        char c = peek();
+        pos++;
+        return c;
+    }
+
+    private void expect(char c) {
+        if (next() != c) throw error("expected " + c);
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at column " + (pos + 1));
+    }
+}
@@ -0,0 +1,76 @@
+package managers;
+
+import models.Bug;
+import models.Priority;
+import models.Status;
+
+/**
+ * A bug backed by a record in a mapped {@link BugSnapshot}.
+ * Id, status and priority are read up front; the text fields are decoded on first access.
+ * Decoding and setters synchronize on the bug, so a decode cannot overwrite a newer value;
+ * once a field is loaded, reads take no lock. Comments are not in the snapshot but in the
+ * comment segment, see {@link Bug#setCommentStore}.
+ */
+class MappedBug extends Bug {
+    private static final int TITLE = 1;
+    private static final int DESCRIPTION = 2;
+    private static final int ASSIGNEE = 4;
+
+    private final BugSnapshot snapshot;
+    private final int record;
+    private volatile byte loaded; // bit set of fields already decoded or overwritten
+
+    MappedBug(BugSnapshot snapshot, int record, int id, Status status, Priority priority) {
+        super(id, null, null, status, priority, null, null);
+        this.snapshot = snapshot;
+        this.record = record;
+    }
+
+    @Override
+    public String getTitle() {
+        if ((loaded & TITLE) == 0) load(TITLE);
+        return super.getTitle();
+    }
+
+    @Override
+    public String getDescription() {
+        if ((loaded & DESCRIPTION) == 0) load(DESCRIPTION);
+        return super.getDescription();
+    }
+
+    @Override
+    public String getAssignedTo() {
+        if ((loaded & ASSIGNEE) == 0) load(ASSIGNEE);
+        return super.getAssignedTo();
+    }
+
+    @Override
+    public synchronized void setTitle(String title) {
+        super.setTitle(title);
+        loaded |= TITLE;
+    }
+
+    @Override
+    public synchronized void setDescription(String description) {
+        super.setDescription(description);
+        loaded |= DESCRIPTION;
+    }
+
+    @Override
+    public synchronized void setAssignedTo(String assignedTo) {
+        super.setAssignedTo(assignedTo);
+        loaded |= ASSIGNEE;
+    }
+
+    // Decode one field unless a setter or another reader got there first
+    private synchronized void load(int field) {
+        if ((loaded & field) != 0) return;
+        switch (field) {
+            case TITLE: super.setTitle(snapshot.title(record)); break;
+            case DESCRIPTION: super.setDescription(snapshot.description(record)); break;
+            case ASSIGNEE: super.setAssignedTo(snapshot.assignee(record)); break;
+            default: break;
+        }
+        loaded |= field;
+    }
+}
@@ -0,0 +1,108 @@
+package managers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Salted PBKDF2-HMAC-SHA256 password hashes, stored as
+ * {@code pbkdf2-sha256$<iterations>$<salt>$<hash>} with Base64 salt and hash.
+ * The iteration count travels with each hash, so users hashed at different costs verify
+ * side by side and can be moved to a new cost as they log in.
+ * Values without the prefix are plaintext passwords from older user files.
+ */
+final class PasswordHasher {
+    // OWASP's recommendation for PBKDF2-HMAC-SHA256
+    static final int DEFAULT_ITERATIONS = 600_000;
+
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private PasswordHasher() {
+    }
+
+    /**
+     * Hash a password with a fresh random salt.
+     *
+     * @param password the plaintext password
+     * @param iterations the work factor, at least 1
+     * @return the encoded hash
+     */
+    static String hash(String password, int iterations) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + '$' + base64.encodeToString(salt) + '$'
+                + base64.encodeToString(derive(password, salt, iterations));
+    }
+
+    /**
+     * Check a password against a stored hash, or against a stored plaintext password.
+     * Takes time proportional to the stored hash's iteration count.
+     *
+     * @return true if the password matches
+     */
+    static boolean verify(String password, String stored) {
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        try {
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+            return MessageDigest.isEqual(expected, derive(password, salt, Integer.parseInt(parts[1])));
+        } catch (IllegalArgumentException e) {
+            return false; // Damaged hash
+        }
+    }
+
+    /**
+     * @return true if the stored value is plaintext or was hashed at another cost
+     */
+    static boolean needsRehash(String stored, int iterations) {
+        return !isHashed(stored) || iterations(stored) != iterations;
+    }
+
+    /**
+     * @return the iteration count of a stored hash, or 0 for plaintext
+     */
+    static int iterations(String stored) {
+        if (!isHashed(stored)) {
+            return 0;
+        }
+        int end = stored.indexOf('$', PREFIX.length());
+        try {
+            return Integer.parseInt(stored.substring(PREFIX.length(), end < 0 ? stored.length() : end));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static boolean isHashed(String stored) {
+        return stored.startsWith(PREFIX);
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Iterations must be at least 1: " + iterations);
+        }
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e); // Part of every Java SE runtime
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
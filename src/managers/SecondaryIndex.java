@@ -0,0 +1,143 @@
+package managers;
+
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import models.Bug;
+import models.Priority;
+import models.Status;
+
+/**
+ * Bitset indexes over status, priority and assignee. A bug's bit position is its id,
+ * so combining filters is a bitset intersection and results come out in id order.
+ */
+class SecondaryIndex {
+    private final BitSet all = new BitSet();
+    private final Map<Status, BitSet> byStatus = new EnumMap<>(Status.class);
+    private final Map<Priority, BitSet> byPriority = new EnumMap<>(Priority.class);
+    // Keyed on the lower-cased assignee name
+    private final Map<String, BitSet> byAssignee = new HashMap<>();
+
+    SecondaryIndex() {
+        for (Status s : Status.values()) byStatus.put(s, new BitSet());
+        for (Priority p : Priority.values()) byPriority.put(p, new BitSet());
+    }
+
+    /**
+     * Index a bug under its current status, priority and assignee.
+     */
+    void add(Bug bug) {
+        int id = bug.getId();
+        all.set(id);
+        byStatus.get(bug.getStatus()).set(id);
+        byPriority.get(bug.getPriority()).set(id);
+        byAssignee.computeIfAbsent(assigneeKey(bug.getAssignedTo()), k -> new BitSet()).set(id);
+    }
+
+    /**
+     * Remove a bug using its current status, priority and assignee.
+     */
+    void remove(Bug bug) {
+        int id = bug.getId();
+        all.clear(id);
+        byStatus.get(bug.getStatus()).clear(id);
+        byPriority.get(bug.getPriority()).clear(id);
+        String key = assigneeKey(bug.getAssignedTo());
+        BitSet ids = byAssignee.get(key);
+        if (ids != null) {
+            ids.clear(id);
+            if (ids.isEmpty()) byAssignee.remove(key);
+        }
+    }
+
+    void clear() {
+        all.clear();
+        for (BitSet ids : byStatus.values()) ids.clear();
+        for (BitSet ids : byPriority.values()) ids.clear();
+        byAssignee.clear();
+    }
+
+    /**
+     * @return number of indexed bugs
+     */
+    int size() {
+        return all.cardinality();
+    }
+
+    /**
+     * @return number of indexed bugs with the status
+     */
+    int count(Status status) {
+        return byStatus.get(status).cardinality();
+    }
+
+    /**
+     * @return number of indexed bugs with the priority
+     */
+    int count(Priority priority) {
+        return byPriority.get(priority).cardinality();
+    }
+
+    /**
+     * @return bug counts keyed by lower-cased assignee name, leaving out names with no bugs
+     */
+    Map<String, Integer> assigneeCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Map.Entry<String, BitSet> entry : byAssignee.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().cardinality());
+        }
+        return counts;
+    }
+
+    /**
+     * @return a copy of the ids of every indexed bug
+     */
+    BitSet all() {
+        return (BitSet) all.clone();
+    }
+
+    /**
+     * Narrow ids to bugs having any of the given statuses.
+     */
+    void retainStatuses(BitSet ids, Iterable<Status> statuses) {
+        BitSet union = new BitSet();
+        for (Status s : statuses) union.or(byStatus.get(s));
+        ids.and(union);
+    }
+
+    /**
+     * Narrow ids to bugs having any of the given priorities.
+     */
+    void retainPriorities(BitSet ids, Iterable<Priority> priorities) {
+        BitSet union = new BitSet();
+        for (Priority p : priorities) union.or(byPriority.get(p));
+        ids.and(union);
+    }
+
+    /**
+     * Narrow ids to bugs assigned to a name, ignoring case.
+     */
+    void retainAssignee(BitSet ids, String name) {
+        BitSet match = byAssignee.get(assigneeKey(name));
+        if (match == null) ids.clear();
+        else ids.and(match);
+    }
+
+    /**
+     * Narrow ids to bugs whose assignee contains some text, ignoring case.
+     * Scans the distinct assignee names, not the bugs.
+     */
+    void retainAssigneeContaining(BitSet ids, String text) {
+        String needle = assigneeKey(text);
+        BitSet union = new BitSet();
+        for (Map.Entry<String, BitSet> entry : byAssignee.entrySet()) {
+            if (entry.getKey().contains(needle)) union.or(entry.getValue());
+        }
+        ids.and(union);
+    }
+
+    private static String assigneeKey(String name) {
+        return name == null ? "" : name.toLowerCase();
+    }
+}
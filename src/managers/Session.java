@@ -0,0 +1,31 @@
+package managers;
+
+import models.Role;
+
+/**
+ * The user behind a session token, as of when the session was opened. Immutable, so it can be
+ * handed to any number of request threads; a role change ends the user's sessions instead.
+ */
+public final class Session {
+    private final String token;
+    private final String username;
+    private final Role role;
+
+    Session(String token, String username, Role role) {
+        this.token = token;
+        this.username = username;
+        this.role = role;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Role getRole() {
+        return role;
+    }
+}
@@ -0,0 +1,125 @@
+package managers;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import models.Role;
+
+/**
+ * Concurrent table of open sessions keyed by opaque random token.
+ * A lookup is one map hit; each successful lookup pushes the session's expiry out by the TTL.
+ * When more than the maximum number of sessions are open, the oldest ones are dropped first.
+ * Expired and ended sessions are swept out as new ones are opened, so no background thread is needed.
+ */
+class SessionCache {
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Base64.Encoder TOKEN_ENCODING = Base64.getUrlEncoder().withoutPadding();
+
+    private final int maxSessions;
+    private final long ttlMillis;
+    private final Map<String, Entry> byToken = new ConcurrentHashMap<>();
+    // Sessions in the order they were opened, for evicting the oldest
+    private final ConcurrentLinkedQueue<Entry> byAge = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger opened = new AtomicInteger();
+
+    private static final class Entry {
+        final Session session;
+        volatile long expiresAt;
+        volatile boolean ended;
+
+        Entry(Session session, long expiresAt) {
+            this.session = session;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    SessionCache(int maxSessions, long ttlMillis) {
+        this.maxSessions = maxSessions;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Open a session.
+     *
+     * @return the new session, holding its token
+     */
+    Session open(String username, Role role) {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        Session session = new Session(TOKEN_ENCODING.encodeToString(bytes), username, role);
+        Entry entry = new Entry(session, System.currentTimeMillis() + ttlMillis);
+        byToken.put(session.getToken(), entry);
+        byAge.add(entry);
+        if (opened.incrementAndGet() % maxSessions == 0) {
+            sweep();
+        }
+        while (byToken.size() > maxSessions) {
+            Entry oldest = byAge.poll();
+            if (oldest == null) break;
+            end(oldest);
+        }
+        return session;
+    }
+
+    /**
+     * Look up a session and extend it.
+     *
+     * @param token the session token; null is allowed
+     * @return the session, or null if the token is unknown, expired or ended
+     */
+    Session get(String token) {
+        if (token == null) return null;
+        Entry entry = byToken.get(token);
+        if (entry == null) return null;
+        long now = System.currentTimeMillis();
+        if (now >= entry.expiresAt) {
+            end(entry);
+            return null;
+        }
+        entry.expiresAt = now + ttlMillis;
+        return entry.session;
+    }
+
+    /**
+     * End a session. Unknown tokens are ignored.
+     */
+    void end(String token) {
+        if (token == null) return;
+        Entry entry = byToken.get(token);
+        if (entry != null) end(entry);
+    }
+
+    /**
+     * End every session of a user, e.g. after the user was removed or their role changed.
+     * Scans all open sessions, which is fine for these rare admin actions.
+     */
+    void endAll(String username) {
+        for (Entry entry : byToken.values()) {
+            if (entry.session.getUsername().equalsIgnoreCase(username)) end(entry);
+        }
+    }
+
+    /**
+     * @return number of sessions in the table, including expired ones not yet swept
+     */
+    int size() {
+        return byToken.size();
+    }
+
+    private void end(Entry entry) {
+        entry.ended = true;
+        byToken.remove(entry.session.getToken(), entry);
+    }
+
+    // Drop expired sessions and forget ended ones; runs once per maxSessions opens, so O(1) amortized
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        byAge.removeIf(entry -> {
+            if (!entry.ended && now >= entry.expiresAt) end(entry);
+            return entry.ended;
+        });
+    }
+}
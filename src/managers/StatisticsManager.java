@@ -1,86 +1,212 @@
 package managers;
 
 import models.Bug;
+import models.Priority;
+import models.Status;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
-public class StatisticsManager {
+public class StatisticsManager implements BugListener {
+    // Live counters, indexed by enum ordinal, kept up to date from BugManager mutations.
+    // BugManager notifies from several threads at once, so every access synchronizes on this manager.
+    private final int[] statusCounts = new int[Status.values().length];
+    private final int[] priorityCounts = new int[Priority.values().length];
+    private final Map<String, int[]> assigneeCounts = new HashMap<>();
+    private int totalCount;
+    private final BugManager manager;
+    // Column store for ad-hoc group-bys, built on the first one
+    private volatile BugColumns columns;
+    private final Object columnsLock = new Object();
 
-    // Show counts of bugs by status
-    public void showBugsCountByStatus(List<Bug> bugs) {
-        Map<String, Integer> statusCounts = new HashMap<>();
-        for (Bug bug : bugs) {
-            // Convert enum to string using name(), then toUpperCase()
-            String status = bug.getStatus().name().toUpperCase();
-            statusCounts.put(status, statusCounts.getOrDefault(status, 0) + 1);
+    // Seed the counters from the manager's bitset index and follow every later mutation, with none in between.
+    // Counting bits is cheap enough that the counters are not saved with the snapshot.
+    public StatisticsManager(BugManager manager) {
+        this.manager = manager;
+        manager.addListener(this, this::seed);
+    }
+
+    private synchronized void seed(SecondaryIndex index) {
+        for (Status status : Status.values()) {
+            statusCounts[status.ordinal()] = index.count(status);
+        }
+        for (Priority priority : Priority.values()) {
+            priorityCounts[priority.ordinal()] = index.count(priority);
+        }
+        for (Map.Entry<String, Integer> entry : index.assigneeCounts().entrySet()) {
+            assigneeCounts.put(entry.getKey(), new int[] { entry.getValue() });
+        }
+        totalCount = index.size();
+    }
+
+    /**
+     * Count bugs grouped by any combination of status, priority and assignee, in one parallel
+     * pass over a column store of the bugs. The store is built on the first call and then follows
+     * the bugs a few milliseconds behind. Does not hold this manager's lock, so the live counters
+     * keep updating meanwhile.
+     *
+     * @param dimensions the dimensions to group by
+     * @return the counts
+     */
+    public BugAggregate aggregate(BugAggregate.Dimension... dimensions) {
+        BugColumns c = columns;
+        if (c == null) {
+            synchronized (columnsLock) {
+                c = columns;
+                if (c == null) {
+                    c = new BugColumns(manager);
+                    columns = c;
+                }
+            }
+        }
+        return c.aggregate(dimensions);
+    }
+
+    @Override
+    public synchronized void bugAdded(Bug bug) {
+        count(bug.getStatus(), bug.getPriority(), bug.getAssignedTo(), 1);
+        totalCount++;
+    }
+
+    @Override
+    public synchronized void bugDeleted(Bug bug) {
+        count(bug.getStatus(), bug.getPriority(), bug.getAssignedTo(), -1);
+        totalCount--;
+    }
+
+    @Override
+    public synchronized void bugChanged(Bug bug, int field, String oldValue, String newValue) {
+        switch (field) {
+            case 3:
+                statusCounts[Status.valueOf(oldValue).ordinal()]--;
+                statusCounts[Status.valueOf(newValue).ordinal()]++;
+                break;
+            case 4:
+                priorityCounts[Priority.valueOf(oldValue).ordinal()]--;
+                priorityCounts[Priority.valueOf(newValue).ordinal()]++;
+                break;
+            case 5:
+                countAssignee(oldValue, -1);
+                countAssignee(newValue, 1);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void count(Status status, Priority priority, String assignee, int delta) {
+        statusCounts[status.ordinal()] += delta;
+        priorityCounts[priority.ordinal()] += delta;
+        countAssignee(assignee, delta);
+    }
+
+    private void countAssignee(String assignee, int delta) {
+        String key = assignee == null ? "" : assignee.toLowerCase();
+        int[] counter = assigneeCounts.computeIfAbsent(key, k -> new int[1]);
+        counter[0] += delta;
+        if (counter[0] == 0) {
+            assigneeCounts.remove(key);
+        }
+    }
+
+    public synchronized int getStatusCount(Status status) {
+        return statusCounts[status.ordinal()];
+    }
+
+    public synchronized int getPriorityCount(Priority priority) {
+        return priorityCounts[priority.ordinal()];
+    }
+
+    // Bug counts keyed by lower-cased assignee name
+    public synchronized Map<String, Integer> getAssigneeCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Map.Entry<String, int[]> entry : assigneeCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue()[0]);
         }
+        return counts;
+    }
 
+    public synchronized int getTotalCount() {
+        return totalCount;
+    }
+
+    // Bugs that are not RESOLVED or CLOSED
+    public synchronized int getOpenCount() {
+        return totalCount - statusCounts[Status.RESOLVED.ordinal()] - statusCounts[Status.CLOSED.ordinal()];
+    }
+
+    // Show counts of bugs by status
+    public synchronized void showBugsCountByStatus() {
         System.out.println("\n-- Bugs Count by Status --");
-        if (statusCounts.isEmpty()) {
+        if (totalCount == 0) {
             System.out.println("No bugs found.");
         } else {
-            for (Map.Entry<String, Integer> entry : statusCounts.entrySet()) {
-                System.out.println(entry.getKey() + ": " + entry.getValue());
+            for (Status status : Status.values()) {
+                if (statusCounts[status.ordinal()] > 0) {
+                    System.out.println(status.name() + ": " + statusCounts[status.ordinal()]);
+                }
             }
         }
     }
 
     // Show counts of bugs by priority
-    public void showBugsCountByPriority(List<Bug> bugs) {
-        Map<String, Integer> priorityCounts = new HashMap<>();
-        for (Bug bug : bugs) {
-            // Convert enum to string using name(), then toUpperCase()
-            String priority = bug.getPriority().name().toUpperCase();
-            priorityCounts.put(priority, priorityCounts.getOrDefault(priority, 0) + 1);
-        }
-
+    public synchronized void showBugsCountByPriority() {
         System.out.println("\n-- Bugs Count by Priority --");
-        if (priorityCounts.isEmpty()) {
+        if (totalCount == 0) {
             System.out.println("No bugs found.");
         } else {
-            for (Map.Entry<String, Integer> entry : priorityCounts.entrySet()) {
-                System.out.println(entry.getKey() + ": " + entry.getValue());
+            for (Priority priority : Priority.values()) {
+                if (priorityCounts[priority.ordinal()] > 0) {
+                    System.out.println(priority.name() + ": " + priorityCounts[priority.ordinal()]);
+                }
             }
         }
     }
 
     // Show counts of bugs by assignee
-    public void showBugsCountByAssignee(List<Bug> bugs) {
-        Map<String, Integer> assigneeCounts = new HashMap<>();
-        for (Bug bug : bugs) {
-            String assignee = bug.getAssignedTo().toLowerCase();
-            assigneeCounts.put(assignee, assigneeCounts.getOrDefault(assignee, 0) + 1);
-        }
-
+    public synchronized void showBugsCountByAssignee() {
         System.out.println("\n-- Bugs Count by Assignee --");
         if (assigneeCounts.isEmpty()) {
             System.out.println("No bugs found.");
         } else {
-            for (Map.Entry<String, Integer> entry : assigneeCounts.entrySet()) {
-                System.out.println(entry.getKey() + ": " + entry.getValue());
+            for (Map.Entry<String, int[]> entry : assigneeCounts.entrySet()) {
+                System.out.println(entry.getKey() + ": " + entry.getValue()[0]);
             }
         }
     }
 
-    // Show a summary report of all bugs
-    public void showSummaryReport(List<Bug> bugs) {
-        System.out.println("\n-- Summary Report --");
-        int totalBugs = bugs.size();
-        System.out.println("Total bugs: " + totalBugs);
-
-        // Count how many are "open" (not RESOLVED or CLOSED)
-        int openCount = 0;
-        for (Bug bug : bugs) {
-            String status = bug.getStatus().name().toUpperCase();
-            if (!status.equals("RESOLVED") && !status.equals("CLOSED")) {
-                openCount++;
+    // Show each assignee's bugs broken down by status, from one grouped pass
+    public void showAssigneeBreakdown() {
+        BugAggregate aggregate = aggregate(BugAggregate.Dimension.ASSIGNEE, BugAggregate.Dimension.STATUS);
+        System.out.println("\n-- Bugs by Assignee and Status --");
+        if (aggregate.getTotal() == 0) {
+            System.out.println("No bugs found.");
+            return;
+        }
+        Map<String, int[]> rows = new TreeMap<>();
+        aggregate.forEach((status, priority, assignee, count) ->
+                rows.computeIfAbsent(assignee, k -> new int[Status.values().length])[status.ordinal()] = count);
+        StringBuilder header = new StringBuilder(String.format("%-20s", "Assignee"));
+        for (Status status : Status.values()) {
+            header.append(String.format(" %12s", status.name()));
+        }
+        System.out.println(header);
+        for (Map.Entry<String, int[]> row : rows.entrySet()) {
+            StringBuilder line = new StringBuilder(String.format("%-20s", row.getKey().isEmpty() ? "(unassigned)" : row.getKey()));
+            for (int count : row.getValue()) {
+                line.append(String.format(" %12d", count));
             }
+            System.out.println(line);
         }
+    }
 
-        System.out.println("Open (not resolved or closed): " + openCount);
+    // Show a summary report of all bugs
+    public synchronized void showSummaryReport() {
+        System.out.println("\n-- Summary Report --");
+        System.out.println("Total bugs: " + totalCount);
+        System.out.println("Open (not resolved or closed): " + getOpenCount());
 
-        if (totalBugs == 0) {
+        if (totalCount == 0) {
             System.out.println("No bugs in the system.");
         } else {
             System.out.println("Bugs are present, consider reviewing statuses and priorities for a healthier project.");
@@ -1,106 +1,360 @@
 package managers;
 
-import java.io.*;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import models.Role;
 import models.User;
 
 public class UserManager {
-    private List<User> users;
-    private String currentUser; // To track the currently logged-in user
+    // Compact the user file on save once it holds this many records and most are superseded
+    private static final int COMPACT_MIN_RECORDS = 1_000;
+    // Open sessions are capped; past the cap the oldest are dropped
+    private static final int MAX_SESSIONS = 100_000;
+    // A session ends after this long without being used
+    private static final long SESSION_TTL_MILLIS = 30 * 60 * 1000L;
+    // Recently verified passwords skip the slow hash for this long
+    private static final int CREDENTIAL_CACHE_SIZE = 10_000;
+    private static final long CREDENTIAL_TTL_MILLIS = 5 * 60 * 1000L;
+
+    private List<User> users; // Kept in sign-up order for getUsers()
+    private final Map<String, User> usersByName; // Keyed on the case-folded username
+    private final SessionCache sessions = new SessionCache(MAX_SESSIONS, SESSION_TTL_MILLIS);
+    private final CredentialCache credentials = new CredentialCache(CREDENTIAL_CACHE_SIZE, CREDENTIAL_TTL_MILLIS);
+    private volatile boolean credentialCacheEnabled = true;
+    private volatile int passwordIterations = PasswordHasher.DEFAULT_ITERATIONS; // Work factor for new hashes
+    private volatile String dummyHash; // Checked for unknown usernames, so they cost as much as a wrong password
+    private String currentSession; // Token of the console's logged-in user
+    private volatile boolean plaintextSuperseded; // The user file still holds a replaced plaintext password
+    private UserStore store; // File the users were loaded from; changes are appended to it
 
     public UserManager() {
         this.users = new ArrayList<>();
-        this.currentUser = null;
+        this.usersByName = new HashMap<>();
+        this.currentSession = null;
+    }
+
+    // Fold case one char at a time, so two names map to the same key exactly when equalsIgnoreCase says they match
+    private static String nameKey(String username) {
+        char[] chars = username.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
     }
 
     // Sign up a new user
     public boolean signUp(String username, String password, Role role) {
-        for (User user : users) {
-            if (user.getUsername().equalsIgnoreCase(username)) {
-                return false; // Username already exists
-            }
+        String key = nameKey(username);
+        if (usersByName.containsKey(key)) {
+            return false; // Username already exists
         }
-        users.add(new User(username, password, role)); // Add user with role
+        User user = new User(username, PasswordHasher.hash(password, passwordIterations), role); // Add user with role
+        users.add(user);
+        usersByName.put(key, user);
+        append(s -> s.appendAdd(user));
         return true;
     }
 
     // Log in a user
     public boolean login(String username, String password) {
-        for (User user : users) {
-            if (user.getUsername().equalsIgnoreCase(username) && user.getPassword().equals(password)) {
-                currentUser = username; // Store the logged-in username
-                return true; // Login successful
-            }
+        Session session = openSession(username, password);
+        if (session != null) {
+            sessions.end(currentSession);
+            currentSession = session.getToken(); // Store the logged-in user's session
+            return true; // Login successful
         }
         return false; // Invalid credentials
     }
 
+    /**
+     * Check credentials without changing the logged-in user, for callers serving several users at once.
+     * A password stored in plaintext or hashed at another cost than {@link #setPasswordIterations}
+     * is re-hashed once it has been verified. A password verified in the last few minutes is
+     * recognised without running the slow hash again. An unknown username is checked against a
+     * dummy hash, so it takes as long to reject as a wrong password and does not reveal which
+     * usernames exist.
+     *
+     * @return the user, or null if the credentials are wrong
+     */
+    public User authenticate(String username, String password) {
+        String key = nameKey(username);
+        User user = usersByName.get(key);
+        if (user == null) {
+            PasswordHasher.verify(password, dummyHash());
+            return null;
+        }
+        String stored = user.getPassword();
+        if (credentialCacheEnabled && credentials.matches(key, stored, password)) {
+            return user;
+        }
+        if (!PasswordHasher.verify(password, stored)) {
+            return null;
+        }
+        if (PasswordHasher.needsRehash(stored, passwordIterations)) {
+            stored = rehash(user, stored, password);
+        }
+        if (credentialCacheEnabled) {
+            credentials.put(key, stored, password);
+        }
+        return user;
+    }
+
+    // A hash of no real password at the current cost, made again when the cost changes
+    private String dummyHash() {
+        String hash = dummyHash;
+        int iterations = passwordIterations;
+        if (hash == null || PasswordHasher.iterations(hash) != iterations) {
+            hash = PasswordHasher.hash("", iterations);
+            dummyHash = hash;
+        }
+        return hash;
+    }
+
+    // Replace a verified password's stored form with a hash at the current cost. The slow hash runs
+    // before taking the lock, so logins that each need a rehash do not queue behind one another.
+    private String rehash(User user, String stored, String password) {
+        String hash = PasswordHasher.hash(password, passwordIterations);
+        synchronized (this) {
+            if (!user.getPassword().equals(stored)) {
+                return user.getPassword(); // Another login got here first
+            }
+            user.setPassword(hash);
+            append(s -> s.appendPassword(user.getUsername(), hash));
+            if (!PasswordHasher.isHashed(stored)) {
+                plaintextSuperseded = true;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Set the PBKDF2 iteration count for new passwords. Existing users move to it the next time
+     * they log in.
+     *
+     * @param iterations the work factor, at least 1
+     */
+    public void setPasswordIterations(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Iterations must be at least 1: " + iterations);
+        }
+        passwordIterations = iterations;
+    }
+
+    public int getPasswordIterations() {
+        return passwordIterations;
+    }
+
+    // Turn the verified-credential cache on or off, e.g. to measure the full hash cost
+    public void setCredentialCacheEnabled(boolean enabled) {
+        credentialCacheEnabled = enabled;
+        if (!enabled) {
+            credentials.clear();
+        }
+    }
+
+    /**
+     * Check credentials and open a session for the user. The session can be used from any thread
+     * until it ends through {@link #closeSession}, goes unused for the session timeout, or the
+     * user is removed or given another role.
+     *
+     * @return the session, or null if the credentials are wrong
+     */
+    public Session openSession(String username, String password) {
+        User user = authenticate(username, password);
+        return user != null ? sessions.open(user.getUsername(), user.getRole()) : null;
+    }
+
+    /**
+     * Look up an open session; a single map hit, with no scan of the users.
+     *
+     * @param token the session token, may be null
+     * @return the session, or null if it is unknown or has ended
+     */
+    public Session getSession(String token) {
+        return sessions.get(token);
+    }
+
+    // End a session; unknown tokens are ignored
+    public void closeSession(String token) {
+        sessions.end(token);
+    }
+
     // Log out the current user
     public void logout() {
-        currentUser = null;
+        sessions.end(currentSession);
+        currentSession = null;
     }
 
     // Get the role of the currently logged-in user
     public Role getCurrentUserRole() {
-        if (currentUser == null) {
-            return null; // No user is logged in
-        }
-        return getUserRole(currentUser); // Fetch role of the current user
+        Session session = sessions.get(currentSession);
+        return session != null ? session.getRole() : null; // Null if no user is logged in
     }
 
     // Get the role of a user by username
     public Role getUserRole(String username) {
-        for (User user : users) {
-            if (user.getUsername().equalsIgnoreCase(username)) {
-                return user.getRole(); // Return the user's role
-            }
-        }
-        return null; // User not found
+        User user = usersByName.get(nameKey(username));
+        return user != null ? user.getRole() : null; // Null if user not found
     }
 
-    // Save users to a file
+    // Save users to a file. Changes made through this manager are already appended to the file
+    // they were loaded from, so that file is only rewritten once superseded records pile up,
+    // or to purge a plaintext password that a hash has replaced.
     public void saveUsersToFile(String fileName) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(fileName))) {
-            oos.writeObject(users);
+        try {
+            if (store != null && store.matches(fileName)) {
+                if (plaintextSuperseded || store.size() > COMPACT_MIN_RECORDS && store.size() > 2 * users.size()) {
+                    plaintextSuperseded = false;
+                    store.rewrite(users);
+                }
+                return;
+            }
+            new UserStore(fileName).rewrite(users);
         } catch (IOException e) {
             System.err.println("Error saving user data: " + e.getMessage());
         }
     }
 
-    // Load users from a file
-    @SuppressWarnings("unchecked")
+    // Load users from a file and keep appending changes to it.
+    // A file in an older format is converted in place the first time it is loaded.
     public void loadUsersFromFile(String fileName) {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(fileName))) {
-            users = (List<User>) ois.readObject();
-        } catch (FileNotFoundException e) {
-            System.out.println("No user data file found. Starting fresh.");
-        } catch (IOException | ClassNotFoundException e) {
+        closeStore();
+        users = new ArrayList<>();
+        usersByName.clear();
+        credentials.clear();
+        plaintextSuperseded = false;
+        store = new UserStore(fileName);
+        try {
+            if (store.isLegacy()) {
+                for (User user : store.readLegacy()) {
+                    if (usersByName.putIfAbsent(nameKey(user.getUsername()), user) == null) { // First match wins, as with a list scan
+                        users.add(user);
+                    }
+                }
+                store.rewrite(users);
+                System.out.println("Converted " + users.size() + " users to the new user file format.");
+                return;
+            }
+            if (!store.exists()) {
+                System.out.println("No user data file found. Starting fresh.");
+                return;
+            }
+            store.read(new UserStore.Visitor() {
+                @Override
+                public void add(String username, String password, Role role) {
+                    User user = new User(username, password, role);
+                    if (usersByName.putIfAbsent(nameKey(username), user) == null) {
+                        users.add(user);
+                    }
+                }
+
+                @Override
+                public void role(String username, Role role) {
+                    User user = usersByName.get(nameKey(username));
+                    if (user != null) {
+                        user.setRole(role);
+                    }
+                }
+
+                @Override
+                public void password(String username, String password) {
+                    User user = usersByName.get(nameKey(username));
+                    if (user != null) {
+                        if (!PasswordHasher.isHashed(user.getPassword())) {
+                            plaintextSuperseded = true; // Drop the old plaintext at the next save
+                        }
+                        user.setPassword(password);
+                    }
+                }
+
+                @Override
+                public void delete(String username) {
+                    usersByName.remove(nameKey(username));
+                }
+            });
+            if (users.size() != usersByName.size()) {
+                // Deleted users were only dropped from the map while reading
+                users.removeIf(user -> usersByName.get(nameKey(user.getUsername())) != user);
+            }
+            if (store.needsRewrite()) {
+                store.rewrite(users); // Records are only appended to files with checksums
+            }
+        } catch (IOException e) {
+            // The store then refuses changes rather than cut off what it could not read
             System.err.println("Error loading user data: " + e.getMessage());
         }
     }
 
+    // Change a user's role and record it in the user file
+    public boolean setUserRole(String username, Role role) {
+        User user = usersByName.get(nameKey(username));
+        if (user == null) {
+            return false;
+        }
+        user.setRole(role);
+        sessions.endAll(user.getUsername()); // Sessions hold the old role
+        append(s -> s.appendRole(user.getUsername(), role));
+        return true;
+    }
+
+    // Close the user file; later changes reopen it
+    public void close() {
+        closeStore();
+    }
+
+    private void closeStore() {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                System.err.println("Error closing user data: " + e.getMessage());
+            }
+        }
+    }
+
+    private interface StoreWrite {
+        void apply(UserStore store) throws IOException;
+    }
+
+    // Append a change to the loaded user file, if there is one
+    private void append(StoreWrite write) {
+        if (store == null) {
+            return;
+        }
+        try {
+            write.apply(store);
+        } catch (IOException e) {
+            System.err.println("Error saving user data: " + e.getMessage());
+        }
+    }
+
     // Get all users (for debugging or admin purposes)
     public List<User> getUsers() {
-        return users;
+        return Collections.unmodifiableList(users);
     }
 
     // Get the currently logged-in user
     public String getCurrentUser() {
-        return currentUser;
+        Session session = sessions.get(currentSession);
+        return session != null ? session.getUsername() : null;
     }
 
     public User findUserByUsername(String username) {
-        for (User user : users) {
-            if (user.getUsername().equalsIgnoreCase(username)) {
-                return user;
-            }
-        }
-        return null;
+        return usersByName.get(nameKey(username));
     }
     
     public boolean removeUser(String username) {
+        User removed = usersByName.remove(nameKey(username));
+        if (removed == null) {
+            return false;
+        }
+        sessions.endAll(removed.getUsername());
+        credentials.remove(nameKey(username));
+        append(s -> s.appendDelete(removed.getUsername()));
         return users.removeIf(user -> user.getUsername().equalsIgnoreCase(username));
     }
     
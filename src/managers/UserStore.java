@@ -0,0 +1,429 @@
+package managers;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.zip.CRC32C;
+import models.Role;
+import models.User;
+
+/**
+ * Versioned, record-oriented user file. Users are read with a single streaming pass and
+ * a sign-up costs one appended record instead of a rewrite of every user.
+ *
+ * <pre>
+ * header              magic "USRS", version (short)
+ * records             length of the rest (int), CRC32C of the rest (int), then one of
+ * A username password role   add a user (role is its ordinal, one byte; 0xFF for none)
+ * R username role            change a user's role
+ * P username password        replace a user's password hash
+ * D username                 remove a user
+ * </pre>
+ *
+ * Strings are written with {@link DataOutputStream#writeUTF}. A torn last record left by a
+ * crash is skipped when reading and cut off before the next append. A record that fails its
+ * checksum elsewhere in the file is skipped and reported; the records after it are still read.
+ * A file that could not be read to its end is never appended to, so nothing after the damage
+ * is cut off. Version 1 files, whose records carry no length or checksum, are still read; the
+ * caller rewrites them before appending. Files written by the old {@code ObjectOutputStream}
+ * format are recognised by their stream magic so the caller can migrate them.
+ */
+class UserStore implements Closeable {
+    static final int MAGIC = 0x55535253; // "USRS"
+    static final short VERSION = 2;
+    private static final short UNCHECKED_VERSION = 1; // Records without length or checksum
+
+    static final byte ADD = 'A';
+    static final byte ROLE = 'R';
+    static final byte PASSWORD = 'P';
+    static final byte DELETE = 'D';
+
+    private static final int HEADER_SIZE = 6;
+    private static final int RECORD_HEAD = 8; // Length and checksum
+    // Largest record: type, two strings of at most 65535 bytes with their lengths, and a role
+    private static final int MAX_RECORD = 1 + 2 * (2 + 65535) + 1;
+    private static final short SERIALIZED_MAGIC = (short) 0xACED;
+    private static final Role[] ROLES = Role.values();
+    private static final int NO_ROLE = 0xFF; // Users from old files may have no role
+
+    /**
+     * Receives records in file order while the store is read.
+     */
+    interface Visitor {
+        void add(String username, String password, Role role);
+
+        void role(String username, Role role);
+
+        void password(String username, String password);
+
+        void delete(String username);
+    }
+
+    private final File file;
+    private FileOutputStream out;
+    private DataOutputStream data;
+    private long validLength; // End of the last complete record
+    private int records;
+    private boolean readInFull; // The file was read to its end or written by this store, so appending is safe
+    private boolean unchecked; // The file is version 1, so records must not be appended to it
+    private final CRC32C crc = new CRC32C();
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(128);
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+
+    UserStore(String path) {
+        this.file = new File(path);
+    }
+
+    /**
+     * @return true if the store file exists
+     */
+    boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * @param path a file path
+     * @return true if the path names this store's file
+     */
+    boolean matches(String path) {
+        return file.getAbsoluteFile().equals(new File(path).getAbsoluteFile());
+    }
+
+    /**
+     * @return true if the file was written by the old Java serialization format
+     */
+    boolean isLegacy() throws IOException {
+        if (!file.exists() || file.length() < 2) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readShort() == SERIALIZED_MAGIC;
+        }
+    }
+
+    /**
+     * Stream every complete record to a visitor.
+     *
+     * @param visitor receives the records
+     * @throws IOException if the file cannot be read or is not a user store of a known version;
+     *     the store then refuses to append until it is rewritten
+     */
+    void read(Visitor visitor) throws IOException {
+        records = 0;
+        validLength = 0;
+        readInFull = false;
+        unchecked = false;
+        if (!file.exists()) {
+            readInFull = true;
+            return;
+        }
+        long length = file.length();
+        try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+             DataInputStream in = new DataInputStream(counter)) {
+            if (length < HEADER_SIZE) {
+                readInFull = true;
+                return; // Header never made it to disk; treat as empty
+            }
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a user store: " + file);
+            }
+            short version = in.readShort();
+            if (version == UNCHECKED_VERSION) {
+                unchecked = true;
+                validLength = counter.count;
+                readUnchecked(in, counter, visitor);
+            } else if (version == VERSION) {
+                validLength = counter.count;
+                readChecked(in, counter, length, visitor);
+            } else {
+                throw new IOException("Unsupported user store version " + version + ": " + file);
+            }
+            readInFull = true;
+        }
+    }
+
+    private void readChecked(DataInputStream in, CountingInputStream counter, long length, Visitor visitor) throws IOException {
+        byte[] body = new byte[256];
+        while (true) {
+            long start = counter.count;
+            long remaining = length - start;
+            if (remaining < RECORD_HEAD) {
+                break; // End of file, or a torn length and checksum
+            }
+            int size = in.readInt();
+            int checksum = in.readInt();
+            if (size < 1 || size > MAX_RECORD) {
+                throw new IOException("Corrupt user store record length at offset " + start + ": " + file);
+            }
+            if (size > remaining - RECORD_HEAD) {
+                break; // Torn last record
+            }
+            if (body.length < size) {
+                body = new byte[Math.max(size, body.length * 2)];
+            }
+            in.readFully(body, 0, size);
+            crc.reset();
+            crc.update(body, 0, size);
+            if ((int) crc.getValue() != checksum) {
+                if (counter.count == length) {
+                    break; // Torn last record
+                }
+                System.err.println("Skipping corrupt user store record at offset " + start + ": " + file);
+            } else {
+                try {
+                    readRecord(new DataInputStream(new ByteArrayInputStream(body, 0, size)), visitor);
+                } catch (EOFException e) {
+                    throw new IOException("Corrupt user store record at offset " + start + ": " + file);
+                }
+            }
+            validLength = counter.count;
+            records++;
+        }
+    }
+
+    private void readUnchecked(DataInputStream in, CountingInputStream counter, Visitor visitor) throws IOException {
+        while (true) {
+            try {
+                if (readRecord(in, visitor)) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break; // Torn last record
+            }
+            validLength = counter.count;
+            records++;
+        }
+    }
+
+    /**
+     * @return true if the file is in an older version and must be rewritten before records are appended
+     */
+    boolean needsRewrite() {
+        return unchecked;
+    }
+
+    private static int ordinal(Role role) {
+        return role != null ? role.ordinal() : NO_ROLE;
+    }
+
+    // Read one record, type first; returns true at the end of the stream instead
+    private static boolean readRecord(DataInputStream in, Visitor visitor) throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            return true;
+        }
+        switch ((byte) type) {
+            case ADD: {
+                String username = in.readUTF();
+                String password = in.readUTF();
+                Role role = role(in.readUnsignedByte());
+                visitor.add(username, password, role);
+                break;
+            }
+            case ROLE: {
+                String username = in.readUTF();
+                visitor.role(username, role(in.readUnsignedByte()));
+                break;
+            }
+            case PASSWORD: {
+                String username = in.readUTF();
+                visitor.password(username, in.readUTF());
+                break;
+            }
+            case DELETE:
+                visitor.delete(in.readUTF());
+                break;
+            default:
+                throw new IOException("Corrupt user store record type " + type);
+        }
+        return false;
+    }
+
+    private static Role role(int ordinal) throws IOException {
+        if (ordinal == NO_ROLE) {
+            return null;
+        }
+        if (ordinal >= ROLES.length) {
+            throw new IOException("Unknown role ordinal " + ordinal);
+        }
+        return ROLES[ordinal];
+    }
+
+    /**
+     * Read a file written by the old {@code ObjectOutputStream} format.
+     *
+     * @return the users it held
+     */
+    @SuppressWarnings("unchecked")
+    Collection<User> readLegacy() throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (Collection<User>) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    void appendAdd(User user) throws IOException {
+        open();
+        addRecord(user);
+        commit();
+    }
+
+    void appendRole(String username, Role role) throws IOException {
+        open();
+        record.writeByte(ROLE);
+        record.writeUTF(username);
+        record.writeByte(ordinal(role));
+        commit();
+    }
+
+    void appendPassword(String username, String password) throws IOException {
+        open();
+        record.writeByte(PASSWORD);
+        record.writeUTF(username);
+        record.writeUTF(password);
+        commit();
+    }
+
+    void appendDelete(String username) throws IOException {
+        open();
+        record.writeByte(DELETE);
+        record.writeUTF(username);
+        commit();
+    }
+
+    private void addRecord(User user) throws IOException {
+        record.writeByte(ADD);
+        record.writeUTF(user.getUsername());
+        record.writeUTF(user.getPassword());
+        record.writeByte(ordinal(user.getRole()));
+    }
+
+    // Frame the record built in recordBytes with its length and checksum
+    private void writeRecord(DataOutputStream out) throws IOException {
+        record.flush();
+        byte[] body = recordBytes.toByteArray();
+        recordBytes.reset();
+        crc.reset();
+        crc.update(body);
+        out.writeInt(body.length);
+        out.writeInt((int) crc.getValue());
+        out.write(body);
+    }
+
+    /**
+     * @return number of records in the file, including ones later superseded
+     */
+    int size() {
+        return records;
+    }
+
+    /**
+     * Replace the file with one add record per user. The new file is written beside the
+     * old one and moved over it, so a crash leaves one or the other intact.
+     *
+     * @param users the users to keep, in order
+     */
+    void rewrite(Collection<User> users) throws IOException {
+        close();
+        File tmp = new File(file.getPath() + ".tmp");
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            for (User user : users) {
+                addRecord(user);
+                writeRecord(out);
+            }
+            out.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            recordBytes.reset();
+            tmp.delete();
+            throw e;
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        validLength = file.length();
+        records = users.size();
+        readInFull = true;
+        unchecked = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            data.close();
+            out = null;
+            data = null;
+        }
+    }
+
+    private void open() throws IOException {
+        if (out != null) {
+            return;
+        }
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            rewrite(Collections.emptyList());
+        } else if (!readInFull || unchecked) {
+            // Cutting or appending here could lose the records that were not read
+            throw new IOException("Not appending to " + file + ", which was not read in full in this version");
+        } else if (file.length() > validLength) {
+            // Cut off a torn record so the next one starts on a record boundary
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        out = new FileOutputStream(file, true);
+        data = new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    private void commit() throws IOException {
+        writeRecord(data);
+        data.flush();
+        out.getFD().sync();
+        validLength = file.length();
+        records++;
+    }
+
+    // Tracks how many bytes have been consumed so torn records can be located
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -1,53 +1,110 @@
 package models;
 
-import java.util.ArrayList;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+// Fields are volatile and comments copy-on-write so a bug can be read while another thread updates it.
+// Kept small because millions are resident: status and priority share one byte, assignee names are
+// interned, and a bug given a comment store holds no comments at all; they are read from the store
+// each time they are asked for.
 public class Bug {
+    private static final Status[] STATUSES = Status.values();
+    private static final Priority[] PRIORITIES = Priority.values();
+    private static final List<Comment> NO_COMMENTS = Collections.emptyList();
+    private static final DateTimeFormatter COMMENT_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
     private int id;
-    private String title;
-    private String description;
-    private Status status;
-    private Priority priority;
-    private String assignedTo;
-    private List<String> comments;
+    private volatile String title;
+    private volatile String description;
+    private volatile byte state; // Status ordinal in the low four bits, priority ordinal in the high four
+    private volatile String assignedTo;
+    private volatile List<Comment> comments; // Unused once the bug has a comment store
+    private volatile CommentStore commentStore;
 
     public Bug(int id, String title, String description, Status status, Priority priority, String assignedTo) {
-        this(id, title, description, status, priority, assignedTo, new ArrayList<>());
+        this(id, title, description, status, priority, assignedTo, null);
     }
 
-    public Bug(int id, String title, String description, Status status, Priority priority, String assignedTo, List<String> comments) {
+    public Bug(int id, String title, String description, Status status, Priority priority, String assignedTo, List<Comment> comments) {
         this.id = id;
         this.title = title;
         this.description = description;
-        this.status = status;
-        this.priority = priority;
-        this.assignedTo = assignedTo;
-        this.comments = comments != null ? comments : new ArrayList<>();
+        this.state = pack(status, priority);
+        this.assignedTo = SymbolTable.intern(assignedTo);
+        this.comments = comments == null || comments.isEmpty() ? NO_COMMENTS : new CopyOnWriteArrayList<>(comments);
+    }
+
+    private static byte pack(Status status, Priority priority) {
+        return (byte) (status.ordinal() | priority.ordinal() << 4);
     }
 
     public int getId() { return id; }
     public String getTitle() { return title; }
     public String getDescription() { return description; }
-    public Status getStatus() { return status; }
-    public Priority getPriority() { return priority; }
+    public Status getStatus() { return STATUSES[state & 0x0F]; }
+    public Priority getPriority() { return PRIORITIES[(state >> 4) & 0x0F]; }
     public String getAssignedTo() { return assignedTo; }
-    public List<String> getComments() { return comments; }
+    public CommentStore getCommentStore() { return commentStore; }
+
+    public List<Comment> getComments() {
+        CommentStore store = commentStore;
+        return store != null ? store.comments(id) : comments;
+    }
+
+    public int getCommentCount() {
+        CommentStore store = commentStore;
+        return store != null ? store.count(id) : comments.size();
+    }
 
     public void setTitle(String title) { this.title = title; }
     public void setDescription(String description) { this.description = description; }
-    public void setStatus(Status status) { this.status = status; }
-    public void setPriority(Priority priority) { this.priority = priority; }
-    public void setAssignedTo(String assignedTo) { this.assignedTo = assignedTo; }
-    public void addComment(String comment) { this.comments.add(comment); }
+    // Status and priority share a byte, so their setters lock to keep one from undoing the other
+    public synchronized void setStatus(Status status) { this.state = pack(status, getPriority()); }
+    public synchronized void setPriority(Priority priority) { this.state = pack(getStatus(), priority); }
+    public void setAssignedTo(String assignedTo) { this.assignedTo = SymbolTable.intern(assignedTo); }
+
+    public synchronized void addComment(Comment comment) {
+        CommentStore store = commentStore;
+        if (store != null) {
+            store.add(id, comment);
+            return;
+        }
+        if (comments == NO_COMMENTS) {
+            comments = new CopyOnWriteArrayList<>();
+        }
+        comments.add(comment);
+    }
+
+    /**
+     * Keep this bug's comments in a store from now on. Comments held in memory are
+     * released, not copied, so the caller moves them into the store first if they are new to it.
+     */
+    public synchronized void setCommentStore(CommentStore store) {
+        this.commentStore = store;
+        this.comments = NO_COMMENTS;
+    }
 
     public String getCommentsAsString() {
+        List<Comment> comments = getComments();
         if (comments.isEmpty()) {
             return "No comments.";
         }
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < comments.size(); i++) {
-            sb.append(i + 1).append(". ").append(comments.get(i)).append("\n");
+            Comment comment = comments.get(i);
+            sb.append(i + 1).append(". ");
+            if (comment.getAuthor() != null || comment.getTimestamp() != 0) {
+                sb.append('[');
+                if (comment.getAuthor() != null) sb.append(comment.getAuthor());
+                if (comment.getAuthor() != null && comment.getTimestamp() != 0) sb.append(", ");
+                if (comment.getTimestamp() != 0) sb.append(COMMENT_TIME.format(Instant.ofEpochMilli(comment.getTimestamp())));
+                sb.append("] ");
+            }
+            sb.append(comment.getText()).append("\n");
         }
         return sb.toString().trim();
     }
@@ -0,0 +1,28 @@
+package models;
+
+/**
+ * One comment on a bug, with who wrote it and when. Immutable.
+ * Comments that predate this metadata have no author and a timestamp of 0.
+ */
+public final class Comment {
+    private final String text;
+    private final String author;
+    private final long timestamp;
+
+    public Comment(String text, String author, long timestamp) {
+        this.text = text;
+        this.author = author;
+        this.timestamp = timestamp;
+    }
+
+    public String getText() { return text; }
+    // Username of the writer, or null if unknown
+    public String getAuthor() { return author; }
+    // Milliseconds since the epoch, or 0 if unknown
+    public long getTimestamp() { return timestamp; }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,27 @@
+package models;
+
+import java.util.List;
+
+/**
+ * Holds the comments of many bugs outside the bugs themselves, so a bug reads its
+ * comments only when they are asked for. See {@link Bug#setCommentStore}.
+ */
+public interface CommentStore {
+
+    /**
+     * @param bugId the bug
+     * @return the bug's comments, oldest first; empty if it has none
+     */
+    List<Comment> comments(int bugId);
+
+    /**
+     * @param bugId the bug
+     * @return number of comments on the bug, without reading them
+     */
+    int count(int bugId);
+
+    /**
+     * Add a comment after the bug's existing ones.
+     */
+    void add(int bugId, Comment comment);
+}
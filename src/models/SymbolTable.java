@@ -0,0 +1,32 @@
+package models;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical instances of strings that repeat across many bugs, such as assignee names.
+ * A few hundred names are shared by millions of bugs, so each bug keeps a reference to
+ * one shared copy instead of its own. Past a fixed size new names are no longer added,
+ * so unbounded input cannot grow the table.
+ */
+final class SymbolTable {
+    private static final int MAX_SYMBOLS = 1 << 16;
+
+    private static final Map<String, String> SYMBOLS = new ConcurrentHashMap<>();
+
+    private SymbolTable() {
+    }
+
+    /**
+     * @param s a string, may be null
+     * @return the canonical instance equal to s, or s itself if the table is full
+     */
+    static String intern(String s) {
+        if (s == null) return null;
+        String canonical = SYMBOLS.get(s);
+        if (canonical != null) return canonical;
+        if (SYMBOLS.size() >= MAX_SYMBOLS) return s;
+        canonical = SYMBOLS.putIfAbsent(s, s);
+        return canonical != null ? canonical : s;
+    }
+}
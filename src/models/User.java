@@ -6,7 +6,7 @@ public class User implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private String username;
-    private String password;
+    private volatile String password; // Password hash; plaintext in files from older versions
     private Role role; // Role field
 
     public User(String username, String password, Role role) {
@@ -28,6 +28,10 @@ public class User implements Serializable {
         return role;
     }
 
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
     public void setRole(Role role) {
         this.role = role;
     }
@@ -0,0 +1,568 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import managers.BugManager;
+import managers.BugPage;
+import managers.BugQuery;
+import managers.JsonText;
+import managers.Session;
+import managers.StatisticsManager;
+import managers.UserManager;
+import models.Bug;
+import models.Priority;
+import models.Role;
+import models.Status;
+import models.User;
+
+/**
+ * HTTP/JSON front-end for a {@link BugManager}. Every request authenticates either with HTTP Basic
+ * credentials checked by {@link UserManager} or with a Bearer token from POST /sessions, which
+ * skips the password check. Roles get the same rights as in the console.
+ *
+ * <pre>
+ * POST   /sessions                Basic credentials; answers {"token","username","role"}
+ * DELETE /sessions                end the Bearer session
+ * GET    /bugs?status=&amp;priority=&amp;assignee=&amp;q=&amp;sort=&amp;limit=&amp;cursor=   list or search, one page;
+ *                                 limit: 1 to 1000, default 50; bugs carry a commentCount instead of their comments
+ * POST   /bugs                    {"title","description","status","priority","assignedTo"}
+ * GET    /bugs/{id}?at=           at: ISO-8601 instant; the bug's fields as they were then
+ * PATCH  /bugs/{id}               any of title, description, status, priority, assignedTo
+ * DELETE /bugs/{id}
+ * POST   /bugs/{id}/comments      {"comment"}; comments are returned as {"text","author","time"}
+ * GET    /bugs/{id}/history       {"changes":[{"bugId","type","time","author","field","from","to"}]}, oldest first
+ * GET    /changes?field=&amp;since=&amp;until=   changes of one field (or all) across bugs, same shape;
+ *                                 since and until are ISO-8601 instants, defaulting to the last week and now
+ * GET    /stats
+ * </pre>
+ *
+ * Requests run on virtual threads when the JVM has them (Java 21+), otherwise on a fixed pool.
+ */
+public class ApiServer {
+    private static final int DEFAULT_PAGE = 50;
+    private static final int MAX_PAGE = 1000;
+    private static final int BACKLOG = 4096;
+    private static final int MAX_BODY = 1 << 20;
+    // Exchange attribute holding the authenticated caller's username
+    private static final String USERNAME = "username";
+
+    // Field numbers used by BugManager.updateBugField
+    private static final Map<String, Integer> FIELDS = Map.of(
+            "title", 1, "description", 2, "status", 3, "priority", 4, "assignedTo", 5);
+    // The same names by field number
+    private static final String[] FIELD_NAMES = { null, "title", "description", "status", "priority", "assignedTo" };
+    private static final long WEEK_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    private final BugManager bugs;
+    private final StatisticsManager stats;
+    private final UserManager users;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public ApiServer(BugManager bugs, StatisticsManager stats, UserManager users) {
+        this.bugs = bugs;
+        this.stats = stats;
+        this.users = users;
+    }
+
+    /**
+     * Start listening.
+     *
+     * @param port the TCP port, or 0 for any free port
+     * @return the port actually bound
+     */
+    public int start(int port) throws IOException {
+        // Headers and body go out in separate writes; without TCP_NODELAY each response waits on a delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/bugs", this::handleBugs);
+        server.createContext("/changes", this::handleChanges);
+        server.createContext("/stats", this::handleStats);
+        server.createContext("/sessions", this::handleSessions);
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop accepting connections, give running requests a moment to finish, and release the threads.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            server = null;
+        }
+    }
+
+    /**
+     * One virtual thread per request where the runtime supports it. Looked up reflectively so
+     * the tracker still builds and runs on older JDKs, which get a fixed platform-thread pool.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(8, Runtime.getRuntime().availableProcessors() * 4));
+        }
+    }
+
+    // ========================= HANDLERS =========================
+
+    private void handleBugs(HttpExchange exchange) throws IOException {
+        try {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            // path[0] is empty and path[1] is "bugs"; the context also matches paths such as /bugsx
+            if (path.length < 2 || !path[1].equals("bugs")) {
+                send(exchange, 404, Json.error("Not found"));
+                return;
+            }
+            Role role = authenticate(exchange);
+            if (role == null) return;
+            String method = exchange.getRequestMethod();
+            if (path.length == 2) {
+                if (method.equals("GET")) {
+                    if (require(exchange, canSearch(role))) listBugs(exchange);
+                } else if (method.equals("POST")) {
+                    if (require(exchange, canAdd(role))) addBug(exchange);
+                } else {
+                    send(exchange, 405, Json.error("Method not allowed"));
+                }
+                return;
+            }
+            int id;
+            try {
+                id = Integer.parseInt(path[2]);
+            } catch (NumberFormatException e) {
+                send(exchange, 404, Json.error("Not found"));
+                return;
+            }
+            if (path.length == 3) {
+                switch (method) {
+                    case "GET":
+                        if (!require(exchange, canSearch(role))) break;
+                        String at = query(exchange).get("at");
+                        if (at != null) {
+                            getBugAt(exchange, id, instantParam("at", at));
+                        } else {
+                            getBug(exchange, id);
+                        }
+                        break;
+                    case "PATCH":
+                        if (require(exchange, canEdit(role))) updateBug(exchange, id);
+                        break;
+                    case "DELETE":
+                        if (require(exchange, canEdit(role))) deleteBug(exchange, id);
+                        break;
+                    default:
+                        send(exchange, 405, Json.error("Method not allowed"));
+                }
+            } else if (path.length == 4 && path[3].equals("history")) {
+                if (!method.equals("GET")) {
+                    send(exchange, 405, Json.error("Method not allowed"));
+                } else if (require(exchange, canSearch(role))) {
+                    send(exchange, 200, Json.changes(bugs.getHistory(id), FIELD_NAMES));
+                }
+            } else if (path.length == 4 && path[3].equals("comments")) {
+                if (!method.equals("POST")) {
+                    send(exchange, 405, Json.error("Method not allowed"));
+                } else if (require(exchange, canEdit(role))) {
+                    addComment(exchange, id);
+                }
+            } else {
+                send(exchange, 404, Json.error("Not found"));
+            }
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, Json.error(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void listBugs(HttpExchange exchange) throws IOException {
+        Map<String, String> params = query(exchange);
+        BugQuery query = new BugQuery()
+                .keyword(params.get("q"))
+                .assignee(params.get("assignee"))
+                .orderBy(BugManager.sortOrder(params.get("sort")))
+                .limit(Math.min(MAX_PAGE, intParam(params, "limit", 1, DEFAULT_PAGE)));
+        if (params.containsKey("status")) {
+            query.status(parseEnum(Status.class, params.get("status")));
+        }
+        if (params.containsKey("priority")) {
+            query.priority(parseEnum(Priority.class, params.get("priority")));
+        }
+        if (params.containsKey("cursor")) {
+            query.cursor(params.get("cursor"));
+        }
+        BugPage page = bugs.page(query);
+        StringBuilder sb = new StringBuilder(256 * page.getBugs().size() + 32);
+        sb.append("{\"bugs\":[");
+        boolean first = true;
+        for (Bug bug : page.getBugs()) {
+            if (!first) sb.append(',');
+            first = false;
+            Json.summary(sb, bug);
+        }
+        sb.append("],\"next\":");
+        JsonText.quote(sb, page.getNextCursor());
+        sb.append('}');
+        send(exchange, 200, sb.toString());
+    }
+
+    private void getBug(HttpExchange exchange, int id) throws IOException {
+        Bug bug = bugs.findBugById(id);
+        if (bug == null) {
+            send(exchange, 404, Json.error("Bug " + id + " not found"));
+        } else {
+            send(exchange, 200, Json.bug(bug));
+        }
+    }
+
+    private void getBugAt(HttpExchange exchange, int id, long time) throws IOException {
+        Bug bug = bugs.findBugAt(id, time);
+        if (bug == null) {
+            send(exchange, 404, Json.error("Bug " + id + " did not exist then"));
+        } else {
+            send(exchange, 200, Json.state(bug));
+        }
+    }
+
+    private void addBug(HttpExchange exchange) throws IOException {
+        Map<String, String> body = JsonText.parseObject(body(exchange));
+        String title = required(body, "title");
+        String description = required(body, "description");
+        Status status = parseEnum(Status.class, body.getOrDefault("status", Status.NEW.name()));
+        Priority priority = parseEnum(Priority.class, body.getOrDefault("priority", Priority.LOW.name()));
+        String assignedTo = body.getOrDefault("assignedTo", "");
+        Bug bug = new Bug(bugs.nextBugId(), title, description, status, priority, assignedTo);
+        bugs.addBug(bug, (String) exchange.getAttribute(USERNAME));
+        exchange.getResponseHeaders().set("Location", "/bugs/" + bug.getId());
+        send(exchange, 201, Json.bug(bug));
+    }
+
+    private void updateBug(HttpExchange exchange, int id) throws IOException {
+        Map<String, String> body = JsonText.parseObject(body(exchange));
+        if (body.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to update");
+        }
+        // Validate everything before changing anything
+        Map<Integer, String> values = new HashMap<>();
+        for (Map.Entry<String, String> entry : body.entrySet()) {
+            Integer field = FIELDS.get(entry.getKey());
+            if (field == null) {
+                throw new IllegalArgumentException("Unknown field " + entry.getKey());
+            }
+            if (field == 3) parseEnum(Status.class, entry.getValue());
+            if (field == 4) parseEnum(Priority.class, entry.getValue());
+            values.put(field, entry.getValue());
+        }
+        if (!bugs.updateBugFields(id, values, (String) exchange.getAttribute(USERNAME))) {
+            send(exchange, 404, Json.error("Bug " + id + " not found"));
+            return;
+        }
+        getBug(exchange, id);
+    }
+
+    private void deleteBug(HttpExchange exchange, int id) throws IOException {
+        if (bugs.deleteBug(id, (String) exchange.getAttribute(USERNAME))) {
+            send(exchange, 204, null);
+        } else {
+            send(exchange, 404, Json.error("Bug " + id + " not found"));
+        }
+    }
+
+    private void addComment(HttpExchange exchange, int id) throws IOException {
+        String comment = required(JsonText.parseObject(body(exchange)), "comment");
+        if (bugs.addCommentToBug(id, (String) exchange.getAttribute(USERNAME), comment)) {
+            getBug(exchange, id);
+        } else {
+            send(exchange, 404, Json.error("Bug " + id + " not found"));
+        }
+    }
+
+    private void handleSessions(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestURI().getPath().equals("/sessions")) {
+                send(exchange, 404, Json.error("Not found"));
+                return;
+            }
+            String method = exchange.getRequestMethod();
+            if (method.equals("POST")) {
+                String[] credentials = basicCredentials(exchange);
+                Session session = credentials == null ? null : users.openSession(credentials[0], credentials[1]);
+                if (session == null || session.getRole() == null) {
+                    if (session != null) users.closeSession(session.getToken());
+                    unauthorized(exchange);
+                    return;
+                }
+                StringBuilder sb = new StringBuilder(128);
+                sb.append("{\"token\":");
+                JsonText.quote(sb, session.getToken());
+                sb.append(",\"username\":");
+                JsonText.quote(sb, session.getUsername());
+                sb.append(",\"role\":");
+                JsonText.quote(sb, session.getRole().name());
+                sb.append('}');
+                send(exchange, 201, sb.toString());
+            } else if (method.equals("DELETE")) {
+                String token = bearerToken(exchange);
+                if (token == null || users.getSession(token) == null) {
+                    unauthorized(exchange);
+                    return;
+                }
+                users.closeSession(token);
+                send(exchange, 204, null);
+            } else {
+                send(exchange, 405, Json.error("Method not allowed"));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleChanges(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestURI().getPath().equals("/changes")) {
+                send(exchange, 404, Json.error("Not found"));
+                return;
+            }
+            Role role = authenticate(exchange);
+            if (role == null) return;
+            if (!exchange.getRequestMethod().equals("GET")) {
+                send(exchange, 405, Json.error("Method not allowed"));
+                return;
+            }
+            if (!require(exchange, canSearch(role))) return;
+            Map<String, String> params = query(exchange);
+            int field = 0;
+            if (params.containsKey("field")) {
+                Integer number = FIELDS.get(params.get("field"));
+                if (number == null) {
+                    throw new IllegalArgumentException("Unknown field " + params.get("field"));
+                }
+                field = number;
+            }
+            long until = params.containsKey("until") ? instantParam("until", params.get("until")) : System.currentTimeMillis();
+            long since = params.containsKey("since") ? instantParam("since", params.get("since")) : until - WEEK_MILLIS;
+            send(exchange, 200, Json.changes(bugs.getChanges(field, since, until), FIELD_NAMES));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, Json.error(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestURI().getPath().equals("/stats")) {
+                send(exchange, 404, Json.error("Not found"));
+                return;
+            }
+            if (authenticate(exchange) == null) return;
+            if (!exchange.getRequestMethod().equals("GET")) {
+                send(exchange, 405, Json.error("Method not allowed"));
+                return;
+            }
+            Map<String, Integer> byStatus = new LinkedHashMap<>();
+            Map<String, Integer> byPriority = new LinkedHashMap<>();
+            Map<String, Integer> byAssignee;
+            int total;
+            int open;
+            synchronized (stats) { // One consistent reading of all counters
+                for (Status s : Status.values()) byStatus.put(s.name(), stats.getStatusCount(s));
+                for (Priority p : Priority.values()) byPriority.put(p.name(), stats.getPriorityCount(p));
+                byAssignee = stats.getAssigneeCounts();
+                total = stats.getTotalCount();
+                open = stats.getOpenCount();
+            }
+            StringBuilder sb = new StringBuilder(256);
+            sb.append("{\"total\":").append(total).append(",\"open\":").append(open);
+            sb.append(",\"byStatus\":");
+            Json.counts(sb, byStatus);
+            sb.append(",\"byPriority\":");
+            Json.counts(sb, byPriority);
+            sb.append(",\"byAssignee\":");
+            Json.counts(sb, byAssignee);
+            sb.append('}');
+            send(exchange, 200, sb.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // ========================= ACCESS RULES =========================
+    // Same rights as the console menus in main.Main
+
+    private static boolean canSearch(Role role) {
+        return role != Role.PROJECT_MANAGER;
+    }
+
+    private static boolean canAdd(Role role) {
+        return role == Role.TESTER || role == Role.ADMIN;
+    }
+
+    private static boolean canEdit(Role role) {
+        return role == Role.DEVELOPER || role == Role.ADMIN;
+    }
+
+    // ========================= HELPERS =========================
+
+    // Check the Bearer session or Basic credentials and return the caller's role, keeping their
+    // username as the USERNAME attribute; answers 401 itself and returns null when they are missing or wrong
+    private Role authenticate(HttpExchange exchange) throws IOException {
+        Role role = null;
+        String username = null;
+        String token = bearerToken(exchange);
+        if (token != null) {
+            Session session = users.getSession(token);
+            if (session != null) {
+                role = session.getRole();
+                username = session.getUsername();
+            }
+        } else {
+            String[] credentials = basicCredentials(exchange);
+            User user = credentials != null ? users.authenticate(credentials[0], credentials[1]) : null;
+            if (user != null) {
+                role = user.getRole();
+                username = user.getUsername();
+            }
+        }
+        if (role == null) {
+            unauthorized(exchange);
+        }
+        exchange.setAttribute(USERNAME, username);
+        return role;
+    }
+
+    private static void unauthorized(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"bug-tracker\"");
+        send(exchange, 401, Json.error("Authentication required"));
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header != null && header.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return header.substring(7).trim();
+        }
+        return null;
+    }
+
+    // Username and password from a Basic header, or null if there is none or it is malformed
+    private static String[] basicCredentials(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Basic ", 0, 6)) {
+            return null;
+        }
+        try {
+            String decoded = new String(Base64.getDecoder().decode(header.substring(6).trim()), StandardCharsets.UTF_8);
+            int colon = decoded.indexOf(':');
+            return colon > 0 ? new String[] {decoded.substring(0, colon), decoded.substring(colon + 1)} : null;
+        } catch (IllegalArgumentException e) {
+            return null; // Not valid Base64
+        }
+    }
+
+    private static boolean require(HttpExchange exchange, boolean allowed) throws IOException {
+        if (!allowed) {
+            send(exchange, 403, Json.error("Access denied for your role"));
+        }
+        return allowed;
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        if (json == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String body(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY + 1);
+            if (bytes.length > MAX_BODY) {
+                throw new IllegalArgumentException("Request body too large");
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static int intParam(Map<String, String> params, String name, int min, int defaultValue) {
+        String value = params.get(name);
+        if (value == null) return defaultValue;
+        try {
+            int n = Integer.parseInt(value);
+            if (n < min) throw new NumberFormatException();
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + name + ": " + value);
+        }
+    }
+
+    // An ISO-8601 instant such as 2024-05-01T12:00:00Z, as epoch millis
+    private static long instantParam(String name, String value) {
+        try {
+            return Instant.parse(value).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Bad " + name + ": " + value);
+        }
+    }
+
+    private static String required(Map<String, String> body, String name) {
+        String value = body.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing " + name);
+        }
+        return value;
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value) {
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown " + type.getSimpleName().toLowerCase() + " " + value);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package server;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import managers.BugChange;
+import managers.JsonText;
+import models.Bug;
+import models.Comment;
+
+/**
+ * JSON helpers for the API: writing bugs and simple objects. Strings are quoted and request bodies
+ * read by {@link JsonText}.
+ */
+class Json {
+    private Json() {
+    }
+
+    // A bug with its comments, for requests about that one bug
+    static void bug(StringBuilder sb, Bug bug) {
+        fields(sb, bug);
+        sb.append(",\"comments\":[");
+        List<Comment> comments = bug.getComments();
+        for (int i = 0; i < comments.size(); i++) {
+            if (i > 0) sb.append(',');
+            Comment comment = comments.get(i);
+            sb.append("{\"text\":");
+            JsonText.quote(sb, comment.getText());
+            sb.append(",\"author\":");
+            JsonText.quote(sb, comment.getAuthor());
+            sb.append(",\"time\":");
+            JsonText.quote(sb, comment.getTimestamp() != 0 ? Instant.ofEpochMilli(comment.getTimestamp()).toString() : null);
+            sb.append('}');
+        }
+        sb.append("]}");
+    }
+
+    // A bug with only the number of its comments, for lists, which should not read comment text
+    static void summary(StringBuilder sb, Bug bug) {
+        fields(sb, bug);
+        sb.append(",\"commentCount\":").append(bug.getCommentCount()).append('}');
+    }
+
+    private static void fields(StringBuilder sb, Bug bug) {
+        sb.append("{\"id\":").append(bug.getId());
+        sb.append(",\"title\":");
+        JsonText.quote(sb, bug.getTitle());
+        sb.append(",\"description\":");
+        JsonText.quote(sb, bug.getDescription());
+        sb.append(",\"status\":");
+        JsonText.quote(sb, bug.getStatus().name());
+        sb.append(",\"priority\":");
+        JsonText.quote(sb, bug.getPriority().name());
+        sb.append(",\"assignedTo\":");
+        JsonText.quote(sb, bug.getAssignedTo());
+    }
+
+    static String bug(Bug bug) {
+        StringBuilder sb = new StringBuilder(256);
+        bug(sb, bug);
+        return sb.toString();
+    }
+
+    // A bug's fields alone, for its state at a past time, which has no comments
+    static String state(Bug bug) {
+        StringBuilder sb = new StringBuilder(256);
+        fields(sb, bug);
+        return sb.append('}').toString();
+    }
+
+    // History entries as {"changes":[...]}; field names as in PATCH bodies
+    static String changes(List<BugChange> changes, String[] fieldNames) {
+        StringBuilder sb = new StringBuilder(96 * changes.size() + 16);
+        sb.append("{\"changes\":[");
+        for (int i = 0; i < changes.size(); i++) {
+            if (i > 0) sb.append(',');
+            BugChange change = changes.get(i);
+            sb.append("{\"bugId\":").append(change.getBugId());
+            sb.append(",\"type\":");
+            JsonText.quote(sb, change.getType().name());
+            sb.append(",\"time\":");
+            JsonText.quote(sb, Instant.ofEpochMilli(change.getTime()).toString());
+            sb.append(",\"author\":");
+            JsonText.quote(sb, change.getAuthor());
+            if (change.getType() == BugChange.Type.CHANGED) {
+                sb.append(",\"field\":");
+                JsonText.quote(sb, fieldNames[change.getField()]);
+                sb.append(",\"from\":");
+                JsonText.quote(sb, change.getOldValue());
+                sb.append(",\"to\":");
+                JsonText.quote(sb, change.getNewValue());
+            }
+            sb.append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    static void counts(StringBuilder sb, Map<String, Integer> counts) {
+        sb.append('{');
+        boolean first = true;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (!first) sb.append(',');
+            first = false;
+            JsonText.quote(sb, entry.getKey());
+            sb.append(':').append(entry.getValue());
+        }
+        sb.append('}');
+    }
+
+    static String error(String message) {
+        StringBuilder sb = new StringBuilder("{\"error\":");
+        JsonText.quote(sb, message);
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,273 @@
+package managers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import models.Bug;
+import models.Comment;
+import models.Priority;
+import models.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Records must survive a write and read whatever text their fields hold, and a log whose last
+ * record was torn by a crash must read back every whole record before it and nothing more.
+ */
+class BugCodecTest {
+    private static final String LOG_PATH = "data/codec-test.log";
+    // Characters the format must escape, plus pipes (the v1 comment separator), spaces and non-ASCII text
+    private static final String[] PIECES = {"a", "Z", " ", ",", "\"", "\"\"", "|", "\r", "\n", "\r\n", "é", "日本", "😀", "#v2", ""};
+
+    @BeforeEach
+    void clear() {
+        TestData.clear();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        TestData.clear();
+    }
+
+    @Test
+    void escapesEveryDelimiter() {
+        Bug bug = new Bug(7, "Crash, then \"hang\"", "line one\nline two\r\nline three\rend", Status.IN_PROGRESS,
+                Priority.CRITICAL, "a|b", comments("first", "say \"hi\"", "x,y|z", ""));
+        StringBuilder sb = new StringBuilder();
+        BugCodec.appendBug(sb, bug);
+        assertEquals("7,\"Crash, then \"\"hang\"\"\",\"line one\nline two\r\nline three\rend\",IN_PROGRESS,CRITICAL,a|b,"
+                + "first,\"say \"\"hi\"\"\",\"x,y|z\",", sb.toString());
+        assertSameBug(bug, decodeOne(sb.append('\n').toString()));
+    }
+
+    @Test
+    void keepsEmptyFields() {
+        Bug bug = new Bug(1, "", "", Status.NEW, Priority.LOW, "", comments("", ""));
+        StringBuilder sb = new StringBuilder();
+        BugCodec.appendBug(sb, bug);
+        assertEquals("1,,,NEW,LOW,,,", sb.toString());
+        assertSameBug(bug, decodeOne(sb.append('\n').toString()));
+    }
+
+    @Test
+    void acceptsCrlfAndAMissingLastLineBreak() {
+        List<List<String>> records = read("1,a,b\r\n2,\"c\r\nd\",e\r\n3,f,g");
+        assertEquals(List.of(List.of("1", "a", "b"), List.of("2", "c\r\nd", "e"), List.of("3", "f", "g")), records);
+    }
+
+    @Test
+    void randomBugsRoundTrip() {
+        Random random = new Random(21);
+        List<Bug> bugs = new ArrayList<>();
+        StringBuilder sb = new StringBuilder(BugCodec.HEADER).append('\n');
+        for (int id = 1; id <= 2_000; id++) {
+            Bug bug = randomBug(random, id);
+            bugs.add(bug);
+            BugCodec.appendBug(sb, bug);
+            sb.append(random.nextBoolean() ? "\n" : "\r\n");
+        }
+        ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        BugCodec.Reader reader = new BugCodec.Reader(buf, 1);
+        assertEquals(BugCodec.VERSION, reader.readHeader());
+        List<String> fields = new ArrayList<>();
+        for (Bug bug : bugs) {
+            assertTrue(reader.next(fields));
+            assertTrue(reader.terminated());
+            assertSameBug(bug, toBug(fields));
+        }
+        assertFalse(reader.next(fields));
+    }
+
+    @Test
+    void splitterOnlyCutsBetweenRecords() {
+        Random random = new Random(4180);
+        StringBuilder sb = new StringBuilder();
+        int count = 500;
+        for (int id = 1; id <= count; id++) {
+            BugCodec.appendBug(sb, randomBug(random, id));
+            sb.append('\n');
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        // Feed the stream in random blocks and parse each stretch up to a boundary on its own
+        BugCodec.Splitter splitter = new BugCodec.Splitter();
+        int start = 0;
+        int scanned = 0;
+        int ids = 0;
+        while (scanned < bytes.length) {
+            int end = Math.min(bytes.length, scanned + 1 + random.nextInt(300));
+            int boundary = splitter.scan(bytes, scanned, end);
+            scanned = end;
+            if (boundary < 0) continue;
+            for (List<String> record : read(new String(bytes, start, boundary - start, StandardCharsets.UTF_8))) {
+                assertEquals(String.valueOf(++ids), record.get(0));
+            }
+            start = boundary;
+        }
+        assertEquals(bytes.length, start);
+        assertEquals(count, ids);
+    }
+
+    @Test
+    void rejectsMalformedRecordsAndResumes() {
+        BugCodec.Reader reader = reader("1,a\"b,c\n2,\"x\"y,z\n3,ok\n");
+        List<String> fields = new ArrayList<>();
+        assertThrows(IllegalArgumentException.class, () -> reader.next(fields));
+        assertThrows(IllegalArgumentException.class, () -> reader.next(fields));
+        assertTrue(reader.next(fields));
+        assertEquals(List.of("3", "ok"), fields);
+    }
+
+    @Test
+    void truncatedRecordIsNotTerminated() {
+        // Cut inside an unquoted field: a record comes back, but not as a whole line
+        BugCodec.Reader reader = reader("1,a,b\n2,c");
+        List<String> fields = new ArrayList<>();
+        assertTrue(reader.next(fields));
+        assertTrue(reader.terminated());
+        assertTrue(reader.next(fields));
+        assertFalse(reader.terminated());
+        // Cut inside a quoted field: the record cannot be read at all
+        BugCodec.Reader quoted = reader("1,a,b\n2,\"c\nd");
+        assertTrue(quoted.next(fields));
+        assertThrows(IllegalArgumentException.class, () -> quoted.next(fields));
+    }
+
+    @Test
+    void logDropsATornLastRecordAndAppendsAfterTheLastWholeOne() throws IOException {
+        Random random = new Random(23);
+        List<Bug> bugs = new ArrayList<>();
+        for (int id = 1; id <= 20; id++) {
+            bugs.add(randomBug(random, id));
+        }
+        File file = new File(LOG_PATH);
+        writeLog(bugs);
+        long whole = file.length();
+        StringBuilder last = new StringBuilder().append(BugLog.ADD).append(',');
+        BugCodec.appendFields(last, bugs.get(bugs.size() - 1));
+        long lastStart = whole - last.toString().getBytes(StandardCharsets.UTF_8).length - 1;
+
+        // Every cut inside the last record, up to just before its line break
+        for (long cut = lastStart + 1; cut < whole; cut++) {
+            writeLog(bugs);
+            truncate(file, cut);
+            BugLog torn = new BugLog(LOG_PATH);
+            List<String[]> records = torn.readRecords();
+            assertEquals(bugs.size() - 1, records.size(), "records read with the file cut at " + cut);
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals(String.valueOf(BugLog.ADD), records.get(i)[0]);
+                assertSameFields(bugs.get(i), toBug(Arrays.asList(records.get(i)).subList(1, records.get(i).length)));
+            }
+            // The next record must not merge with the torn bytes
+            torn.appendDelete(99);
+            torn.close();
+            records = new BugLog(LOG_PATH).readRecords();
+            assertEquals(bugs.size(), records.size(), "records after appending to the log cut at " + cut);
+            assertEquals(List.of("D", "99"), Arrays.asList(records.get(records.size() - 1)));
+        }
+    }
+
+    // A fresh log holding one add record per bug
+    private static void writeLog(List<Bug> bugs) throws IOException {
+        new File(LOG_PATH).delete();
+        BugLog log = new BugLog(LOG_PATH);
+        log.readRecords();
+        for (Bug bug : bugs) {
+            log.appendBug(bug);
+        }
+        log.close();
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+
+    private static Bug randomBug(Random random, int id) {
+        Status[] statuses = Status.values();
+        Priority[] priorities = Priority.values();
+        List<Comment> comments = new ArrayList<>();
+        for (int i = random.nextInt(4); i > 0; i--) {
+            comments.add(new Comment(randomText(random), null, 0));
+        }
+        return new Bug(id, randomText(random), randomText(random), statuses[random.nextInt(statuses.length)],
+                priorities[random.nextInt(priorities.length)], randomText(random), comments);
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = random.nextInt(8); i > 0; i--) {
+            sb.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static List<Comment> comments(String... texts) {
+        List<Comment> comments = new ArrayList<>();
+        for (String text : texts) {
+            comments.add(new Comment(text, null, 0));
+        }
+        return comments;
+    }
+
+    private static BugCodec.Reader reader(String text) {
+        return new BugCodec.Reader(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), 1);
+    }
+
+    private static List<List<String>> read(String text) {
+        BugCodec.Reader reader = reader(text);
+        List<List<String>> records = new ArrayList<>();
+        List<String> fields = new ArrayList<>();
+        while (reader.next(fields)) {
+            records.add(new ArrayList<>(fields));
+        }
+        return records;
+    }
+
+    private static Bug decodeOne(String text) {
+        List<List<String>> records = read(text);
+        assertEquals(1, records.size());
+        return toBug(records.get(0));
+    }
+
+    private static Bug toBug(List<String> fields) {
+        List<Comment> comments = new ArrayList<>();
+        for (String text : fields.subList(BugCodec.BUG_FIELDS, fields.size())) {
+            comments.add(new Comment(text, null, 0));
+        }
+        return new Bug(Integer.parseInt(fields.get(0)), fields.get(1), fields.get(2), Status.valueOf(fields.get(3)),
+                Priority.valueOf(fields.get(4)), fields.get(5), comments);
+    }
+
+    private static void assertSameBug(Bug expected, Bug actual) {
+        assertSameFields(expected, actual);
+        List<String> expectedTexts = new ArrayList<>();
+        for (Comment comment : expected.getComments()) expectedTexts.add(comment.getText());
+        List<String> actualTexts = new ArrayList<>();
+        for (Comment comment : actual.getComments()) actualTexts.add(comment.getText());
+        assertEquals(expectedTexts, actualTexts);
+    }
+
+    // Everything but the comments, which log records do not carry
+    private static void assertSameFields(Bug expected, Bug actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getPriority(), actual.getPriority());
+        assertEquals(expected.getAssignedTo(), actual.getAssignedTo());
+    }
+}
@@ -0,0 +1,222 @@
+package managers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import models.Bug;
+import models.Priority;
+import models.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The history file must give back every bug's past states and every change in a time range,
+ * whether it is opened from its index, from a full scan, or after a crash tore its last record.
+ */
+class BugHistoryTest {
+    private static final String PATH = "data/history-test.dat";
+    private static final String INDEX_PATH = "data/history-test.idx";
+    private static final int BLOCK_BYTES = 64 << 10;
+
+    @BeforeEach
+    void clear() {
+        TestData.clear();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        TestData.clear();
+    }
+
+    @Test
+    void readsABugAtEveryPointOfItsLife() throws Exception {
+        BugHistory history = new BugHistory(PATH, INDEX_PATH);
+        long before = tick();
+        history.created(1, "ann");
+        long created = tick();
+        history.changed(1, 1, "Crash", "Crash on save", "bob");
+        history.changed(1, 3, "NEW", "IN_PROGRESS", "bob");
+        long changed = tick();
+        Bug last = new Bug(1, "Crash on save", "Stack trace", Status.IN_PROGRESS, Priority.HIGH, "bob");
+        history.deleted(last, "ann");
+        long deleted = tick();
+        history.created(1, "cy");
+        long recreated = tick();
+        history.changed(1, 4, "LOW", "CRITICAL", "cy");
+        Bug current = new Bug(1, "Reused", "Other", Status.NEW, Priority.CRITICAL, null);
+
+        assertNull(history.at(current, 1, before));
+        assertEquals("1|Crash|Stack trace|NEW|HIGH|bob", state(history.at(current, 1, created)));
+        assertEquals("1|Crash on save|Stack trace|IN_PROGRESS|HIGH|bob", state(history.at(current, 1, changed)));
+        assertNull(history.at(current, 1, deleted));
+        assertEquals("1|Reused|Other|NEW|LOW|null", state(history.at(current, 1, recreated)));
+        assertEquals(state(current), state(history.at(current, 1, System.currentTimeMillis())));
+        // Deleted again since: its last state comes from the deletion record
+        history.deleted(current, "cy");
+        assertEquals("1|Crash on save|Stack trace|IN_PROGRESS|HIGH|bob", state(history.at(null, 1, changed)));
+        assertNull(history.at(null, 1, System.currentTimeMillis()));
+
+        assertEquals(List.of("CREATED", "CHANGED 1", "CHANGED 3", "DELETED", "CREATED", "CHANGED 4", "DELETED"),
+                kinds(history.history(1)));
+        history.close();
+    }
+
+    @Test
+    void findsStatusChangesInARangeSpanningSeveralBlocks() throws Exception {
+        BugHistory history = new BugHistory(PATH, INDEX_PATH);
+        String filler = "x".repeat(1000);
+        fill(history, 0, 100, filler);
+        long from = tick();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            int id = 1000 + i;
+            history.changed(id, 2, filler, filler + i, "bob");
+            history.changed(id, 3, "NEW", "RESOLVED", "bob");
+            expected.add(id + " NEW->RESOLVED");
+        }
+        long to = tick();
+        fill(history, 2000, 100, filler);
+        history.sync();
+        assertTrue(new File(PATH).length() > 6L * BLOCK_BYTES);
+
+        assertEquals(expected, statusChanges(history.changes(3, from, to)));
+        assertEquals(600, history.changes(0, from, to).size());
+        assertEquals(List.of(), history.changes(3, to, to));
+        history.checkpoint();
+        history.close();
+
+        BugHistory indexed = new BugHistory(PATH, INDEX_PATH);
+        assertEquals(expected, statusChanges(indexed.changes(3, from, to)));
+        indexed.close();
+        new File(INDEX_PATH).delete();
+        BugHistory scanned = new BugHistory(PATH, INDEX_PATH);
+        assertEquals(expected, statusChanges(scanned.changes(3, from, to)));
+        scanned.close();
+    }
+
+    @Test
+    void reopensWithAndWithoutItsIndex() throws Exception {
+        BugHistory history = new BugHistory(PATH, INDEX_PATH);
+        for (int id = 1; id <= 50; id++) {
+            history.created(id, "ann");
+            history.changed(id, 5, null, "bob", "ann");
+        }
+        history.checkpoint();
+        // Appended after the checkpoint: found by scanning on from where the index stops
+        for (int id = 1; id <= 50; id += 7) {
+            history.changed(id, 3, "NEW", "CLOSED", "bob");
+        }
+        history.deleted(new Bug(50, "t", "d", Status.CLOSED, Priority.LOW, "bob"), "ann");
+        long end = tick();
+        String expected = describe(history, end);
+        history.close();
+
+        BugHistory indexed = new BugHistory(PATH, INDEX_PATH);
+        assertEquals(expected, describe(indexed, end));
+        indexed.changed(2, 4, "LOW", "HIGH", "cy");
+        indexed.close();
+        BugHistory again = new BugHistory(PATH, INDEX_PATH);
+        String appended = describe(again, System.currentTimeMillis());
+        again.close();
+        assertTrue(appended.contains("2:[CREATED, CHANGED 5, CHANGED 4]"), appended);
+
+        new File(INDEX_PATH).delete();
+        BugHistory scanned = new BugHistory(PATH, INDEX_PATH);
+        assertEquals(appended, describe(scanned, System.currentTimeMillis()));
+        scanned.close();
+    }
+
+    @Test
+    void writesPendingRecordsOnClose() throws Exception {
+        BugHistory history = new BugHistory(PATH, INDEX_PATH);
+        history.created(1, "ann");
+        history.changed(1, 5, null, "bob", "ann");
+        history.close();
+
+        BugHistory reopened = new BugHistory(PATH, INDEX_PATH);
+        assertEquals(List.of("CREATED", "CHANGED 5"), kinds(reopened.history(1)));
+        reopened.close();
+    }
+
+    @Test
+    void cutsATornLastRecordBeforeAppending() throws Exception {
+        BugHistory history = new BugHistory(PATH, INDEX_PATH);
+        history.created(1, "ann");
+        history.changed(1, 1, "Old", "New", "ann");
+        history.checkpoint();
+        history.changed(1, 3, "NEW", "RESOLVED", "bob");
+        history.close();
+        long size = new File(PATH).length();
+        try (RandomAccessFile file = new RandomAccessFile(PATH, "rw")) {
+            file.setLength(size - 3);
+        }
+
+        BugHistory reopened = new BugHistory(PATH, INDEX_PATH);
+        assertEquals(List.of("CREATED", "CHANGED 1"), kinds(reopened.history(1)));
+        reopened.changed(1, 4, "LOW", "MEDIUM", "cy");
+        reopened.close();
+
+        new File(INDEX_PATH).delete();
+        BugHistory scanned = new BugHistory(PATH, INDEX_PATH);
+        List<BugChange> changes = scanned.history(1);
+        assertEquals(List.of("CREATED", "CHANGED 1", "CHANGED 4"), kinds(changes));
+        assertEquals("MEDIUM", changes.get(2).getNewValue());
+        assertEquals("cy", changes.get(2).getAuthor());
+        scanned.close();
+    }
+
+    // A time strictly after every record so far and strictly before every later one
+    private static long tick() throws InterruptedException {
+        Thread.sleep(2);
+        long now = System.currentTimeMillis();
+        Thread.sleep(2);
+        return now;
+    }
+
+    private static void fill(BugHistory history, int firstId, int count, String filler) {
+        for (int id = firstId; id < firstId + count; id++) {
+            history.changed(id, 2, filler, filler + id, "ann");
+        }
+    }
+
+    private static String state(Bug bug) {
+        return bug.getId() + "|" + bug.getTitle() + "|" + bug.getDescription() + "|" + bug.getStatus()
+                + "|" + bug.getPriority() + "|" + bug.getAssignedTo();
+    }
+
+    private static List<String> kinds(List<BugChange> changes) {
+        List<String> kinds = new ArrayList<>();
+        for (BugChange change : changes) {
+            kinds.add(change.getType() == BugChange.Type.CHANGED
+                    ? "CHANGED " + change.getField() : change.getType().name());
+        }
+        return kinds;
+    }
+
+    private static List<String> statusChanges(List<BugChange> changes) {
+        List<String> result = new ArrayList<>();
+        for (BugChange change : changes) {
+            result.add(change.getBugId() + " " + change.getOldValue() + "->" + change.getNewValue());
+        }
+        return result;
+    }
+
+    // Every bug's history and every change up to a time, in the order the file holds them
+    private static String describe(BugHistory history, long end) {
+        StringBuilder sb = new StringBuilder();
+        for (int id = 1; id <= 50; id++) {
+            sb.append(id).append(':').append(kinds(history.history(id))).append('\n');
+        }
+        for (BugChange change : history.changes(0, 0, end)) {
+            sb.append(change.getBugId()).append(' ').append(change.getType()).append(' ')
+                    .append(change.getNewValue()).append(' ').append(change.getAuthor()).append('\n');
+        }
+        return sb.toString();
+    }
+}
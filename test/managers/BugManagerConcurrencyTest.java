@@ -0,0 +1,145 @@
+package managers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import models.Bug;
+import models.Priority;
+import models.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Many threads mutating overlapping bugs at once must lose no update, keep the indexes and
+ * listeners in step with the bugs, and leave files that replay to the same state.
+ */
+class BugManagerConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int OPS = 5_000;
+    // Bugs 1-64 are never deleted; 65-128 are added and deleted throughout. Two bugs share each lock stripe.
+    private static final int STABLE = 64;
+    private static final int CHURN = 64;
+
+    private BugManager manager;
+
+    @BeforeEach
+    void open() {
+        TestData.clear();
+        manager = new BugManager();
+        // Flush often, so the writer runs alongside the mutations
+        manager.setWriteBehind(1, 16);
+    }
+
+    @AfterEach
+    void close() {
+        if (manager != null) manager.close();
+        TestData.clear();
+    }
+
+    @Test
+    void concurrentMutationsLoseNothingAndReplay() throws Exception {
+        for (int id = 1; id <= STABLE; id++) {
+            manager.addBug(new Bug(id, "t", "d0", Status.NEW, Priority.LOW, "a0"));
+        }
+        StatisticsManager stats = new StatisticsManager(manager);
+        // Each thread owns the description of the stable bugs with id % THREADS equal to its number,
+        // while every thread changes their other fields
+        AtomicReferenceArray<String> descriptions = new AtomicReferenceArray<>(STABLE + 1);
+        AtomicIntegerArray comments = new AtomicIntegerArray(STABLE + 1);
+        List<Throwable> failures = new ArrayList<>();
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int self = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    mutate(self, descriptions, comments);
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        // Seeded while the workers run, so mutations land around its registration
+        Thread.sleep(20);
+        StatisticsManager lateStats = new StatisticsManager(manager);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.isEmpty(), () -> "Worker failed: " + failures);
+
+        for (int id = 1; id <= STABLE; id++) {
+            Bug bug = manager.findBugById(id);
+            String expected = descriptions.get(id) != null ? descriptions.get(id) : "d0";
+            assertEquals(expected, bug.getDescription(), "description of bug " + id);
+            assertEquals(comments.get(id), bug.getCommentCount(), "comments of bug " + id);
+        }
+
+        List<Bug> bugs = manager.loadBugs();
+        int[] byStatus = new int[Status.values().length];
+        for (Bug bug : bugs) {
+            byStatus[bug.getStatus().ordinal()]++;
+        }
+        assertEquals(bugs.size(), stats.getTotalCount());
+        assertEquals(bugs.size(), lateStats.getTotalCount());
+        assertEquals(stats.getAssigneeCounts(), lateStats.getAssigneeCounts());
+        for (Status status : Status.values()) {
+            assertEquals(byStatus[status.ordinal()], stats.getStatusCount(status), "counter for " + status);
+            assertEquals(byStatus[status.ordinal()], lateStats.getStatusCount(status), "late counter for " + status);
+            BugPage page = manager.page(new BugQuery().status(status).limit(STABLE + CHURN));
+            assertEquals(byStatus[status.ordinal()], page.getBugs().size(), "index for " + status);
+        }
+
+        // The run compacts along the way; the reopened manager reads the snapshot and replays the log after it
+        String before = TestData.dump(manager);
+        manager.close();
+        manager = new BugManager();
+        assertEquals(before, TestData.dump(manager));
+    }
+
+    private void mutate(int self, AtomicReferenceArray<String> descriptions, AtomicIntegerArray comments) {
+        Random random = new Random(self);
+        Status[] statuses = Status.values();
+        Priority[] priorities = Priority.values();
+        for (int i = 0; i < OPS; i++) {
+            int stable = 1 + random.nextInt(STABLE);
+            int churn = STABLE + 1 + random.nextInt(CHURN);
+            int op = random.nextInt(20);
+            if (op < 6) {
+                switch (random.nextInt(4)) {
+                    case 0: manager.updateBugField(stable, 1, "t" + self + "-" + i); break;
+                    case 1: manager.updateBugStatus(stable, statuses[random.nextInt(statuses.length)]); break;
+                    case 2: manager.updateBugField(stable, 4, priorities[random.nextInt(priorities.length)].name()); break;
+                    default: manager.updateBugField(stable, 5, "a" + random.nextInt(10)); break;
+                }
+            } else if (op < 9) {
+                int owned = stable - stable % THREADS + self;
+                if (owned < 1 || owned > STABLE) continue;
+                String description = "d" + self + "-" + i;
+                assertTrue(manager.updateBugField(owned, 2, description));
+                descriptions.set(owned, description);
+            } else if (op < 12) {
+                assertTrue(manager.addCommentToBug(stable, "u" + self, "c" + i));
+                comments.incrementAndGet(stable);
+            } else if (op < 16) {
+                manager.addBug(new Bug(churn, "n" + i, "d", statuses[random.nextInt(statuses.length)],
+                        priorities[random.nextInt(priorities.length)], "a" + random.nextInt(10)));
+            } else if (op < 19) {
+                manager.deleteBug(churn);
+            } else {
+                manager.updateBugStatus(churn, statuses[random.nextInt(statuses.length)]);
+            }
+        }
+    }
+}
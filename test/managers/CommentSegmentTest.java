@@ -0,0 +1,257 @@
+package managers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+import models.Comment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The comment segment must give back every bug's comments after a reopen, whether from its index,
+ * a full scan or a rewrite to the next generation, and must never write a record ahead of the bug log.
+ */
+class CommentSegmentTest {
+    private static final String PATH = "data/comments-test.dat";
+    private static final String INDEX_PATH = "data/comments-test.idx";
+    private static final int HEADER_SIZE = 16;
+
+    // Stands in for the bug log: notes how long the segment file was at each flush
+    private final List<Long> flushedAt = new ArrayList<>();
+
+    @BeforeEach
+    void clear() {
+        TestData.clear();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        TestData.clear();
+    }
+
+    @Test
+    void writesTheDocumentedFormat() throws IOException {
+        CommentSegment segment = open();
+        segment.add(7, new Comment("Still broken", "ann", 1234L));
+        segment.add(7, new Comment("Fixed", null, 0L));
+        segment.close();
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(PATH))) {
+            assertEquals(0x434D5453, in.readInt());
+            assertEquals(1, in.readInt());
+            assertEquals(1L, in.readLong());
+
+            byte[] first = record(in);
+            assertEquals("C", new String(first, 0, 1, StandardCharsets.US_ASCII));
+            DataInputStream body = new DataInputStream(new ByteArrayInputStream(first, 1, first.length - 1));
+            assertEquals(7, body.readInt());
+            assertEquals(-1L, body.readLong());
+            assertEquals(1234L, body.readLong());
+            assertEquals(3, body.readInt());
+            assertEquals("annStill broken", new String(body.readAllBytes(), StandardCharsets.UTF_8));
+
+            byte[] second = record(in);
+            body = new DataInputStream(new ByteArrayInputStream(second, 1, second.length - 1));
+            assertEquals(7, body.readInt());
+            assertEquals(HEADER_SIZE, body.readLong());
+            assertEquals(0L, body.readLong());
+            assertEquals(-1, body.readInt());
+            assertEquals("Fixed", new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void reopensWhatWasWritten() throws IOException {
+        CommentSegment segment = open();
+        for (int id = 1; id <= 40; id++) {
+            for (int i = 0; i < id % 4; i++) {
+                segment.add(id, comment(id, i));
+            }
+        }
+        segment.replace(5, List.of(new Comment("Replaced", "bob", 5L)));
+        segment.replace(6, List.of());
+        segment.add(6, new Comment("After clearing", "cy", 6L));
+        String expected = dump(segment);
+        segment.close();
+
+        CommentSegment reopened = open();
+        assertEquals(expected, dump(reopened));
+        assertEquals("[Replaced by bob]", texts(reopened.comments(5)));
+        assertEquals("[After clearing by cy]", texts(reopened.comments(6)));
+        reopened.close();
+    }
+
+    @Test
+    void scansOnlyPastItsCheckpointAndWithoutIt() throws IOException {
+        CommentSegment segment = open();
+        for (int id = 1; id <= 30; id++) {
+            segment.add(id, comment(id, 0));
+        }
+        segment.checkpoint();
+        assertTrue(new File(INDEX_PATH).exists());
+        // After the checkpoint: found by scanning on from where the index stops
+        for (int id = 1; id <= 30; id += 3) {
+            segment.add(id, comment(id, 1));
+        }
+        segment.replace(2, List.of());
+        String expected = dump(segment);
+        segment.close();
+
+        CommentSegment indexed = open();
+        assertEquals(expected, dump(indexed));
+        indexed.add(2, comment(2, 9));
+        expected = dump(indexed);
+        indexed.close();
+
+        new File(INDEX_PATH).delete();
+        CommentSegment scanned = open();
+        assertEquals(expected, dump(scanned));
+        scanned.close();
+    }
+
+    @Test
+    void rewritesMostlyDeadSegmentToTheNextGeneration() throws IOException {
+        CommentSegment segment = open();
+        String text = "y".repeat(1000);
+        for (int id = 1; id <= 1500; id++) {
+            segment.add(id, new Comment(text, "ann", id));
+        }
+        segment.add(3, new Comment("Second", "bob", 3L));
+        segment.checkpoint();
+        File staleIndex = new File("data/comments-test.idx.old");
+        Files.copy(new File(INDEX_PATH).toPath(), staleIndex.toPath());
+        long before = new File(PATH).length();
+
+        int dropped = segment.retain(id -> id <= 10);
+        assertEquals(1490, dropped);
+        segment.checkpoint();
+        assertEquals(2L, generation());
+        assertTrue(new File(PATH).length() < before / 100, "segment of " + new File(PATH).length() + " bytes");
+        assertEquals("[" + text + " by ann, Second by bob]", texts(segment.comments(3)));
+        assertEquals(0, segment.count(11));
+        segment.add(4, new Comment("After the rewrite", "cy", 4L));
+        String expected = dump(segment);
+        segment.close();
+
+        CommentSegment reopened = open();
+        assertEquals(expected, dump(reopened));
+        reopened.close();
+        // An index from before the rewrite names the old generation and must be ignored
+        Files.move(staleIndex.toPath(), new File(INDEX_PATH).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        CommentSegment stale = open();
+        assertEquals(expected, dump(stale));
+        stale.close();
+    }
+
+    @Test
+    void retainsOnlyTheBugsStillInUse() throws IOException {
+        CommentSegment segment = open();
+        for (int id = 1; id <= 20; id++) {
+            segment.add(id, comment(id, 0));
+        }
+        assertEquals(10, segment.retain(id -> id % 2 == 0));
+        assertEquals(0, segment.retain(id -> id % 2 == 0));
+        segment.close();
+
+        CommentSegment reopened = open();
+        for (int id = 1; id <= 20; id++) {
+            assertEquals(id % 2 == 0 ? 1 : 0, reopened.count(id), "comments of bug " + id);
+        }
+        reopened.close();
+    }
+
+    @Test
+    void keepsUnflushedCommentsInMemoryUntilTheLogIsFlushed() throws IOException {
+        CommentSegment segment = open();
+        segment.add(1, comment(1, 0));
+        segment.sync();
+        assertEquals(List.of(0L), flushedAt);
+        long synced = new File(PATH).length();
+
+        segment.add(1, comment(1, 1));
+        segment.add(2, comment(2, 0));
+        // Served from the pending buffer; nothing reached the file or the log
+        assertEquals("[comment 0 of 1 by ann, comment 1 of 1 by ann]", texts(segment.comments(1)));
+        assertEquals("[comment 0 of 2 by ann]", texts(segment.comments(2)));
+        assertEquals(synced, new File(PATH).length());
+        assertEquals(1, flushedAt.size());
+
+        // A crash now loses only the pending comments
+        CommentSegment recovered = open();
+        assertEquals("[comment 0 of 1 by ann]", texts(recovered.comments(1)));
+        assertFalse(recovered.count(2) > 0);
+        recovered.close();
+
+        segment.sync();
+        assertEquals(List.of(0L, synced), flushedAt);
+        segment.close();
+        CommentSegment reopened = open();
+        assertEquals(2, reopened.count(1));
+        assertEquals(1, reopened.count(2));
+        reopened.close();
+    }
+
+    private CommentSegment open() {
+        return new CommentSegment(PATH, INDEX_PATH, () -> {
+            File file = new File(PATH);
+            flushedAt.add(file.exists() ? file.length() : 0L);
+        });
+    }
+
+    private static Comment comment(int id, int i) {
+        return new Comment("comment " + i + " of " + id, "ann", 1000L * id + i);
+    }
+
+    private static String texts(List<Comment> comments) {
+        List<String> texts = new ArrayList<>();
+        for (Comment comment : comments) {
+            texts.add(comment.getText() + " by " + comment.getAuthor());
+        }
+        return texts.toString();
+    }
+
+    private static String dump(CommentSegment segment) {
+        StringBuilder sb = new StringBuilder();
+        for (int id = 1; id <= 1500; id++) {
+            for (Comment comment : segment.comments(id)) {
+                sb.append(id).append('|').append(comment.getText()).append('|').append(comment.getAuthor())
+                        .append('|').append(comment.getTimestamp()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    // Read one record and check its checksum; returns the checksummed part
+    private static byte[] record(DataInputStream in) throws IOException {
+        int rest = in.readInt();
+        int sum = in.readInt();
+        byte[] body = new byte[rest];
+        in.readFully(body);
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        assertEquals(sum, (int) crc.getValue());
+        return body;
+    }
+
+    private static long generation() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(PATH, "r")) {
+            file.seek(8);
+            return file.readLong();
+        }
+    }
+}
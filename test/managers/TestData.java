@@ -0,0 +1,42 @@
+package managers;
+
+import java.io.File;
+import models.Bug;
+
+/**
+ * Helpers for tests that open a BugManager, which keeps its files under ./data.
+ */
+final class TestData {
+    private TestData() {
+    }
+
+    /**
+     * Delete ./data and everything in it, so the next manager starts empty.
+     */
+    static void clear() {
+        delete(new File("data"));
+    }
+
+    /**
+     * @return every field a reopened manager must restore, comments by count
+     */
+    static String dump(BugManager manager) {
+        StringBuilder sb = new StringBuilder();
+        for (Bug bug : manager.loadBugs()) {
+            sb.append(bug.getId()).append('|').append(bug.getTitle()).append('|').append(bug.getDescription())
+                    .append('|').append(bug.getStatus()).append('|').append(bug.getPriority())
+                    .append('|').append(bug.getAssignedTo()).append('|').append(bug.getCommentCount()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,180 @@
+package managers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import models.Role;
+import models.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A damaged user file must lose no more than its damaged records, and must never be cut short
+ * by an append after a read that stopped early.
+ */
+class UserStoreTest {
+    private static final String PATH = "data/users-test.dat";
+    private static final int HEADER_SIZE = 6;
+    private static final int RECORD_HEAD = 8;
+
+    @BeforeEach
+    void clear() {
+        TestData.clear();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        TestData.clear();
+    }
+
+    @Test
+    void reopensWhatWasWritten() {
+        UserManager users = open();
+        signUp(users, "ann", "bob", "cy");
+        users.setUserRole("bob", Role.ADMIN);
+        users.removeUser("cy");
+        users.close();
+
+        UserManager reopened = open();
+        assertEquals(List.of("ann", "bob"), names(reopened));
+        assertEquals(Role.ADMIN, reopened.getUserRole("bob"));
+        assertEquals("ann", reopened.authenticate("ann", "pw-ann").getUsername());
+    }
+
+    @Test
+    void skipsACorruptRecordAndKeepsTheRest() throws IOException {
+        UserManager users = open();
+        signUp(users, "ann", "bob", "cy");
+        users.close();
+        long bob = recordStarts().get(1);
+        flipByte(bob + RECORD_HEAD + 4);
+
+        UserManager reopened = open();
+        assertEquals(List.of("ann", "cy"), names(reopened));
+        signUp(reopened, "dee");
+        reopened.close();
+        assertEquals(List.of("ann", "cy", "dee"), names(open()));
+    }
+
+    @Test
+    void cutsATornLastRecordBeforeAppending() throws IOException {
+        UserManager users = open();
+        signUp(users, "ann", "bob");
+        users.close();
+        long length = new File(PATH).length();
+        long last = recordStarts().get(1);
+        for (long cut = last + 1; cut < length; cut++) {
+            try (RandomAccessFile file = new RandomAccessFile(PATH, "rw")) {
+                file.setLength(cut);
+            }
+            UserManager reopened = open();
+            assertEquals(List.of("ann"), names(reopened), "users with the file cut at " + cut);
+            signUp(reopened, "bob");
+            reopened.close();
+            assertEquals(List.of("ann", "bob"), names(open()), "users after appending to the file cut at " + cut);
+        }
+    }
+
+    @Test
+    void refusesToAppendAfterAReadThatStoppedEarly() throws IOException {
+        UserManager users = open();
+        signUp(users, "ann", "bob", "cy");
+        users.close();
+        // A length no record can have: nothing after it can be found
+        try (RandomAccessFile file = new RandomAccessFile(PATH, "rw")) {
+            file.seek(recordStarts().get(1));
+            file.writeInt(-1);
+        }
+        byte[] damaged = Files.readAllBytes(new File(PATH).toPath());
+
+        UserManager reopened = open();
+        assertEquals(List.of("ann"), names(reopened));
+        signUp(reopened, "dee");
+        reopened.setUserRole("ann", Role.ADMIN);
+        reopened.close();
+        assertArrayEquals(damaged, Files.readAllBytes(new File(PATH).toPath()));
+    }
+
+    @Test
+    void rewritesAVersion1FileBeforeAppending() throws IOException {
+        new File(PATH).getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(PATH))) {
+            out.writeInt(UserStore.MAGIC);
+            out.writeShort(1);
+            for (String name : new String[] {"ann", "bob"}) {
+                out.writeByte(UserStore.ADD);
+                out.writeUTF(name);
+                out.writeUTF("pw-" + name);
+                out.writeByte(Role.TESTER.ordinal());
+            }
+            out.writeByte(UserStore.ROLE);
+            out.writeUTF("bob");
+            out.writeByte(Role.ADMIN.ordinal());
+            out.writeByte(UserStore.ADD); // Torn
+        }
+
+        UserManager users = open();
+        assertEquals(List.of("ann", "bob"), names(users));
+        signUp(users, "cy");
+        users.close();
+        UserManager reopened = open();
+        assertEquals(List.of("ann", "bob", "cy"), names(reopened));
+        assertEquals(Role.ADMIN, reopened.getUserRole("bob"));
+        assertEquals("bob", reopened.authenticate("bob", "pw-bob").getUsername());
+        assertNull(reopened.authenticate("bob", "wrong"));
+    }
+
+    private static UserManager open() {
+        UserManager users = new UserManager();
+        users.setPasswordIterations(1);
+        users.loadUsersFromFile(PATH);
+        return users;
+    }
+
+    private static void signUp(UserManager users, String... names) {
+        for (String name : names) {
+            users.signUp(name, "pw-" + name, Role.TESTER);
+        }
+    }
+
+    private static List<String> names(UserManager users) {
+        List<String> names = new ArrayList<>();
+        for (User user : users.getUsers()) {
+            names.add(user.getUsername());
+        }
+        return names;
+    }
+
+    // Offset of every record, from the length each one starts with
+    private static List<Long> recordStarts() throws IOException {
+        List<Long> starts = new ArrayList<>();
+        try (RandomAccessFile file = new RandomAccessFile(PATH, "r")) {
+            long position = HEADER_SIZE;
+            while (position + RECORD_HEAD <= file.length()) {
+                starts.add(position);
+                file.seek(position);
+                position += RECORD_HEAD + file.readInt();
+            }
+        }
+        return starts;
+    }
+
+    private static void flipByte(long offset) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(PATH, "rw")) {
+            file.seek(offset);
+            int b = file.read();
+            file.seek(offset);
+            file.write(b ^ 0x5A);
+        }
+    }
+}
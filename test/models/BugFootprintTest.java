@@ -0,0 +1,58 @@
+package models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+
+/**
+ * Retained heap per {@link Bug}, measured with JOL by walking everything the bugs reference.
+ *
+ * Bugs are built the way the loaders build them: a fresh assignee string per bug drawn from a few
+ * hundred names, and comments left in a comment store rather than on the bug. Title and description
+ * texts are shared, so the figure is the cost of the model itself rather than of its text. The bounds
+ * assume compressed references, the default below a 32 GB heap.
+ */
+class BugFootprintTest {
+    private static final int BUGS = 100_000;
+    private static final int ASSIGNEES = 500;
+    // A bug object and its slot in an array: 40 bytes and 4. Before the model was shrunk each bug also
+    // held its own assignee string and comment list, and came to about 120 bytes.
+    private static final double MAX_BYTES_PER_BUG = 48;
+    private static final long MAX_BUG_INSTANCE_BYTES = 40;
+    private static final CommentStore NO_STORE = new CommentStore() {
+        public List<Comment> comments(int bugId) { return Collections.emptyList(); }
+        public int count(int bugId) { return 0; }
+        public void add(int bugId, Comment comment) { }
+    };
+
+    @Test
+    void bugsRetainFewBytesEach() {
+        assumeTrue(VM.current().addressSize() == 8 && VM.current().sizeOfField("java.lang.Object") == 4,
+                "bounds assume compressed references");
+        Random random = new Random(42);
+        Status[] statuses = Status.values();
+        Priority[] priorities = Priority.values();
+        Bug[] bugs = new Bug[BUGS];
+        for (int i = 0; i < BUGS; i++) {
+            bugs[i] = new Bug(i + 1, "title", "description", statuses[random.nextInt(statuses.length)],
+                    priorities[random.nextInt(priorities.length)], new String("dev" + random.nextInt(ASSIGNEES)));
+            bugs[i].setCommentStore(NO_STORE);
+        }
+
+        GraphLayout graph = GraphLayout.parseInstance((Object) bugs);
+        double perBug = (double) graph.totalSize() / BUGS;
+        assertTrue(perBug <= MAX_BYTES_PER_BUG, () -> perBug + " bytes retained per bug\n" + graph.toFootprint());
+        assertTrue(ClassLayout.parseClass(Bug.class).instanceSize() <= MAX_BUG_INSTANCE_BYTES,
+                () -> ClassLayout.parseClass(Bug.class).toPrintable());
+        // One string per distinct assignee, plus the shared title and description
+        assertEquals(ASSIGNEES + 2, graph.getClassCounts().count(String.class));
+    }
+}